@@ -0,0 +1,77 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.plugin.grafana.loki.models.LokiEntry;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link Trigger} poll path: deduplicating a page of entries against the stored state, then serializing the
+ * state back to and from its stored form.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LokiDedupStateBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int entries;
+
+    private List<LokiEntry> page;
+    private LokiDedupState filled;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        page = new ArrayList<>(entries);
+        LokiResponseParser.parse(new ByteArrayInputStream(LokiPayloads.streams(entries, 10)), page::add);
+
+        filled = new LokiDedupState();
+        page.forEach(filled::add);
+        encoded = filled.encode();
+    }
+
+    @Benchmark
+    public LokiDedupState addNew() {
+        LokiDedupState state = new LokiDedupState();
+        for (LokiEntry entry : page) {
+            state.add(entry);
+        }
+        return state;
+    }
+
+    @Benchmark
+    public void addSeen(Blackhole blackhole) {
+        for (LokiEntry entry : page) {
+            blackhole.consume(filled.add(entry));
+        }
+    }
+
+    @Benchmark
+    public void addNewToMaps(Blackhole blackhole) {
+        LokiDedupState state = new LokiDedupState();
+        for (LokiEntry entry : page) {
+            if (state.add(entry)) {
+                blackhole.consume(entry.toMap());
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return filled.encode();
+    }
+
+    @Benchmark
+    public LokiDedupState decode() throws IOException {
+        return LokiDedupState.decode(encoded);
+    }
+}
@@ -0,0 +1,38 @@
+package io.kestra.plugin.grafana.loki;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * URI building for a typical {@code query_range} request, called once per page and shard.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LokiHttpServiceBenchmark {
+    private static final String ENDPOINT = "http://loki.monitoring.svc:3100/loki/api/v1/query_range";
+
+    private Map<String, String> queryParams;
+
+    @Setup
+    public void setup() {
+        queryParams = new LinkedHashMap<>();
+        queryParams.put("query", "{app=\"api\", env=\"production\"} |= \"error\" | json | status >= 500");
+        queryParams.put("limit", "5000");
+        queryParams.put("direction", "FORWARD");
+        queryParams.put("start", "1700000000000000000");
+        queryParams.put("end", "1700003600000000000");
+    }
+
+    @Benchmark
+    public URI buildUri() {
+        return LokiHttpService.buildUri(ENDPOINT, queryParams);
+    }
+}
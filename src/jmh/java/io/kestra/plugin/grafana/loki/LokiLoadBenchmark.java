@@ -0,0 +1,172 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.models.conditions.ConditionContext;
+import io.kestra.core.models.executions.Execution;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.models.tasks.common.FetchType;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.TestsUtils;
+import io.micronaut.context.ApplicationContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * End-to-end load suite running {@link QueryRange}, {@link Query} and {@link Trigger} against a {@link FakeLoki}, at
+ * several stream cardinalities and server latencies.
+ * <p>
+ * Operations per second are task runs or trigger polls, the {@code records} and {@code requests} counters are the
+ * entries returned and the HTTP requests sent per second. Run with {@code -prof gc} to measure memory, e.g.
+ * {@code gradle jmh -Pjmh.includes=LokiLoadBenchmark -Pjmh.args="-prof gc"}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LokiLoadBenchmark {
+    private static final String LOG_QUERY = "{env=\"production\"}";
+    private static final String METRIC_QUERY = "sum by (pod) (count_over_time({env=\"production\"}[1m]))";
+
+    @Param({"10", "1000"})
+    public int streams;
+
+    @Param({"0", "20"})
+    public int latencyMillis;
+
+    private FakeLoki loki;
+    private ApplicationContext applicationContext;
+    private RunContextFactory runContextFactory;
+    private String start;
+    private String end;
+
+    private Trigger trigger;
+    private Map.Entry<ConditionContext, io.kestra.core.models.triggers.Trigger> triggerContext;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long records;
+        public long requests;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        loki = FakeLoki.builder()
+            .streams(streams)
+            .entriesPerSecond(Math.max(1, 1000 / streams))
+            .latency(Duration.ofMillis(latencyMillis))
+            .start();
+
+        // the JVM metrics binder keeps a JFR stream open that would keep the forked VM alive
+        applicationContext = ApplicationContext.run(Map.of("micronaut.metrics.binders.jvm.enabled", false));
+        runContextFactory = applicationContext.getBean(RunContextFactory.class);
+
+        // a fixed 10 minute window, about 540k entries, so that every run reads the same data
+        long now = LokiTime.now();
+        start = String.valueOf(now - Duration.ofMinutes(20).toNanos());
+        end = String.valueOf(now - Duration.ofMinutes(10).toNanos());
+
+        trigger = Trigger.builder()
+            .id("load")
+            .type(Trigger.class.getName())
+            .url(Property.ofValue(loki.url()))
+            .query(Property.ofValue(LOG_QUERY))
+            .maxRecords(Property.ofValue(5000))
+            .since(Property.ofValue("1m"))
+            .stateKey(Property.ofValue("load_" + streams + "_" + latencyMillis + "_" + System.nanoTime()))
+            .build();
+        triggerContext = TestsUtils.mockTrigger(runContextFactory, trigger);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        loki.close();
+        applicationContext.close();
+    }
+
+    @Benchmark
+    public QueryRange.Output queryRangeFetch(Counters counters) throws Exception {
+        QueryRange task = queryRange().fetchType(Property.ofValue(FetchType.FETCH)).build();
+        return measure(counters, () -> task.run(runContextFactory.of()), QueryRange.Output::getSize);
+    }
+
+    @Benchmark
+    public QueryRange.Output queryRangeStore(Counters counters) throws Exception {
+        QueryRange task = queryRange().fetchType(Property.ofValue(FetchType.STORE)).build();
+        return measure(counters, () -> task.run(runContextFactory.of()), QueryRange.Output::getSize);
+    }
+
+    @Benchmark
+    public QueryRange.Output queryRangeSharded(Counters counters) throws Exception {
+        QueryRange task = queryRange()
+            .fetchType(Property.ofValue(FetchType.STORE))
+            .shardCount(Property.ofValue(8))
+            .parallelism(Property.ofValue(4))
+            .build();
+        return measure(counters, () -> task.run(runContextFactory.of()), QueryRange.Output::getSize);
+    }
+
+    @Benchmark
+    public QueryRange.Output queryRangeMetric(Counters counters) throws Exception {
+        QueryRange task = QueryRange.builder()
+            .id("load")
+            .type(QueryRange.class.getName())
+            .url(Property.ofValue(loki.url()))
+            .query(Property.ofValue(METRIC_QUERY))
+            .start(Property.ofValue(start))
+            .end(Property.ofValue(end))
+            .step(Property.ofValue("15s"))
+            .build();
+        return measure(counters, () -> task.run(runContextFactory.of()), QueryRange.Output::getSize);
+    }
+
+    @Benchmark
+    public Query.Output queryInstant(Counters counters) throws Exception {
+        Query task = Query.builder()
+            .id("load")
+            .type(Query.class.getName())
+            .url(Property.ofValue(loki.url()))
+            .query(Property.ofValue(METRIC_QUERY))
+            .build();
+        return measure(counters, () -> task.run(runContextFactory.of()), output -> output.getLogs().size());
+    }
+
+    @Benchmark
+    public Optional<Execution> triggerPoll(Counters counters) throws Exception {
+        return measure(
+            counters,
+            () -> trigger.evaluate(triggerContext.getKey(), triggerContext.getValue()),
+            execution -> execution.map(e -> ((Number) e.getTrigger().getVariables().get("count")).longValue()).orElse(0L)
+        );
+    }
+
+    private QueryRange.QueryRangeBuilder<?, ?> queryRange() {
+        return QueryRange.builder()
+            .id("load")
+            .type(QueryRange.class.getName())
+            .url(Property.ofValue(loki.url()))
+            .query(Property.ofValue(LOG_QUERY))
+            .start(Property.ofValue(start))
+            .end(Property.ofValue(end))
+            .direction(Property.ofValue(AbstractLokiConnection.Direction.FORWARD))
+            .limit(Property.ofValue(5000))
+            .paginate(Property.ofValue(true));
+    }
+
+    private <T> T measure(Counters counters, Callable<T> run, ToLongFunction<T> records) throws Exception {
+        long requests = loki.requests();
+
+        T output = run.call();
+
+        counters.records += records.applyAsLong(output);
+        counters.requests += loki.requests() - requests;
+        return output;
+    }
+}
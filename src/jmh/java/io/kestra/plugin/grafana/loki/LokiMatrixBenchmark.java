@@ -0,0 +1,69 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.plugin.grafana.loki.models.LokiEntry;
+import io.kestra.plugin.grafana.loki.models.LokiMatrix;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a {@code matrix} response into one map per sample, into {@link LokiMatrix} primitive arrays, or reducing it
+ * to a {@link LokiAggregator} summary per series, run with {@code -prof gc} to compare the allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LokiMatrixBenchmark {
+    @Param({"20", "200"})
+    public int series;
+
+    @Param({"1440"})
+    public int points;
+
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        payload = LokiPayloads.matrix(series, points);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> maps() throws IOException {
+        List<Map<String, Object>> samples = new ArrayList<>();
+        LokiResponseParser.parse(new ByteArrayInputStream(payload), entry -> samples.add(entry.toMap()));
+        return samples;
+    }
+
+    @Benchmark
+    public LokiMatrix matrix() throws IOException {
+        LokiMatrix matrix = new LokiMatrix();
+        LokiResponseParser.parse(new ByteArrayInputStream(payload), new LokiResponseParser.SampleSink() {
+            @Override
+            public void acceptSample(Map<String, String> labels, long timestamp, double value) {
+                matrix.add(labels, timestamp, value);
+            }
+
+            @Override
+            public void accept(LokiEntry entry) {
+            }
+        });
+        return matrix;
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> aggregate() throws IOException {
+        LokiAggregator aggregator = new LokiAggregator(entry -> {}, EnumSet.allOf(QueryRange.Aggregation.class));
+        LokiResponseParser.parse(new ByteArrayInputStream(payload), aggregator);
+        return aggregator.summaries();
+    }
+}
@@ -0,0 +1,62 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.plugin.grafana.loki.models.LokiQueryResponse;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of {@code streams}, {@code matrix} and {@code vector} responses, with the bound model and
+ * {@link LokiQueryResponse#toLogEntries()} and with the streaming parser.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LokiParsingBenchmark {
+    @Param({"streams", "matrix", "vector"})
+    public String resultType;
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        payload = switch (resultType) {
+            case "streams" -> LokiPayloads.streams(size, 10);
+            case "matrix" -> LokiPayloads.matrix(10, size / 10);
+            case "vector" -> LokiPayloads.vector(size);
+            default -> throw new IllegalArgumentException("Unknown result type " + resultType);
+        };
+    }
+
+    @Benchmark
+    public LokiQueryResponse read() throws IOException {
+        return LokiQueryResponse.read(new ByteArrayInputStream(payload));
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> readToLogEntries() throws IOException {
+        return LokiQueryResponse.read(new ByteArrayInputStream(payload)).toLogEntries();
+    }
+
+    @Benchmark
+    public void streamingParser(Blackhole blackhole) throws IOException {
+        LokiResponseParser.parse(new ByteArrayInputStream(payload), blackhole::consume);
+    }
+
+    @Benchmark
+    public void streamingParserToMaps(Blackhole blackhole) throws IOException {
+        LokiResponseParser.parse(new ByteArrayInputStream(payload), entry -> blackhole.consume(entry.toMap()));
+    }
+}
@@ -0,0 +1,93 @@
+package io.kestra.plugin.grafana.loki;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Deterministic Loki query responses for benchmarks.
+ */
+public final class LokiPayloads {
+    private static final long BASE_TIMESTAMP = 1_700_000_000_000_000_000L;
+
+    private LokiPayloads() {
+    }
+
+    /**
+     * A {@code streams} response of {@code entries} log lines spread over {@code streams} label sets.
+     */
+    public static byte[] streams(int entries, int streams) {
+        Random random = new Random(entries * 31L + streams);
+        StringBuilder builder = new StringBuilder(entries * 160);
+        builder.append("{\"status\":\"success\",\"data\":{\"resultType\":\"streams\",\"result\":[");
+
+        for (int stream = 0; stream < streams; stream++) {
+            if (stream > 0) {
+                builder.append(',');
+            }
+
+            builder.append("{\"stream\":{\"app\":\"api\",\"env\":\"production\",\"pod\":\"api-").append(stream)
+                .append("\",\"level\":\"").append(stream % 3 == 0 ? "error" : "info").append("\"},\"values\":[");
+
+            int count = entries / streams + (stream < entries % streams ? 1 : 0);
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+
+                builder.append("[\"").append(BASE_TIMESTAMP + (long) i * streams + stream).append("\",\"")
+                    .append("ts=2024-01-01T00:00:00Z level=info method=GET path=/api/v1/items/").append(random.nextInt(10_000))
+                    .append(" status=200 duration=").append(random.nextInt(500)).append("ms trace_id=").append(Long.toHexString(random.nextLong()))
+                    .append("\"]");
+            }
+
+            builder.append("]}");
+        }
+
+        return builder.append("]}}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A {@code matrix} response of {@code series} series with {@code points} samples each.
+     */
+    public static byte[] matrix(int series, int points) {
+        Random random = new Random(series * 31L + points);
+        StringBuilder builder = new StringBuilder(series * points * 32);
+        builder.append("{\"status\":\"success\",\"data\":{\"resultType\":\"matrix\",\"result\":[");
+
+        for (int s = 0; s < series; s++) {
+            if (s > 0) {
+                builder.append(',');
+            }
+
+            builder.append("{\"metric\":{\"app\":\"api\",\"pod\":\"api-").append(s).append("\"},\"values\":[");
+            for (int i = 0; i < points; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append('[').append(1_700_000_000L + i * 60L).append(",\"").append(random.nextInt(1000) / 10.0).append("\"]");
+            }
+            builder.append("]}");
+        }
+
+        return builder.append("]}}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A {@code vector} response of {@code series} samples.
+     */
+    public static byte[] vector(int series) {
+        Random random = new Random(series);
+        StringBuilder builder = new StringBuilder(series * 64);
+        builder.append("{\"status\":\"success\",\"data\":{\"resultType\":\"vector\",\"result\":[");
+
+        for (int s = 0; s < series; s++) {
+            if (s > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"metric\":{\"app\":\"api\",\"pod\":\"api-").append(s).append("\"},\"value\":[")
+                .append(1_700_000_000L).append(",\"").append(random.nextInt(1000) / 10.0).append("\"]}");
+        }
+
+        return builder.append("]}}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,58 @@
+package io.kestra.plugin.grafana.loki;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.kestra.plugin.grafana.loki.models.LokiQueryResponse;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading a {@code query_range} response: a mapper created per call, the shared reader, and the streaming
+ * parser used by the tasks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LokiQueryResponseBenchmark {
+    @Param({"1000", "10000"})
+    public int entries;
+
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        payload = LokiPayloads.streams(entries, 10);
+    }
+
+    @Benchmark
+    public LokiQueryResponse perCallObjectMapper() throws IOException {
+        return new ObjectMapper().readValue(new ByteArrayInputStream(payload), LokiQueryResponse.class);
+    }
+
+    @Benchmark
+    public LokiQueryResponse sharedReader() throws IOException {
+        return LokiQueryResponse.read(new ByteArrayInputStream(payload));
+    }
+
+    @Benchmark
+    public void perCallObjectMapperToLogEntries(Blackhole blackhole) throws IOException {
+        blackhole.consume(new ObjectMapper().readValue(new ByteArrayInputStream(payload), LokiQueryResponse.class).toLogEntries());
+    }
+
+    @Benchmark
+    public void streamingParserToMaps(Blackhole blackhole) throws IOException {
+        LokiResponseParser.parse(new ByteArrayInputStream(payload), entry -> blackhole.consume(entry.toMap()));
+    }
+
+    @Benchmark
+    public void streamingParser(Blackhole blackhole) throws IOException {
+        LokiResponseParser.parse(new ByteArrayInputStream(payload), blackhole::consume);
+    }
+}
@@ -0,0 +1,61 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.plugin.grafana.loki.models.LokiEntry;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
+import io.kestra.plugin.grafana.loki.models.LokiStreams;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holding fetched log lines as one map per line versus {@link LokiStreams} columns, run with {@code -prof gc} to
+ * compare the allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LokiStreamsBenchmark {
+    @Param({"10000", "100000"})
+    public int entries;
+
+    private List<LokiEntry> page;
+
+    @Setup
+    public void setup() throws IOException {
+        page = new ArrayList<>(entries);
+        LokiResponseParser.parse(new ByteArrayInputStream(LokiPayloads.streams(entries, 10)), page::add);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> maps() {
+        List<Map<String, Object>> logs = new ArrayList<>();
+        for (LokiEntry entry : page) {
+            logs.add(entry.toMap());
+        }
+        return logs;
+    }
+
+    @Benchmark
+    public LokiStreams columns() {
+        LokiStreams streams = new LokiStreams();
+        for (LokiEntry entry : page) {
+            streams.add(entry);
+        }
+        return streams;
+    }
+
+    @Benchmark
+    public LokiStreams columnsSorted() {
+        LokiStreams streams = columns();
+        streams.sort(true);
+        return streams;
+    }
+}
@@ -1,10 +1,9 @@
 package io.kestra.plugin.grafana.loki;
 
 import io.kestra.core.exceptions.IllegalVariableEvaluationException;
-import io.kestra.core.http.HttpResponse;
 import io.kestra.core.models.property.Property;
-import io.kestra.core.models.tasks.Task;
 import io.kestra.core.runners.RunContext;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotNull;
 import lombok.*;
@@ -18,40 +17,10 @@ import java.util.Map;
 @ToString
 @Getter
 @EqualsAndHashCode
-public abstract class AbstractLokiConnection extends Task {
+public abstract class AbstractLokiConnection extends AbstractLokiTask {
 
-    @Schema(
-        title = "Loki base URL",
-        description = "The base URL of your Loki instance (e.g., http://localhost:3100 or https://logs.example.com)"
-    )
-    @NotNull
-    protected Property<String> url;
-
-    @Schema(
-        title = "Authentication token",
-        description = "Bearer token for authentication if Loki is secured"
-    )
-    protected Property<String> authToken;
-
-    @Schema(
-        title = "Grafana Loki Tenant ID",
-        description = "X-Scope-OrgID header value for multi-tenant Loki setups"
-    )
-    protected Property<String> tenantId;
-
-    @Schema(
-        title = "Connection timeout",
-        description = "HTTP connection timeout in seconds"
-    )
     @Builder.Default
-    protected Property<Integer> connectTimeout = Property.ofValue(30);
-
-    @Schema(
-        title = "Read timeout",
-        description = "HTTP read timeout in seconds"
-    )
-    @Builder.Default
-    protected Property<Integer> readTimeout = Property.ofValue(60);
+    protected Property<ResponseCompression> compression = Property.ofValue(ResponseCompression.GZIP);
 
     @Schema(
         title = "LogQL query",
@@ -79,8 +48,12 @@ public abstract class AbstractLokiConnection extends Task {
         BACKWARD
     }
 
-    protected HttpResponse<String> executeGetReq(RunContext runContext, URI uri) throws Exception {
-        return LokiHttpService.executeGetRequest(runContext, uri, authToken, tenantId, connectTimeout);
+    protected LokiResponseParser.Result executeGetReq(RunContext runContext, URI uri, LokiResponseParser.Sink sink) throws Exception {
+        return executeGetReq(runContext, clientOptions(runContext), uri, sink);
+    }
+
+    protected LokiResponseParser.Result executeGetReq(RunContext runContext, LokiClientOptions options, URI uri, LokiResponseParser.Sink sink) throws Exception {
+        return LokiHttpService.executeGetRequest(runContext, uri, options, inputStream -> LokiResponseParser.parse(inputStream, sink));
     }
 
     protected String buildBaseUrl(RunContext runContext) throws IllegalVariableEvaluationException {
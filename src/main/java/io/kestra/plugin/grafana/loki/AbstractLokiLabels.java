@@ -0,0 +1,102 @@
+package io.kestra.plugin.grafana.loki;
+
+import com.google.common.hash.Hashing;
+import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.kestra.plugin.grafana.loki.models.LokiLabelsResponse;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lookups of label names and values over a time window, cached by {@link LokiLabelCache}.
+ */
+@SuperBuilder
+@NoArgsConstructor
+@ToString
+@Getter
+@EqualsAndHashCode
+public abstract class AbstractLokiLabels extends AbstractLokiMetadata {
+
+    @Schema(
+        title = "Stream selector",
+        description = "Only return the labels of the streams matching this LogQL selector (e.g., '{job=\"api\"}'). Defaults to every stream."
+    )
+    protected Property<String> query;
+
+    @Schema(
+        title = "Cache time to live",
+        description = "How long the labels are kept in the cache of the worker, shared by every flow looking up the same labels of the same Loki tenant. " +
+            "The end of the time window is rounded up to a multiple of this duration, the window keeping its length, so that runs within it share their lookup, and concurrent runs share a single request. " +
+            "A zero duration disables the cache but not the sharing of concurrent requests."
+    )
+    @Builder.Default
+    protected Property<Duration> cacheTtl = Property.ofValue(Duration.ofMinutes(5));
+
+    /**
+     * Look up the labels of the endpoint over the time window, from the cache when they are in it.
+     *
+     * @param path the path of the endpoint, relative to the base URL
+     */
+    protected List<String> lookup(RunContext runContext, String path) throws Exception {
+        var logger = runContext.logger();
+
+        String rQuery = runContext.render(query).as(String.class).orElse(null);
+        Duration rCacheTtl = runContext.render(cacheTtl).as(Duration.class).orElse(Duration.ofMinutes(5));
+
+        Window window = window(runContext);
+        long windowEnd = window.end();
+        long windowStart = window.start();
+
+        // labels change slowly, moving the window by less than the time to live does not change the lookup; the end is
+        // aligned upward so that the newest labels are included, and the window keeps its length
+        if (rCacheTtl.toNanos() > 0) {
+            windowEnd = Math.ceilDiv(windowEnd, rCacheTtl.toNanos()) * rCacheTtl.toNanos();
+            windowStart = windowEnd - (window.end() - window.start());
+        }
+
+        Map<String, String> queryParams = new HashMap<>();
+        queryParams.put("start", String.valueOf(windowStart));
+        queryParams.put("end", String.valueOf(windowEnd));
+
+        if (rQuery != null) {
+            queryParams.put("query", rQuery);
+        }
+
+        String endpoint = LokiHttpService.buildBaseUrl(runContext, url) + path;
+        URI uri = LokiHttpService.buildUri(endpoint, queryParams);
+        LokiClientOptions options = clientOptions(runContext);
+
+        LokiLabelCache.Key key = new LokiLabelCache.Key(
+            endpoint,
+            options.getAuthToken() == null ? null : Hashing.sha256().hashString(options.getAuthToken(), StandardCharsets.UTF_8).toString(),
+            options.getTenantId(),
+            rQuery,
+            windowStart,
+            windowEnd
+        );
+
+        LokiLabelCache.Lookup lookup = LokiLabelCache.get(key, rCacheTtl, () -> {
+            logger.debug("Querying Loki: {}", uri);
+
+            LokiLabelsResponse response = LokiHttpService.executeGetRequest(runContext, uri, options, LokiLabelsResponse::read);
+            return response.getData() != null ? response.getData() : List.of();
+        });
+
+        logger.debug("Looked up {} labels from {}", lookup.values().size(), lookup.source().name().toLowerCase());
+
+        runContext.metric(Counter.of("cache.hits", lookup.source() == LokiLabelCache.Source.CACHE ? 1 : 0));
+        runContext.metric(Counter.of("requests.coalesced", lookup.source() == LokiLabelCache.Source.COALESCED ? 1 : 0));
+        options.getTransferStats().report(runContext);
+
+        return lookup.values();
+    }
+}
@@ -0,0 +1,56 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.exceptions.IllegalVariableEvaluationException;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+/**
+ * Requests to the Loki index endpoints, such as labels and series, over a time window.
+ */
+@SuperBuilder
+@NoArgsConstructor
+@ToString
+@Getter
+@EqualsAndHashCode
+public abstract class AbstractLokiMetadata extends AbstractLokiTask {
+
+    @Schema(
+        title = "Start time",
+        description = "The start of the time window as a nanosecond Unix epoch or another supported format (e.g., RFC3339). Defaults to `since` before `end`."
+    )
+    protected Property<String> start;
+
+    @Schema(
+        title = "End time",
+        description = "The end of the time window as a nanosecond Unix epoch or another supported format (e.g., RFC3339). Defaults to now."
+    )
+    protected Property<String> end;
+
+    @Schema(
+        title = "Since",
+        description = "Duration of the time window before `end` when `start` is not set (e.g., '6h', '1d')."
+    )
+    @Builder.Default
+    protected Property<String> since = Property.ofValue("6h");
+
+    /**
+     * @param start in nanoseconds since epoch
+     * @param end in nanoseconds since epoch
+     */
+    protected record Window(long start, long end) {
+    }
+
+    protected Window window(RunContext runContext) throws IllegalVariableEvaluationException {
+        String rStart = runContext.render(start).as(String.class).orElse(null);
+        String rEnd = runContext.render(end).as(String.class).orElse(null);
+        String rSince = runContext.render(since).as(String.class).orElse("6h");
+
+        long windowEnd = rEnd != null ? LokiTime.parseTimestamp(rEnd) : LokiTime.now();
+        long windowStart = rStart != null ? LokiTime.parseTimestamp(rStart) : windowEnd - LokiTime.parseDuration(rSince);
+
+        return new Window(windowStart, windowEnd);
+    }
+}
@@ -0,0 +1,65 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.exceptions.IllegalVariableEvaluationException;
+import io.kestra.core.http.client.configurations.HttpConfiguration;
+import io.kestra.core.models.WorkerJobLifecycle;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.models.tasks.Task;
+import io.kestra.core.runners.RunContext;
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import java.time.Duration;
+
+/**
+ * Tasks sending requests to Loki, their requests are bounded by the task {@code timeout} unless a {@code deadline} is set.
+ */
+@SuperBuilder
+@NoArgsConstructor
+@ToString
+@Getter
+@EqualsAndHashCode
+public abstract class AbstractLokiTask extends Task implements LokiConnectionInterface, WorkerJobLifecycle {
+
+    @NotNull
+    protected Property<String> url;
+
+    protected Property<String> authToken;
+
+    protected Property<String> tenantId;
+
+    @Builder.Default
+    protected Property<Integer> connectTimeout = Property.ofValue(30);
+
+    @Builder.Default
+    protected Property<Integer> readTimeout = Property.ofValue(60);
+
+    protected LokiRetryPolicy retryPolicy;
+
+    protected LokiRateLimit rateLimit;
+
+    protected LokiCircuitBreakerPolicy circuitBreaker;
+
+    protected Property<Duration> deadline;
+
+    protected HttpConfiguration options;
+
+    @Builder.Default
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    protected final LokiInFlightRequests inFlight = new LokiInFlightRequests();
+
+    protected LokiClientOptions clientOptions(RunContext runContext) throws IllegalVariableEvaluationException {
+        return LokiClientOptions.of(runContext, this, getTimeout(), inFlight);
+    }
+
+    /**
+     * Called when the worker stops, the requests in flight are cancelled; the pooled clients stay open for other flows.
+     */
+    @Override
+    public void stop() {
+        inFlight.cancelAll();
+    }
+}
@@ -1,16 +1,18 @@
 package io.kestra.plugin.grafana.loki;
 
 import io.kestra.core.exceptions.IllegalVariableEvaluationException;
-import io.kestra.core.http.HttpResponse;
+import io.kestra.core.http.client.configurations.HttpConfiguration;
+import io.kestra.core.models.WorkerJobLifecycle;
 import io.kestra.core.models.property.Property;
 import io.kestra.core.models.triggers.AbstractTrigger;
 import io.kestra.core.runners.RunContext;
-import io.swagger.v3.oas.annotations.media.Schema;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
 import jakarta.validation.constraints.NotNull;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
 
 import java.net.URI;
+import java.time.Duration;
 import java.util.Map;
 
 @SuperBuilder
@@ -18,43 +20,50 @@ import java.util.Map;
 @ToString
 @Getter
 @EqualsAndHashCode
-public abstract class AbstractLokiTrigger extends AbstractTrigger {
+public abstract class AbstractLokiTrigger extends AbstractTrigger implements LokiConnectionInterface, WorkerJobLifecycle {
 
-    @Schema(
-        title = "Loki base URL",
-        description = "The base URL of your Loki instance (e.g., http://localhost:3100 or https://logs.example.com)"
-    )
     @NotNull
     protected Property<String> url;
 
-    @Schema(
-        title = "Authentication token",
-        description = "Bearer token for authentication if Loki is secured"
-    )
     protected Property<String> authToken;
 
-    @Schema(
-        title = "Grafana Loki Tenant ID",
-        description = "X-Scope-OrgID header value for multi-tenant Loki setups"
-    )
     protected Property<String> tenantId;
 
-    @Schema(
-        title = "Connection timeout",
-        description = "HTTP connection timeout in seconds"
-    )
     @Builder.Default
     protected Property<Integer> connectTimeout = Property.ofValue(30);
 
-    @Schema(
-        title = "Read timeout",
-        description = "HTTP read timeout in seconds"
-    )
     @Builder.Default
     protected Property<Integer> readTimeout = Property.ofValue(60);
 
-    protected HttpResponse<String> executeGetReq(RunContext runContext, URI uri) throws Exception {
-        return LokiHttpService.executeGetRequest(runContext, uri, authToken, tenantId, connectTimeout);
+    @Builder.Default
+    protected Property<ResponseCompression> compression = Property.ofValue(ResponseCompression.GZIP);
+
+    protected LokiRetryPolicy retryPolicy;
+
+    protected LokiRateLimit rateLimit;
+
+    protected LokiCircuitBreakerPolicy circuitBreaker;
+
+    protected Property<Duration> deadline;
+
+    protected HttpConfiguration options;
+
+    @Builder.Default
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    protected final LokiInFlightRequests inFlight = new LokiInFlightRequests();
+
+    protected LokiResponseParser.Result executeGetReq(RunContext runContext, URI uri, LokiResponseParser.Sink sink) throws Exception {
+        return executeGetReq(runContext, clientOptions(runContext), uri, sink);
+    }
+
+    protected LokiResponseParser.Result executeGetReq(RunContext runContext, LokiClientOptions options, URI uri, LokiResponseParser.Sink sink) throws Exception {
+        return LokiHttpService.executeGetRequest(runContext, uri, options, inputStream -> LokiResponseParser.parse(inputStream, sink));
+    }
+
+    protected LokiClientOptions clientOptions(RunContext runContext) throws IllegalVariableEvaluationException {
+        return LokiClientOptions.of(runContext, this, null, inFlight);
     }
 
     protected String buildBaseUrl(RunContext runContext) throws IllegalVariableEvaluationException {
@@ -64,4 +73,12 @@ public abstract class AbstractLokiTrigger extends AbstractTrigger {
     protected URI buildUri(String endpoint, Map<String, String> queryParams) {
         return LokiHttpService.buildUri(endpoint, queryParams);
     }
+
+    /**
+     * Called when the worker stops, the requests in flight are cancelled; the pooled clients stay open for other flows.
+     */
+    @Override
+    public void stop() {
+        inFlight.cancelAll();
+    }
 }
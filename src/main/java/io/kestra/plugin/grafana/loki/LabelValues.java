@@ -0,0 +1,130 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.models.annotations.Example;
+import io.kestra.core.models.annotations.Metric;
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.models.executions.metrics.Timer;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.models.property.Property;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+@SuperBuilder
+@Getter
+@EqualsAndHashCode
+@ToString
+@NoArgsConstructor
+@Schema(
+    title = "List the values of a Grafana Loki label",
+    description = "Retrieve the values of a label in the streams within a time window. Lookups are cached by the worker for `cacheTtl` " +
+        "and shared by concurrent runs, so that flows templating queries from labels do not query Loki on every run."
+)
+@Plugin(
+    examples = {
+        @Example(
+            title = "Count the errors of each production service",
+            full = true,
+            code = """
+                id: loki_errors_per_service
+                namespace: company.team
+
+                tasks:
+                  - id: services
+                    type: io.kestra.plugin.grafana.loki.LabelValues
+                    url: http://localhost:3100
+                    label: service
+                    query: '{env="production"}'
+
+                  - id: each_service
+                    type: io.kestra.plugin.core.flow.ForEach
+                    values: "{{ outputs.services.values }}"
+                    tasks:
+                      - id: errors
+                        type: io.kestra.plugin.grafana.loki.Query
+                        url: http://localhost:3100
+                        query: 'sum(count_over_time({env="production", service="{{ taskrun.value }}"} |= "error" [1h]))'
+                """
+        )
+    },
+    metrics = {
+        @Metric(
+            name = "cache.hits",
+            type = Counter.TYPE,
+            description = "1 when the values were read from the cache of the worker"
+        ),
+        @Metric(
+            name = "requests.coalesced",
+            type = Counter.TYPE,
+            description = "1 when the values were read from the request of a concurrent run"
+        ),
+        @Metric(
+            name = "bytes.compressed",
+            type = Counter.TYPE,
+            description = "Response bytes received from Loki"
+        ),
+        @Metric(
+            name = "bytes.uncompressed",
+            type = Counter.TYPE,
+            description = "Response bytes after decompression"
+        ),
+        @Metric(
+            name = "retries",
+            type = Counter.TYPE,
+            description = "Number of requests to Loki attempted again according to `retryPolicy`"
+        ),
+        @Metric(
+            name = "retries.backoff",
+            type = Timer.TYPE,
+            description = "Total time spent waiting before retrying requests"
+        ),
+        @Metric(
+            name = "ratelimit.wait",
+            type = Timer.TYPE,
+            description = "Total time spent waiting for the `rateLimit` of the tenant before sending requests"
+        )
+    }
+)
+public class LabelValues extends AbstractLokiLabels implements RunnableTask<LabelValues.Output> {
+
+    @Schema(
+        title = "Label name"
+    )
+    @NotNull
+    private Property<String> label;
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        String rLabel = runContext.render(label).as(String.class).orElseThrow();
+
+        List<String> values = lookup(runContext, "/loki/api/v1/label/" + URLEncoder.encode(rLabel, StandardCharsets.UTF_8) + "/values");
+
+        runContext.logger().info("Retrieved {} values of label '{}' from Loki", values.size(), rLabel);
+
+        return Output.builder()
+            .values(values)
+            .count(values.size())
+            .build();
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(
+            title = "Label values"
+        )
+        private final List<String> values;
+
+        @Schema(
+            title = "Number of label values"
+        )
+        private final Integer count;
+    }
+}
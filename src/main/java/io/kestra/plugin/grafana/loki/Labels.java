@@ -0,0 +1,109 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.models.annotations.Example;
+import io.kestra.core.models.annotations.Metric;
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.models.executions.metrics.Timer;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.runners.RunContext;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import java.util.List;
+
+@SuperBuilder
+@Getter
+@EqualsAndHashCode
+@ToString
+@NoArgsConstructor
+@Schema(
+    title = "List the label names of Grafana Loki",
+    description = "Retrieve the label names of the streams within a time window. Lookups are cached by the worker for `cacheTtl` " +
+        "and shared by concurrent runs, so that flows templating queries from labels do not query Loki on every run."
+)
+@Plugin(
+    examples = {
+        @Example(
+            title = "List the labels of the production streams",
+            full = true,
+            code = """
+                id: loki_labels
+                namespace: company.team
+
+                tasks:
+                  - id: labels
+                    type: io.kestra.plugin.grafana.loki.Labels
+                    url: http://localhost:3100
+                    query: '{env="production"}'
+                    since: 24h
+                """
+        )
+    },
+    metrics = {
+        @Metric(
+            name = "cache.hits",
+            type = Counter.TYPE,
+            description = "1 when the labels were read from the cache of the worker"
+        ),
+        @Metric(
+            name = "requests.coalesced",
+            type = Counter.TYPE,
+            description = "1 when the labels were read from the request of a concurrent run"
+        ),
+        @Metric(
+            name = "bytes.compressed",
+            type = Counter.TYPE,
+            description = "Response bytes received from Loki"
+        ),
+        @Metric(
+            name = "bytes.uncompressed",
+            type = Counter.TYPE,
+            description = "Response bytes after decompression"
+        ),
+        @Metric(
+            name = "retries",
+            type = Counter.TYPE,
+            description = "Number of requests to Loki attempted again according to `retryPolicy`"
+        ),
+        @Metric(
+            name = "retries.backoff",
+            type = Timer.TYPE,
+            description = "Total time spent waiting before retrying requests"
+        ),
+        @Metric(
+            name = "ratelimit.wait",
+            type = Timer.TYPE,
+            description = "Total time spent waiting for the `rateLimit` of the tenant before sending requests"
+        )
+    }
+)
+public class Labels extends AbstractLokiLabels implements RunnableTask<Labels.Output> {
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        List<String> labels = lookup(runContext, "/loki/api/v1/labels");
+
+        runContext.logger().info("Retrieved {} labels from Loki", labels.size());
+
+        return Output.builder()
+            .labels(labels)
+            .count(labels.size())
+            .build();
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(
+            title = "Label names"
+        )
+        private final List<String> labels;
+
+        @Schema(
+            title = "Number of label names"
+        )
+        private final Integer count;
+    }
+}
@@ -0,0 +1,147 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.plugin.grafana.loki.models.LokiEntry;
+import io.kestra.plugin.grafana.loki.models.LokiMatrix;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Reduces the samples of metric results to a summary per series in a single pass while the response is parsed: only
+ * a few running values, and a {@link LokiQuantileSketch} when a percentile is requested, are kept per series instead
+ * of the samples.
+ * <p>
+ * Log lines are passed on to the delegate sink. {@code NaN} samples are counted but skipped by the aggregations.
+ */
+class LokiAggregator implements LokiResponseParser.SampleSink {
+    private final LokiResponseParser.Sink delegate;
+    private final EnumSet<QueryRange.Aggregation> aggregations;
+    private final boolean quantiles;
+
+    private final Map<Map<String, String>, Series> series = new LinkedHashMap<>();
+    private Series last;
+
+    @Getter
+    private long size = 0;
+
+    LokiAggregator(LokiResponseParser.Sink delegate, Collection<QueryRange.Aggregation> aggregations) {
+        this.delegate = delegate;
+        this.aggregations = EnumSet.copyOf(aggregations);
+        this.quantiles = this.aggregations.stream().anyMatch(aggregation -> aggregation.quantile() != null);
+    }
+
+    private final class Series {
+        private final Map<String, String> labels;
+        private final LokiQuantileSketch sketch = quantiles ? new LokiQuantileSketch() : null;
+
+        private long count = 0;
+        private long values = 0;
+        private double sum = 0;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private long firstTimestamp = Long.MAX_VALUE;
+        private double firstValue;
+        private long lastTimestamp = Long.MIN_VALUE;
+        private double lastValue;
+
+        Series(Map<String, String> labels) {
+            this.labels = labels;
+        }
+
+        void add(long timestamp, double value) {
+            count++;
+            if (Double.isNaN(value)) {
+                return;
+            }
+
+            values++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+
+            // sharded and backward queries do not send a series in ascending time order
+            if (timestamp < firstTimestamp) {
+                firstTimestamp = timestamp;
+                firstValue = value;
+            }
+            if (timestamp >= lastTimestamp) {
+                lastTimestamp = timestamp;
+                lastValue = value;
+            }
+
+            if (sketch != null) {
+                sketch.add(value);
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("labels", labels);
+            summary.put("count", count);
+
+            for (QueryRange.Aggregation aggregation : aggregations) {
+                summary.put(aggregation.name().toLowerCase(), aggregate(aggregation));
+            }
+
+            return summary;
+        }
+
+        /**
+         * Returned boxed, for an undefined rate not to be unboxed to {@code double}.
+         */
+        private Double aggregate(QueryRange.Aggregation aggregation) {
+            if (values == 0) {
+                return null;
+            }
+
+            return switch (aggregation) {
+                case SUM -> sum;
+                case AVG -> sum / values;
+                case MIN -> min;
+                case MAX -> max;
+                // the sketch is accurate relatively, the observed bounds are exact
+                case P50, P95, P99 -> Math.clamp(sketch.quantile(aggregation.quantile()), min, max);
+                case LAST -> lastValue;
+                case RATE -> lastTimestamp == firstTimestamp ?
+                    null :
+                    (lastValue - firstValue) / ((lastTimestamp - firstTimestamp) / 1e9);
+            };
+        }
+    }
+
+    @Override
+    public void accept(LokiEntry entry) throws IOException {
+        if (entry.isLine()) {
+            delegate.accept(entry);
+        } else {
+            acceptSample(entry.labels(), LokiTime.parseTimestamp(entry.timestamp()), LokiMatrix.parseValue(entry.value()));
+        }
+    }
+
+    /**
+     * The series is looked up by identity first as consecutive samples usually share it.
+     */
+    @Override
+    public void acceptSample(Map<String, String> labels, long timestamp, double value) {
+        if (last == null || last.labels != labels) {
+            last = series.computeIfAbsent(labels, Series::new);
+        }
+
+        last.add(timestamp, value);
+        size++;
+    }
+
+    /**
+     * One summary per series in the order they were first read, with its labels, its number of samples and the
+     * requested aggregations, {@code null} when they are not defined.
+     */
+    List<Map<String, Object>> summaries() {
+        List<Map<String, Object>> summaries = new ArrayList<>(series.size());
+        for (Series s : series.values()) {
+            summaries.add(s.toMap());
+        }
+        return summaries;
+    }
+}
@@ -0,0 +1,64 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.exceptions.IllegalVariableEvaluationException;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.time.Duration;
+
+/**
+ * Caching of the results of range queries over past time ranges, see {@link LokiResultCache} and
+ * {@link LokiIncrementalFetcher}.
+ */
+@Builder
+@Getter
+@EqualsAndHashCode
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class LokiCachePolicy {
+    @Schema(
+        title = "Freshness margin",
+        description = "Only time ranges ending before now minus this margin are cached, as Loki may still receive late entries for the most recent ones."
+    )
+    @Builder.Default
+    private Property<Duration> freshnessMargin = Property.ofValue(Duration.ofMinutes(10));
+
+    @Schema(
+        title = "Time to live",
+        description = "Time after which a cached result is queried from Loki again."
+    )
+    @Builder.Default
+    private Property<Duration> ttl = Property.ofValue(Duration.ofDays(7));
+
+    @Schema(
+        title = "Maximum size",
+        description = "Maximum total size in bytes of the results cached by the flow, the oldest results are evicted past it."
+    )
+    @Builder.Default
+    private Property<Long> maxBytes = Property.ofValue(512L * 1024 * 1024);
+
+    @Schema(
+        title = "Chunk duration",
+        description = "Cache the results of metric queries with a `step` by chunks of this duration, rounded up to a multiple of `step`, instead of whole. " +
+            "The time range is aligned on `step` and the chunks on the epoch, so that runs over a sliding window such as the last 24 hours share their chunks: " +
+            "only the missing chunks and the ones ending after now minus `freshnessMargin` are queried from Loki. Paginating and sharding do not apply then. " +
+            "Defaults to none."
+    )
+    private Property<Duration> chunkDuration;
+
+    static LokiResultCache render(RunContext runContext, LokiCachePolicy policy) throws IllegalVariableEvaluationException {
+        if (policy == null) {
+            return null;
+        }
+
+        return new LokiResultCache(
+            runContext.render(policy.freshnessMargin).as(Duration.class).orElse(Duration.ofMinutes(10)),
+            runContext.render(policy.ttl).as(Duration.class).orElse(Duration.ofDays(7)),
+            Math.max(0, runContext.render(policy.maxBytes).as(Long.class).orElse(512L * 1024 * 1024)),
+            runContext.render(policy.chunkDuration).as(Duration.class).orElse(null)
+        );
+    }
+}
@@ -0,0 +1,205 @@
+package io.kestra.plugin.grafana.loki;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide circuit breakers, one per Loki endpoint and thresholds, so that task runs and trigger polls stop waiting on a degraded
+ * Loki.
+ * <p>
+ * A breaker opens after {@link Thresholds#failureThreshold()} consecutive failures: server errors, connection errors
+ * and timeouts, and responses slower than {@link Thresholds#slowCallThreshold()}. While open, requests fail at once
+ * with a {@link LokiCircuitOpenException}. After {@link Thresholds#openDuration()}, it lets
+ * {@link Thresholds#halfOpenRequests()} probe requests through: the first one succeeding closes it, the first one
+ * failing opens it again. Tasks configured with different thresholds for the same endpoint each use their own breaker.
+ * <p>
+ * Closed breakers left unused for {@link #IDLE_TIMEOUT} are dropped while getting a breaker, at most every
+ * {@link #SWEEP_INTERVAL} or as soon as there are more than {@link #MAX_BREAKERS} of them.
+ */
+@Slf4j
+public final class LokiCircuitBreaker {
+    static final Duration IDLE_TIMEOUT = Duration.ofMinutes(10);
+    static final Duration SWEEP_INTERVAL = Duration.ofMinutes(1);
+    static final int MAX_BREAKERS = 1024;
+
+    private static final Map<Key, LokiCircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+    private static final AtomicLong NEXT_SWEEP = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL.toNanos());
+
+    /**
+     * @param slowCallThreshold the time to the response headers over which a request counts as failed, {@code null}
+     * for none
+     */
+    public record Thresholds(int failureThreshold, Duration slowCallThreshold, Duration openDuration, int halfOpenRequests) {
+    }
+
+    record Key(String endpoint, Thresholds thresholds) {
+    }
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    @Getter
+    private final String endpoint;
+
+    private final Thresholds thresholds;
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long openedAt;
+    private int probes = 0;
+    private long lastUsed = System.nanoTime();
+
+    private LokiCircuitBreaker(String endpoint, Thresholds thresholds) {
+        this.endpoint = endpoint;
+        this.thresholds = thresholds;
+    }
+
+    public static LokiCircuitBreaker get(URI uri, Thresholds thresholds) {
+        String endpoint = uri.getScheme() + "://" + uri.getRawAuthority() + (uri.getRawPath() != null ? uri.getRawPath() : "");
+
+        sweepIfDue();
+
+        LokiCircuitBreaker breaker = BREAKERS.computeIfAbsent(new Key(endpoint, thresholds), key -> new LokiCircuitBreaker(endpoint, thresholds));
+        breaker.touch();
+        return breaker;
+    }
+
+    static int size() {
+        return BREAKERS.size();
+    }
+
+    private static void sweepIfDue() {
+        long now = System.nanoTime();
+        long next = NEXT_SWEEP.get();
+
+        boolean full = BREAKERS.size() > MAX_BREAKERS;
+        if (!full && (now - next < 0 || !NEXT_SWEEP.compareAndSet(next, now + SWEEP_INTERVAL.toNanos()))) {
+            return;
+        }
+
+        BREAKERS.forEach((key, breaker) -> {
+            if (breaker.isIdle(now, full)) {
+                BREAKERS.remove(key, breaker);
+            }
+        });
+    }
+
+    private synchronized void touch() {
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Whether the breaker can be dropped, past the limit a closed breaker without failures holds no state and is
+     * dropped whatever its last use.
+     */
+    private synchronized boolean isIdle(long now, boolean full) {
+        if (full && state == State.CLOSED && failures == 0) {
+            return true;
+        }
+
+        return (state != State.OPEN || openElapsed()) && now - lastUsed >= IDLE_TIMEOUT.toNanos();
+    }
+
+    /**
+     * Whether a request would be let through now, without taking a half-open probe.
+     */
+    public synchronized boolean allowsRequests() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> openElapsed();
+            case HALF_OPEN -> probes < thresholds.halfOpenRequests();
+        };
+    }
+
+    /**
+     * Let a request through, its outcome must then be reported with {@link #onSuccess(Duration)},
+     * {@link #onFailure()} or {@link #onIgnored()}.
+     *
+     * @return {@code false} when the request must not be sent
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (!openElapsed()) {
+                return false;
+            }
+
+            log.info("Probing Loki endpoint {} after {}", endpoint, thresholds.openDuration());
+            state = State.HALF_OPEN;
+            probes = 0;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (probes >= thresholds.halfOpenRequests()) {
+                return false;
+            }
+            probes++;
+        }
+
+        return true;
+    }
+
+    /**
+     * @param latency the time until the response headers were received
+     */
+    public synchronized void onSuccess(Duration latency) {
+        if (thresholds.slowCallThreshold() != null && latency.compareTo(thresholds.slowCallThreshold()) > 0) {
+            onFailure();
+            return;
+        }
+
+        // a request sent before the breaker opened does not close it
+        if (state == State.OPEN) {
+            return;
+        }
+
+        if (state == State.HALF_OPEN) {
+            log.info("Closing circuit breaker of Loki endpoint {}", endpoint);
+        }
+
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= thresholds.failureThreshold())) {
+            log.warn("Opening circuit breaker of Loki endpoint {} for {} after {} consecutive failures", endpoint, thresholds.openDuration(), failures);
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * The request failed for a reason unrelated to Loki health, e.g. it was interrupted.
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && probes > 0) {
+            probes--;
+        }
+    }
+
+    /**
+     * The remaining time before a probe request is let through, zero when the breaker is not open.
+     */
+    public synchronized Duration remainingOpen() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+
+        long remaining = thresholds.openDuration().toNanos() - (System.nanoTime() - openedAt);
+        return Duration.ofNanos(Math.max(0, remaining));
+    }
+
+    private boolean openElapsed() {
+        return System.nanoTime() - openedAt >= thresholds.openDuration().toNanos();
+    }
+}
@@ -0,0 +1,60 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.exceptions.IllegalVariableEvaluationException;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.time.Duration;
+
+/**
+ * Circuit breaker of the Loki endpoints, shared by every task and trigger of the worker sending to the same endpoint.
+ */
+@Builder
+@Getter
+@EqualsAndHashCode
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class LokiCircuitBreakerPolicy {
+    @Schema(
+        title = "Failure threshold",
+        description = "Number of consecutive failed requests opening the circuit: server errors, connection errors and timeouts, and requests slower than `slowCallThreshold`."
+    )
+    @Builder.Default
+    private Property<Integer> failureThreshold = Property.ofValue(5);
+
+    @Schema(
+        title = "Slow call threshold",
+        description = "Time to the response headers over which a request counts as failed. Defaults to none."
+    )
+    private Property<Duration> slowCallThreshold;
+
+    @Schema(
+        title = "Open duration",
+        description = "Time during which requests fail at once after the circuit opened, before probe requests are let through."
+    )
+    @Builder.Default
+    private Property<Duration> openDuration = Property.ofValue(Duration.ofSeconds(30));
+
+    @Schema(
+        title = "Half-open requests",
+        description = "Number of probe requests let through concurrently once `openDuration` has elapsed. The first succeeding closes the circuit, the first failing opens it again."
+    )
+    @Builder.Default
+    private Property<Integer> halfOpenRequests = Property.ofValue(1);
+
+    static LokiCircuitBreaker.Thresholds render(RunContext runContext, LokiCircuitBreakerPolicy policy) throws IllegalVariableEvaluationException {
+        if (policy == null) {
+            return null;
+        }
+
+        return new LokiCircuitBreaker.Thresholds(
+            Math.max(1, runContext.render(policy.failureThreshold).as(Integer.class).orElse(5)),
+            runContext.render(policy.slowCallThreshold).as(Duration.class).orElse(null),
+            runContext.render(policy.openDuration).as(Duration.class).orElse(Duration.ofSeconds(30)),
+            Math.max(1, runContext.render(policy.halfOpenRequests).as(Integer.class).orElse(1))
+        );
+    }
+}
@@ -0,0 +1,18 @@
+package io.kestra.plugin.grafana.loki;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * A request not sent because the {@link LokiCircuitBreaker} of its endpoint is open.
+ */
+@Getter
+public class LokiCircuitOpenException extends RuntimeException {
+    private final String endpoint;
+
+    public LokiCircuitOpenException(String endpoint, Duration remaining) {
+        super(String.format("Loki circuit breaker is open for %s after consecutive failures, next probe in %d ms", endpoint, remaining.toMillis()));
+        this.endpoint = endpoint;
+    }
+}
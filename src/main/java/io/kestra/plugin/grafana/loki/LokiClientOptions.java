@@ -0,0 +1,120 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.exceptions.IllegalVariableEvaluationException;
+import io.kestra.core.http.client.configurations.HttpConfiguration;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * Connection settings rendered once per task run or trigger evaluation, shared by every request issued by it.
+ */
+@Value
+@Builder(toBuilder = true)
+public class LokiClientOptions {
+    @ToString.Exclude
+    String authToken;
+
+    String tenantId;
+
+    @Builder.Default
+    Duration connectTimeout = Duration.ofSeconds(30);
+
+    /**
+     * Maximum time waiting for data from Loki, for the response headers and between two reads of the body.
+     */
+    @Builder.Default
+    Duration readTimeout = Duration.ofSeconds(60);
+
+    @Builder.Default
+    ResponseCompression compression = ResponseCompression.GZIP;
+
+    @Builder.Default
+    LokiRetry retry = LokiRetry.DEFAULT;
+
+    /**
+     * Limits of the requests to the tenant, {@code null} when they are not limited.
+     */
+    LokiRateLimiter.Limits rateLimit;
+
+    /**
+     * Thresholds of the endpoint circuit breaker, {@code null} when there is none.
+     */
+    LokiCircuitBreaker.Thresholds circuitBreaker;
+
+    /**
+     * Proxy, TLS and redirect settings of the pooled client sending the requests.
+     */
+    @Builder.Default
+    LokiClientPool.Transport transport = LokiClientPool.Transport.DEFAULT;
+
+    /**
+     * Parts of the requests and responses written to the run logger, {@code null} when none is.
+     */
+    @EqualsAndHashCode.Exclude
+    HttpConfiguration.LoggingType[] logs;
+
+    /**
+     * The {@link System#nanoTime()} after which no request is sent anymore and in-flight ones are aborted, shared by
+     * every request of a task run or trigger poll; {@code null} when there is none.
+     */
+    Long deadline;
+
+    /**
+     * Where the requests sent with these options are tracked while in flight, so that stopping the task or trigger
+     * cancels them; {@code null} when they are not tracked.
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    LokiInFlightRequests inFlight;
+
+    /**
+     * Shared by the requests issued with these options, so a task can report the bytes transferred by all of them.
+     */
+    @Builder.Default
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    LokiTransferStats transferStats = new LokiTransferStats();
+
+    /**
+     * Render the connection properties of a task or trigger.
+     *
+     * @param defaultDeadline the deadline when the connection sets none, such as the task {@code timeout}
+     * @param inFlight the requests of the task or trigger, cancelled when it is stopped
+     */
+    public static LokiClientOptions of(
+        RunContext runContext,
+        LokiConnectionInterface connection,
+        Property<Duration> defaultDeadline,
+        LokiInFlightRequests inFlight
+    ) throws IllegalVariableEvaluationException {
+        Duration rDeadline = runContext.render(connection.getDeadline() != null ? connection.getDeadline() : defaultDeadline).as(Duration.class).orElse(null);
+
+        return LokiClientOptions.builder()
+            .authToken(runContext.render(connection.getAuthToken()).as(String.class).orElse(null))
+            .tenantId(runContext.render(connection.getTenantId()).as(String.class).orElse(null))
+            .connectTimeout(Duration.ofSeconds(runContext.render(connection.getConnectTimeout()).as(Integer.class).orElse(30)))
+            .readTimeout(Duration.ofSeconds(runContext.render(connection.getReadTimeout()).as(Integer.class).orElse(60)))
+            .compression(runContext.render(connection.getCompression()).as(ResponseCompression.class).orElse(ResponseCompression.GZIP))
+            .retry(LokiRetryPolicy.render(runContext, connection.getRetryPolicy()))
+            .rateLimit(LokiRateLimit.render(runContext, connection.getRateLimit()))
+            .circuitBreaker(LokiCircuitBreakerPolicy.render(runContext, connection.getCircuitBreaker()))
+            .transport(LokiClientPool.Transport.render(runContext, connection.getOptions()))
+            .logs(connection.getOptions() != null ? connection.getOptions().getLogs() : null)
+            .deadline(rDeadline != null ? System.nanoTime() + rDeadline.toNanos() : null)
+            .inFlight(inFlight)
+            .build();
+    }
+
+    /**
+     * The time left before the deadline, negative once it has passed; {@code null} when there is no deadline.
+     */
+    public Duration remaining() {
+        return deadline != null ? Duration.ofNanos(deadline - System.nanoTime()) : null;
+    }
+}
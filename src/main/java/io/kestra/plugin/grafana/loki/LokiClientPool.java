@@ -0,0 +1,399 @@
+package io.kestra.plugin.grafana.loki;
+
+import com.google.common.hash.Hashing;
+import io.kestra.core.exceptions.IllegalVariableEvaluationException;
+import io.kestra.core.http.client.apache.LoggingRequestInterceptor;
+import io.kestra.core.http.client.apache.LoggingResponseInterceptor;
+import io.kestra.core.http.client.configurations.HttpConfiguration;
+import io.kestra.core.runners.RunContext;
+import lombok.Builder;
+import lombok.ToString;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.auth.AuthScope;
+import org.apache.hc.client5.http.auth.UsernamePasswordCredentials;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.DefaultAuthenticationStrategy;
+import org.apache.hc.client5.http.impl.auth.BasicCredentialsProvider;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.DefaultClientTlsStrategy;
+import org.apache.hc.client5.http.ssl.HostnameVerificationPolicy;
+import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of keep-alive HTTP clients, one per Loki origin and transport settings, so that task runs and
+ * trigger polls against the same Loki reuse already established TCP/TLS connections. Auth tokens and tenants are
+ * request headers: they share the clients of their origin.
+ * <p>
+ * Clients are built from the {@code options} of the task like Kestra's own HTTP client: proxy, TLS, redirects, and
+ * logs written to the logger of the run sending each request.
+ * <p>
+ * No thread is started: idle connections, and clients left unused for {@link #CLIENT_IDLE_TIMEOUT}, are closed while
+ * leasing a client at most every {@link #SWEEP_INTERVAL}. Stopping a task or trigger only cancels its own requests, see
+ * {@link LokiInFlightRequests}.
+ */
+@Slf4j
+public final class LokiClientPool {
+    static final Duration CONNECTION_IDLE_TIMEOUT = Duration.ofSeconds(30);
+    static final Duration CLIENT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+    static final Duration CONNECTION_TIME_TO_LIVE = Duration.ofMinutes(5);
+    static final Duration SWEEP_INTERVAL = Duration.ofSeconds(15);
+    static final int MAX_CONNECTIONS_PER_CLIENT = 50;
+
+    /**
+     * Attribute of the request context holding the {@link RunContext} sending the request.
+     */
+    static final String RUN_CONTEXT_ATTRIBUTE = LokiClientPool.class.getName() + ".runContext";
+
+    /**
+     * Attribute of the request context holding the {@link HttpConfiguration.LoggingType}s logged for the request.
+     */
+    static final String LOGS_ATTRIBUTE = LokiClientPool.class.getName() + ".logs";
+
+    private static final Map<Key, PooledClient> CLIENTS = new ConcurrentHashMap<>();
+    private static final AtomicLong NEXT_SWEEP = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL.toNanos());
+
+    private LokiClientPool() {
+    }
+
+    /**
+     * Lease the client of the request origin, to be closed once the request and its retries are done.
+     */
+    public static Lease lease(URI uri, LokiClientOptions options) {
+        sweepIfDue();
+
+        Key key = Key.of(uri, options);
+        while (true) {
+            PooledClient pooled = CLIENTS.computeIfAbsent(key, k -> PooledClient.create(k, options.getTransport()));
+            if (pooled.acquire()) {
+                return new Lease(pooled);
+            }
+
+            // closed by the sweep after it was looked up, it is not in the cache anymore
+            CLIENTS.remove(key, pooled);
+        }
+    }
+
+    static int size() {
+        return CLIENTS.size();
+    }
+
+    private static void sweepIfDue() {
+        long now = System.nanoTime();
+        long next = NEXT_SWEEP.get();
+
+        if (now - next < 0 || !NEXT_SWEEP.compareAndSet(next, now + SWEEP_INTERVAL.toNanos())) {
+            return;
+        }
+
+        try {
+            CLIENTS.forEach((key, pooled) -> {
+                if (pooled.isIdle(now)) {
+                    if (CLIENTS.remove(key, pooled)) {
+                        log.debug("Closing idle Loki client for {}", key.origin());
+                        pooled.retire();
+                    }
+                    return;
+                }
+
+                pooled.connectionManager.closeExpired();
+                pooled.connectionManager.closeIdle(TimeValue.of(CONNECTION_IDLE_TIMEOUT));
+            });
+        } catch (RuntimeException e) {
+            log.warn("Unable to sweep idle Loki clients", e);
+        }
+    }
+
+    /**
+     * A client in use, released when closed.
+     */
+    public static final class Lease implements AutoCloseable {
+        private final PooledClient pooled;
+        private boolean released = false;
+
+        private Lease(PooledClient pooled) {
+            this.pooled = pooled;
+        }
+
+        public CloseableHttpClient client() {
+            return pooled.client;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                pooled.release();
+            }
+        }
+    }
+
+    /**
+     * Proxy, TLS and redirect settings of a client, rendered from the {@code options} of a task or trigger.
+     */
+    @Value
+    @Builder
+    public static class Transport {
+        public static final Transport DEFAULT = Transport.builder().build();
+
+        Proxy.Type proxyType;
+        String proxyAddress;
+        Integer proxyPort;
+        String proxyUsername;
+
+        @ToString.Exclude
+        String proxyPassword;
+
+        boolean trustAllCertificates;
+
+        @Builder.Default
+        boolean followRedirects = true;
+
+        public static Transport render(RunContext runContext, HttpConfiguration options) throws IllegalVariableEvaluationException {
+            if (options == null) {
+                return DEFAULT;
+            }
+
+            TransportBuilder transport = Transport.builder()
+                .followRedirects(runContext.render(options.getFollowRedirects()).as(Boolean.class).orElse(true));
+
+            if (options.getProxy() != null) {
+                String address = runContext.render(options.getProxy().getAddress()).as(String.class).orElse(null);
+
+                Proxy.Type type = runContext.render(options.getProxy().getType()).as(Proxy.Type.class).orElse(Proxy.Type.DIRECT);
+
+                if (address != null && !address.isEmpty() && type != Proxy.Type.DIRECT) {
+                    transport
+                        .proxyType(type)
+                        .proxyAddress(address)
+                        .proxyPort(runContext.render(options.getProxy().getPort()).as(Integer.class)
+                            .orElseThrow(() -> new IllegalArgumentException("A port is required for the proxy '" + address + "'")))
+                        .proxyUsername(runContext.render(options.getProxy().getUsername()).as(String.class).orElse(null))
+                        .proxyPassword(runContext.render(options.getProxy().getPassword()).as(String.class).orElse(null));
+                }
+            }
+
+            if (options.getSsl() != null) {
+                transport.trustAllCertificates(runContext.render(options.getSsl().getInsecureTrustAllCertificates()).as(Boolean.class).orElse(false));
+            }
+
+            return transport.build();
+        }
+
+        /**
+         * The proxy of every request, {@code null} when there is none.
+         */
+        public ProxySelector proxySelector() {
+            if (proxyAddress == null) {
+                return null;
+            }
+
+            Proxy proxy = new Proxy(proxyType, new InetSocketAddress(proxyAddress, proxyPort));
+
+            return new ProxySelector() {
+                @Override
+                public List<Proxy> select(URI uri) {
+                    return List.of(proxy);
+                }
+
+                @Override
+                public void connectFailed(URI uri, SocketAddress sa, IOException e) {
+                }
+            };
+        }
+
+        /**
+         * A TLS context trusting every certificate, {@code null} unless {@link #trustAllCertificates} is set.
+         */
+        public SSLContext sslContext() {
+            if (!trustAllCertificates) {
+                return null;
+            }
+
+            try {
+                return SSLContexts.custom()
+                    .loadTrustMaterial(null, (chain, authType) -> true)
+                    .build();
+            } catch (GeneralSecurityException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+
+    /**
+     * The proxy password is only kept as a hash so the cache never holds a credential in clear text.
+     */
+    record Key(
+        String origin,
+        Duration connectTimeout,
+        Proxy.Type proxyType,
+        String proxyAddress,
+        Integer proxyPort,
+        String proxyUsername,
+        String proxyPasswordHash,
+        boolean trustAllCertificates,
+        boolean followRedirects
+    ) {
+        static Key of(URI uri, LokiClientOptions options) {
+            Transport transport = options.getTransport();
+
+            return new Key(
+                uri.getScheme() + "://" + uri.getRawAuthority(),
+                options.getConnectTimeout(),
+                transport.getProxyType(),
+                transport.getProxyAddress(),
+                transport.getProxyPort(),
+                transport.getProxyUsername(),
+                transport.getProxyPassword() == null ? null : Hashing.sha256().hashString(transport.getProxyPassword(), StandardCharsets.UTF_8).toString(),
+                transport.isTrustAllCertificates(),
+                transport.isFollowRedirects()
+            );
+        }
+    }
+
+    private static final class PooledClient {
+        private final CloseableHttpClient client;
+        private final PoolingHttpClientConnectionManager connectionManager;
+        private int leases = 0;
+        private boolean retired = false;
+        private long lastUsed = System.nanoTime();
+
+        private PooledClient(CloseableHttpClient client, PoolingHttpClientConnectionManager connectionManager) {
+            this.client = client;
+            this.connectionManager = connectionManager;
+        }
+
+        static PooledClient create(Key key, Transport transport) {
+            PoolingHttpClientConnectionManagerBuilder connectionManagerBuilder = PoolingHttpClientConnectionManagerBuilder.create()
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                    .setConnectTimeout(Timeout.of(key.connectTimeout()))
+                    .setTimeToLive(TimeValue.of(CONNECTION_TIME_TO_LIVE))
+                    .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                    .build()
+                )
+                .setMaxConnTotal(MAX_CONNECTIONS_PER_CLIENT)
+                .setMaxConnPerRoute(MAX_CONNECTIONS_PER_CLIENT);
+
+            SSLContext sslContext = transport.sslContext();
+            if (sslContext != null) {
+                connectionManagerBuilder.setTlsSocketStrategy(new DefaultClientTlsStrategy(sslContext, HostnameVerificationPolicy.CLIENT, NoopHostnameVerifier.INSTANCE));
+            }
+
+            PoolingHttpClientConnectionManager connectionManager = connectionManagerBuilder.build();
+
+            // responses are decompressed by LokiHttpService so that both sizes can be measured, and retried according to
+            // the request retry policy
+            HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .disableContentCompression()
+                .disableAutomaticRetries()
+                .addRequestInterceptorLast((request, entity, context) -> {
+                    RunContext runContext = runContext(context);
+                    HttpConfiguration.LoggingType[] logs = logs(context);
+                    if (runContext != null && logs != null) {
+                        new LoggingRequestInterceptor(runContext.logger(), logs).process(request, entity, context);
+                    }
+                })
+                .addResponseInterceptorLast((response, entity, context) -> {
+                    RunContext runContext = runContext(context);
+                    HttpConfiguration.LoggingType[] logs = logs(context);
+                    if (runContext != null && logs != null) {
+                        new LoggingResponseInterceptor(runContext.logger(), logs).process(response, entity, context);
+                    }
+                });
+
+            ProxySelector proxySelector = transport.proxySelector();
+            if (proxySelector != null) {
+                builder.setProxySelector(proxySelector);
+
+                if (transport.getProxyUsername() != null && transport.getProxyPassword() != null) {
+                    BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+                    credentialsProvider.setCredentials(
+                        new AuthScope(transport.getProxyAddress(), transport.getProxyPort()),
+                        new UsernamePasswordCredentials(transport.getProxyUsername(), transport.getProxyPassword().toCharArray())
+                    );
+
+                    builder
+                        .setProxyAuthenticationStrategy(new DefaultAuthenticationStrategy())
+                        .setDefaultCredentialsProvider(credentialsProvider);
+                }
+            }
+
+            if (!transport.isFollowRedirects()) {
+                builder.disableRedirectHandling();
+            }
+
+            return new PooledClient(builder.build(), connectionManager);
+        }
+
+        private static RunContext runContext(HttpContext context) {
+            return context.getAttribute(RUN_CONTEXT_ATTRIBUTE) instanceof RunContext runContext ? runContext : null;
+        }
+
+        private static HttpConfiguration.LoggingType[] logs(HttpContext context) {
+            return context.getAttribute(LOGS_ATTRIBUTE) instanceof HttpConfiguration.LoggingType[] logs && logs.length > 0 ? logs : null;
+        }
+
+        synchronized boolean acquire() {
+            if (retired) {
+                return false;
+            }
+
+            leases++;
+            lastUsed = System.nanoTime();
+            return true;
+        }
+
+        synchronized void release() {
+            leases--;
+            lastUsed = System.nanoTime();
+
+            if (retired && leases == 0) {
+                close();
+            }
+        }
+
+        synchronized boolean isIdle(long now) {
+            return leases == 0 && now - lastUsed > CLIENT_IDLE_TIMEOUT.toNanos();
+        }
+
+        /**
+         * Close the client once it is not in use anymore, it is not leased again.
+         */
+        synchronized void retire() {
+            retired = true;
+
+            if (leases == 0) {
+                close();
+            }
+        }
+
+        private void close() {
+            this.client.close(CloseMode.GRACEFUL);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.http.client.configurations.HttpConfiguration;
+import io.kestra.core.models.property.Property;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotNull;
+
+import java.time.Duration;
+
+/**
+ * Connection properties shared by every task and trigger sending requests to Loki, rendered into
+ * {@link LokiClientOptions} by {@link LokiClientOptions#of}.
+ */
+public interface LokiConnectionInterface {
+    @Schema(
+        title = "Loki base URL",
+        description = "The base URL of your Loki instance (e.g., http://localhost:3100 or https://logs.example.com)"
+    )
+    @NotNull
+    Property<String> getUrl();
+
+    @Schema(
+        title = "Authentication token",
+        description = "Bearer token for authentication if Loki is secured"
+    )
+    Property<String> getAuthToken();
+
+    @Schema(
+        title = "Grafana Loki Tenant ID",
+        description = "X-Scope-OrgID header value for multi-tenant Loki setups"
+    )
+    Property<String> getTenantId();
+
+    @Schema(
+        title = "Connection timeout",
+        description = "HTTP connection timeout in seconds"
+    )
+    Property<Integer> getConnectTimeout();
+
+    @Schema(
+        title = "Read timeout",
+        description = "HTTP read timeout in seconds"
+    )
+    Property<Integer> getReadTimeout();
+
+    @Schema(
+        title = "Response compression",
+        description = "Compression requested for query responses: NONE, GZIP, or ZSTD with a fallback to gzip. " +
+            "Responses are decompressed while being parsed. Defaults to GZIP."
+    )
+    default Property<ResponseCompression> getCompression() {
+        return Property.ofValue(ResponseCompression.GZIP);
+    }
+
+    @Schema(
+        title = "Retry policy",
+        description = "Retries of the requests failing with a retryable status such as a 429 from the Loki query or ingestion limiter, or a connection error. " +
+            "Defaults to 3 attempts with an exponential backoff from 500ms."
+    )
+    LokiRetryPolicy getRetryPolicy();
+
+    @Schema(
+        title = "Rate limit",
+        description = "Client-side limits of the request rate and of the requests in flight to the Loki tenant, shared by every task and trigger of the worker. " +
+            "Defaults to no limit."
+    )
+    LokiRateLimit getRateLimit();
+
+    @Schema(
+        title = "Circuit breaker",
+        description = "Stop sending requests to a Loki endpoint for a while after consecutive failures, failing at once instead of waiting for timeouts. " +
+            "Shared by every task and trigger of the worker. Defaults to none."
+    )
+    LokiCircuitBreakerPolicy getCircuitBreaker();
+
+    @Schema(
+        title = "Deadline",
+        description = "Maximum duration of all the requests sent to Loki by a task run or a trigger poll, including retries and waits for the rate limit. " +
+            "Each request only waits for the time left, and requests still in flight when it is reached are aborted. " +
+            "Defaults to the task `timeout`, and to none for triggers."
+    )
+    Property<Duration> getDeadline();
+
+    @Schema(
+        title = "HTTP client options",
+        description = "Proxy, TLS, redirects and logging of the HTTP requests to Loki. " +
+            "Timeouts are set by `connectTimeout` and `readTimeout`, authentication by `authToken`, and other options are ignored."
+    )
+    HttpConfiguration getOptions();
+}
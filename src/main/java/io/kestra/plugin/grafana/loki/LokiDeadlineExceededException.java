@@ -0,0 +1,14 @@
+package io.kestra.plugin.grafana.loki;
+
+/**
+ * A request not sent, or aborted while in flight, because the deadline of its task run or trigger poll has passed.
+ */
+public class LokiDeadlineExceededException extends RuntimeException {
+    public LokiDeadlineExceededException(String message) {
+        super(message);
+    }
+
+    public LokiDeadlineExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,267 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.models.triggers.StatefulTriggerService;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.storages.kv.KVMetadata;
+import io.kestra.core.storages.kv.KVStore;
+import io.kestra.core.storages.kv.KVValueAndMetadata;
+import io.kestra.plugin.grafana.loki.models.LokiEntry;
+
+import java.io.*;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Entries already seen by a trigger, kept as 64-bit hashes of their timestamp, labels and line in sorted primitive
+ * arrays, one per second of log time. The hashes added by a poll are appended, and sorted once when the state is
+ * written.
+ * <p>
+ * Buckets older than the next query start are pruned as Loki will not return them again, and the oldest buckets are
+ * dropped past {@link #MAX_ENTRIES}. The state is stored in the KV store as a base64 encoded binary blob.
+ * <p>
+ * A state written by previous versions of the trigger, entries of {@code <timestamp>_<hashCode>} ids, is migrated
+ * when read: its ids are kept in the buckets and matched against the entries up to its latest timestamp.
+ */
+final class LokiDedupState {
+    static final int MAX_ENTRIES = 200_000;
+
+    private static final long BUCKET_NANOS = 1_000_000_000L;
+    private static final byte FORMAT_VERSION = 2;
+    private static final String FORMAT_PREFIX = "loki-dedup:";
+
+    private final TreeMap<Long, Bucket> buckets = new TreeMap<>();
+    private int size = 0;
+    private boolean modified = false;
+    private long legacyUntil = Long.MIN_VALUE;
+
+    private static final class Bucket {
+        private long[] hashes;
+        private int size;
+        private int sorted;
+        private Set<Long> appended;
+
+        Bucket(long[] hashes, int size) {
+            this.hashes = hashes;
+            this.size = size;
+            this.sorted = size;
+        }
+
+        boolean contains(long hash) {
+            return Arrays.binarySearch(hashes, 0, sorted, hash) >= 0 || (appended != null && appended.contains(hash));
+        }
+
+        boolean add(long hash) {
+            if (contains(hash)) {
+                return false;
+            }
+
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, Math.max(8, size * 2));
+            }
+            hashes[size++] = hash;
+
+            if (appended == null) {
+                appended = new HashSet<>();
+            }
+            appended.add(hash);
+            return true;
+        }
+
+        void sort() {
+            if (sorted < size) {
+                Arrays.sort(hashes, 0, size);
+                sorted = size;
+                appended = null;
+            }
+        }
+    }
+
+    /**
+     * Record an entry, returns {@code false} if it was already seen.
+     */
+    boolean add(LokiEntry entry) {
+        long timestamp = LokiTime.parseTimestamp(entry.timestamp());
+        long hash = entry.hash() ^ timestamp * 0x9E3779B97F4A7C15L;
+
+        Bucket bucket = buckets.computeIfAbsent(Math.floorDiv(timestamp, BUCKET_NANOS), key -> new Bucket(new long[8], 0));
+        if (timestamp <= legacyUntil && bucket.contains(legacyHash(timestamp, legacyId(entry)))) {
+            return false;
+        }
+
+        if (!bucket.add(hash)) {
+            return false;
+        }
+
+        size++;
+        modified = true;
+        return true;
+    }
+
+    /**
+     * Drop the entries older than {@code timestamp}, and the oldest ones past {@link #MAX_ENTRIES}.
+     */
+    void prune(long timestamp) {
+        Map<Long, Bucket> expired = buckets.headMap(Math.floorDiv(timestamp, BUCKET_NANOS), false);
+        if (!expired.isEmpty()) {
+            size -= expired.values().stream().mapToInt(bucket -> bucket.size).sum();
+            expired.clear();
+            modified = true;
+        }
+
+        while (size > MAX_ENTRIES && buckets.size() > 1) {
+            size -= buckets.pollFirstEntry().getValue().size;
+            modified = true;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Latest timestamp of a migrated legacy state, empty if the state was not migrated.
+     */
+    OptionalLong legacyUntil() {
+        return legacyUntil == Long.MIN_VALUE ? OptionalLong.empty() : OptionalLong.of(legacyUntil);
+    }
+
+    boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Read the state stored under {@code key}, an absent, expired or unreadable state is read as empty.
+     */
+    static Optional<LokiDedupState> read(RunContext runContext, String key, Optional<Duration> ttl) {
+        try {
+            KVStore kvStore = runContext.namespaceKv(runContext.flowInfo().namespace());
+            Optional<Object> value = kvStore.getValue(key).map(kvValue -> kvValue.value());
+
+            // StatefulTriggerService stores its entries as a JSON array
+            if (value.isPresent() && value.get() instanceof byte[]) {
+                return migrate(StatefulTriggerService.readState(runContext, key, ttl));
+            }
+
+            if (value.isEmpty() || !(value.get() instanceof String encoded) || !encoded.startsWith(FORMAT_PREFIX)) {
+                return Optional.empty();
+            }
+
+            return Optional.of(decode(Base64.getDecoder().decode(encoded.substring(FORMAT_PREFIX.length()))));
+        } catch (Exception e) {
+            runContext.logger().warn("Unable to read the trigger state", e);
+            return Optional.empty();
+        }
+    }
+
+    void write(RunContext runContext, String key, Optional<Duration> ttl) {
+        try {
+            KVStore kvStore = runContext.namespaceKv(runContext.flowInfo().namespace());
+            String encoded = FORMAT_PREFIX + Base64.getEncoder().encodeToString(encode());
+            kvStore.put(key, new KVValueAndMetadata(new KVMetadata("trigger state", ttl.orElse(null)), encoded));
+            modified = false;
+        } catch (Exception e) {
+            runContext.logger().warn("Unable to write the trigger state", e);
+        }
+    }
+
+    /**
+     * Keep the ids of a legacy state, an empty legacy state is read as absent.
+     */
+    static Optional<LokiDedupState> migrate(Map<String, StatefulTriggerService.Entry> legacy) {
+        LokiDedupState state = new LokiDedupState();
+
+        for (String id : legacy.keySet()) {
+            int separator = id.lastIndexOf('_');
+            if (separator <= 0) {
+                continue;
+            }
+
+            try {
+                long timestamp = Long.parseLong(id.substring(0, separator));
+                int hashCode = Integer.parseInt(id.substring(separator + 1));
+
+                state.buckets.computeIfAbsent(Math.floorDiv(timestamp, BUCKET_NANOS), key -> new Bucket(new long[8], 0))
+                    .add(legacyHash(timestamp, hashCode));
+                state.size++;
+                state.legacyUntil = Math.max(state.legacyUntil, timestamp);
+            } catch (NumberFormatException e) {
+                // not an id written by the trigger
+            }
+        }
+
+        if (state.size == 0) {
+            return Optional.empty();
+        }
+
+        state.modified = true;
+        return Optional.of(state);
+    }
+
+    /**
+     * Java hash code of the content and labels identifying an entry in a legacy state, the labels being in response order.
+     */
+    static int legacyId(LokiEntry entry) {
+        String content = entry.line() != null ? entry.line() : entry.value();
+        return (content + entry.labels()).hashCode();
+    }
+
+    private static long legacyHash(long timestamp, int hashCode) {
+        return ~(timestamp * 0x9E3779B97F4A7C15L + hashCode);
+    }
+
+    byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + buckets.size() * 12 + size * 8);
+
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(FORMAT_VERSION);
+            output.writeLong(legacyUntil);
+            output.writeInt(buckets.size());
+
+            for (Map.Entry<Long, Bucket> bucket : buckets.entrySet()) {
+                bucket.getValue().sort();
+                output.writeLong(bucket.getKey());
+                output.writeInt(bucket.getValue().size);
+                for (int i = 0; i < bucket.getValue().size; i++) {
+                    output.writeLong(bucket.getValue().hashes[i]);
+                }
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    static LokiDedupState decode(byte[] bytes) throws IOException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte version = input.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported trigger state version " + version);
+            }
+
+            LokiDedupState state = new LokiDedupState();
+            state.legacyUntil = input.readLong();
+            int bucketCount = input.readInt();
+
+            for (int i = 0; i < bucketCount; i++) {
+                long key = input.readLong();
+                int size = input.readInt();
+
+                long[] hashes = new long[size];
+                for (int j = 0; j < size; j++) {
+                    hashes[j] = input.readLong();
+                }
+
+                state.buckets.put(key, new Bucket(hashes, size));
+                state.size += size;
+            }
+
+            return state;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.models.tasks.common.FetchType;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.FileSerde;
+import io.kestra.plugin.grafana.loki.models.LokiEntry;
+import io.kestra.plugin.grafana.loki.models.LokiMatrix;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
+import io.kestra.plugin.grafana.loki.models.LokiStreams;
+import lombok.Getter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects entries according to a {@link FetchType}: kept in memory for {@code FETCH} and {@code FETCH_ONE},
+ * written one by one to an Ion file for {@code STORE}, or only counted for {@code NONE}.
+ * <p>
+ * Fetched log lines are held in {@link LokiStreams} columns and metric samples in a {@link LokiMatrix}, they are only
+ * expanded to maps when the output is read.
+ */
+class LokiFetchSink implements LokiResponseParser.SampleSink, AutoCloseable {
+    private final RunContext runContext;
+
+    @Getter
+    private final FetchType fetchType;
+
+    private final LokiStreams lines;
+    private final LokiMatrix samples;
+    private final List<Map<String, Object>> scalars;
+
+    // reused for every stored entry, the serialized map is not kept
+    private final Map<String, Object> row = new HashMap<>();
+
+    @Getter
+    private Map<String, Object> log;
+
+    @Getter
+    private long size = 0;
+
+    private final File file;
+    private final OutputStream output;
+
+    LokiFetchSink(RunContext runContext, FetchType fetchType) throws IOException {
+        this.runContext = runContext;
+        this.fetchType = fetchType;
+        this.lines = fetchType == FetchType.FETCH ? new LokiStreams() : null;
+        this.samples = fetchType == FetchType.FETCH ? new LokiMatrix() : null;
+        this.scalars = fetchType == FetchType.FETCH ? new ArrayList<>() : null;
+
+        if (fetchType == FetchType.STORE) {
+            this.file = runContext.workingDir().createTempFile(".ion").toFile();
+            this.output = new BufferedOutputStream(new FileOutputStream(this.file), FileSerde.BUFFER_SIZE);
+        } else {
+            this.file = null;
+            this.output = null;
+        }
+    }
+
+    @Override
+    public void accept(LokiEntry entry) throws IOException {
+        switch (fetchType) {
+            case FETCH -> {
+                if (entry.isLine()) {
+                    lines.add(entry);
+                } else {
+                    scalars.add(entry.toMap());
+                }
+            }
+            case FETCH_ONE -> {
+                if (log == null) {
+                    log = entry.toMap();
+                }
+            }
+            case STORE -> {
+                row.clear();
+                row.put("timestamp", entry.timestamp());
+                if (entry.isLine()) {
+                    row.put("line", entry.line());
+                } else {
+                    row.put("value", entry.value());
+                }
+                row.put("labels", entry.labels());
+                FileSerde.write(output, row);
+            }
+            case NONE -> {
+            }
+        }
+
+        size++;
+    }
+
+    @Override
+    public void acceptSample(Map<String, String> labels, long timestamp, double value) throws IOException {
+        switch (fetchType) {
+            case FETCH -> samples.add(labels, timestamp, value);
+            case FETCH_ONE -> {
+                if (log == null) {
+                    log = LokiMatrix.toMap(labels, timestamp, value);
+                }
+            }
+            case STORE -> {
+                row.clear();
+                row.put("timestamp", LokiMatrix.formatTimestamp(timestamp));
+                row.put("value", LokiMatrix.formatValue(value));
+                row.put("labels", labels);
+                FileSerde.write(output, row);
+            }
+            case NONE -> {
+            }
+        }
+
+        size++;
+    }
+
+    /**
+     * The fetched entries, only valid for {@code FETCH}.
+     */
+    List<Map<String, Object>> getLogs() {
+        if (!lines.isEmpty()) {
+            return lines.asMaps();
+        }
+        return samples.isEmpty() ? scalars : samples.asMaps();
+    }
+
+    /**
+     * Flush and upload the stored file to internal storage, only valid for {@code STORE}.
+     */
+    URI store() throws IOException {
+        output.close();
+        return runContext.storage().putFile(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (output != null) {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package io.kestra.plugin.grafana.loki;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * A request answered by Loki with a non-2xx status.
+ */
+@Getter
+public class LokiHttpException extends RuntimeException {
+    private final int statusCode;
+
+    /**
+     * The delay requested by the {@code Retry-After} header, {@code null} when none was sent.
+     */
+    private final Duration retryAfter;
+
+    public LokiHttpException(int statusCode, String body, Duration retryAfter) {
+        super(String.format("Loki API request failed with status %d: %s", statusCode, body));
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+}
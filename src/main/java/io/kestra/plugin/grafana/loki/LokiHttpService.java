@@ -1,58 +1,61 @@
 package io.kestra.plugin.grafana.loki;
 
+import com.google.common.io.CountingInputStream;
+import io.airlift.compress.zstd.ZstdInputStream;
 import io.kestra.core.exceptions.IllegalVariableEvaluationException;
 import io.kestra.core.http.HttpRequest;
 import io.kestra.core.http.HttpResponse;
-import io.kestra.core.http.client.HttpClient;
-import io.kestra.core.http.client.configurations.HttpConfiguration;
-import io.kestra.core.http.client.configurations.TimeoutConfiguration;
 import io.kestra.core.models.property.Property;
 import io.kestra.core.runners.RunContext;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequest;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.util.Timeout;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import static java.net.URLEncoder.encode;
 
 public class LokiHttpService {
+    private static final ScheduledThreadPoolExecutor DEADLINES = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "loki-request-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    public static HttpClient createClient(RunContext runContext, Property<Integer> connectTimeout) throws IllegalVariableEvaluationException {
-        Integer rConnectionTimeout = runContext.render(connectTimeout).as(Integer.class).orElse(30);
-
-        HttpConfiguration configuration = HttpConfiguration.builder()
-            .timeout(TimeoutConfiguration.builder()
-                .connectTimeout(Property.ofValue(Duration.ofSeconds(rConnectionTimeout)))
-                .build())
-            .build();
-
-        return HttpClient.builder()
-            .runContext(runContext)
-            .configuration(configuration)
-            .build();
+    static {
+        // deadlines are usually far away and cancelled once the request completes
+        DEADLINES.setRemoveOnCancelPolicy(true);
     }
 
-    public static HttpRequest.HttpRequestBuilder buildRequest(
-        RunContext runContext,
-        URI uri,
-        Property<String> authToken,
-        Property<String> tenantId
-    ) throws IllegalVariableEvaluationException {
+    public static HttpRequest.HttpRequestBuilder buildRequest(URI uri, LokiClientOptions options) {
         HttpRequest.HttpRequestBuilder requestBuilder = HttpRequest.builder()
             .uri(uri);
 
-        if (authToken != null) {
-            runContext.render(authToken).as(String.class)
-                .ifPresent(token -> requestBuilder.addHeader("Authorization", "Bearer " + token));
+        if (options.getAuthToken() != null) {
+            requestBuilder.addHeader("Authorization", "Bearer " + options.getAuthToken());
         }
 
-        if (tenantId != null) {
-            runContext.render(tenantId).as(String.class)
-                .ifPresent(tenant -> requestBuilder.addHeader("X-Scope-OrgID", tenant));
+        if (options.getTenantId() != null) {
+            requestBuilder.addHeader("X-Scope-OrgID", options.getTenantId());
         }
 
-        requestBuilder.addHeader("Content-Type", "application/json");
         requestBuilder.addHeader("Accept", "application/json");
 
         return requestBuilder;
@@ -61,49 +64,378 @@ public class LokiHttpService {
     public static HttpResponse<String> executeGetRequest(
         RunContext runContext,
         URI uri,
-        Property<String> authToken,
-        Property<String> tenantId,
-        Property<Integer> connectTimeout
+        LokiClientOptions options
     ) throws Exception {
-        HttpClient client = createClient(runContext, connectTimeout);
-        HttpRequest request = buildRequest(runContext, uri, authToken, tenantId)
+        HttpRequest request = buildRequest(uri, options)
             .method("GET")
             .build();
 
-        HttpResponse<String> res = client.request(request);
+        return execute(runContext, request, options);
+    }
 
-        if (res.getStatus().getCode() < 200 || res.getStatus().getCode() >= 300) {
-            throw new RuntimeException(
-                String.format("Loki API request failed with status %d: %s",
-                    res.getStatus().getCode(),
-                    res.getBody())
-            );
+    /**
+     * Execute a GET request and hand the response body to {@code reader} as a stream, without buffering it.
+     * <p>
+     * The response is requested with the options compression and decompressed while it is read; the bytes received
+     * and decompressed are added to the options transfer stats.
+     */
+    public static <T> T executeGetRequest(
+        RunContext runContext,
+        URI uri,
+        LokiClientOptions options,
+        BodyReader<T> reader
+    ) throws Exception {
+        HttpRequest request = buildRequest(uri, options)
+            .addHeader("Accept-Encoding", options.getCompression().acceptEncoding())
+            .method("GET")
+            .build();
+
+        try (LokiClientPool.Lease lease = LokiClientPool.lease(request.getUri(), options)) {
+            return withRetries(runContext, request, options, exchange -> lease.client().execute(exchange.send(request.to(runContext)), exchange.context(), response -> {
+                exchange.responded();
+
+                if (response.getCode() < 200 || response.getCode() >= 300) {
+                    throw failure(response);
+                }
+
+                if (response.getEntity() == null) {
+                    throw new IOException("Loki API returned an empty response");
+                }
+
+                // once entries may have been handed to the reader, the request is not safe to retry anymore
+                exchange.reading();
+
+                Header contentEncoding = response.getFirstHeader("Content-Encoding");
+
+                try (
+                    CountingInputStream compressed = new CountingInputStream(response.getEntity().getContent());
+                    CountingInputStream uncompressed = new CountingInputStream(decode(compressed, contentEncoding != null ? contentEncoding.getValue() : null))
+                ) {
+                    try {
+                        return reader.read(uncompressed);
+                    } finally {
+                        options.getTransferStats().record(compressed.getCount(), uncompressed.getCount());
+                    }
+                }
+            }));
         }
-        return res;
     }
 
     public static HttpResponse<String> executePostRequest(
         RunContext runContext,
         URI uri,
-        Property<String> authToken,
-        Property<String> tenantId,
-        Property<Integer> connectTimeout
+        LokiClientOptions options
+    ) throws Exception {
+        HttpRequest request = buildRequest(uri, options)
+            .method("POST")
+            .build();
+
+        return execute(runContext, request, options);
+    }
+
+    /**
+     * Execute a POST request with a body, its content type is sent as the {@code Content-Type} header.
+     */
+    public static HttpResponse<String> executePostRequest(
+        RunContext runContext,
+        URI uri,
+        LokiClientOptions options,
+        HttpRequest.RequestBody body
     ) throws Exception {
-        HttpClient client = createClient(runContext, connectTimeout);
-        HttpRequest request = buildRequest(runContext, uri, authToken, tenantId)
+        HttpRequest request = buildRequest(uri, options)
             .method("POST")
+            .body(body)
             .build();
 
-        HttpResponse<String> res = client.request(request);
+        return execute(runContext, request, options);
+    }
+
+    private static HttpResponse<String> execute(RunContext runContext, HttpRequest request, LokiClientOptions options) throws Exception {
+        try (LokiClientPool.Lease lease = LokiClientPool.lease(request.getUri(), options)) {
+            return withRetries(runContext, request, options, exchange -> lease.client().execute(exchange.send(request.to(runContext)), exchange.context(), response -> {
+                exchange.responded();
+
+                if (response.getCode() < 200 || response.getCode() >= 300) {
+                    throw failure(response);
+                }
+
+                return HttpResponse.from(
+                    response,
+                    response.getEntity() != null ? EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8) : null,
+                    request,
+                    exchange.context()
+                );
+            }));
+        }
+    }
+
+    /**
+     * Run a request, attempting it again according to the options retry policy when Loki answers with a retryable
+     * status, or when the connection fails before any response was read for an idempotent request. No attempt is
+     * made past the options deadline.
+     * <p>
+     * Retries, the time spent backing off and waiting for the rate limiter are added to the options transfer stats.
+     */
+    private static <T> T withRetries(RunContext runContext, HttpRequest request, LokiClientOptions options, Attempt<T> attempt) throws Exception {
+        LokiRetry retry = options.getRetry();
+        boolean idempotent = "GET".equalsIgnoreCase(request.getMethod());
+        LokiRateLimiter limiter = options.getRateLimit() != null ?
+            LokiRateLimiter.get(request.getUri(), options.getTenantId(), options.getRateLimit()) :
+            null;
+        LokiCircuitBreaker breaker = options.getCircuitBreaker() != null ?
+            LokiCircuitBreaker.get(request.getUri(), options.getCircuitBreaker()) :
+            null;
+
+        for (int attempts = 1; ; attempts++) {
+            Exchange exchange = new Exchange(runContext, options);
+            Duration delay;
+
+            try {
+                return send(options, limiter, breaker, exchange, attempt);
+            } catch (LokiHttpException e) {
+                delay = retry.isRetryable(e.getStatusCode()) ? retry.delay(attempts, e.getRetryAfter()) : null;
+                if (delay == null) {
+                    throw e;
+                }
+
+                runContext.logger().warn("Loki request failed with status {}, retrying in {} ms (attempt {}/{})", e.getStatusCode(), delay.toMillis(), attempts, retry.getMaxAttempts());
+            } catch (IOException e) {
+                delay = idempotent && !exchange.isReading() && !exchange.isCancelled() ? retry.delay(attempts, null) : null;
+                if (delay == null) {
+                    throw e;
+                }
+
+                runContext.logger().warn("Loki request failed with {}, retrying in {} ms (attempt {}/{})", e.toString(), delay.toMillis(), attempts, retry.getMaxAttempts());
+            }
+
+            Duration remaining = options.remaining();
+            if (remaining != null && delay.compareTo(remaining) >= 0) {
+                throw new LokiDeadlineExceededException("Loki request deadline reached before its next attempt in " + delay.toMillis() + " ms");
+            }
+
+            options.getTransferStats().recordRetry(delay);
+            Thread.sleep(delay);
+        }
+    }
+
+    /**
+     * A single attempt of a request: refused at once when the endpoint circuit breaker is open or the deadline has
+     * passed, then waiting for the tenant rate limiter, its outcome being reported to the circuit breaker. An attempt
+     * still in flight at the deadline is aborted.
+     */
+    private static <T> T send(LokiClientOptions options, LokiRateLimiter limiter, LokiCircuitBreaker breaker, Exchange exchange, Attempt<T> attempt) throws Exception {
+        Duration remaining = options.remaining();
+        if (remaining != null && !remaining.isPositive()) {
+            throw new LokiDeadlineExceededException("Loki request deadline reached before sending the request");
+        }
+
+        if (breaker != null && !breaker.tryAcquire()) {
+            throw new LokiCircuitOpenException(breaker.getEndpoint(), breaker.remainingOpen());
+        }
+
+        try {
+            if (limiter != null) {
+                Duration wait = limiter.acquire(remaining);
+                if (wait == null) {
+                    throw new LokiDeadlineExceededException("Loki request deadline reached while waiting for the rate limit");
+                }
+                options.getTransferStats().recordRateLimitWait(wait);
+            }
+        } catch (InterruptedException | LokiDeadlineExceededException e) {
+            if (breaker != null) {
+                breaker.onIgnored();
+            }
+            throw e;
+        }
+
+        try {
+            T result = attempt.execute(exchange);
+            if (breaker != null) {
+                breaker.onSuccess(exchange.latency());
+            }
+            return result;
+        } catch (LokiHttpException e) {
+            if (breaker != null) {
+                if (e.getStatusCode() >= 500) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onSuccess(exchange.latency());
+                }
+            }
+            throw e;
+        } catch (IOException e) {
+            if (exchange.isCancelled()) {
+                if (breaker != null) {
+                    breaker.onIgnored();
+                }
+                throw e;
+            }
+
+            if (exchange.isExpired()) {
+                if (breaker != null) {
+                    breaker.onIgnored();
+                }
+                throw new LokiDeadlineExceededException("Loki request aborted at its deadline", e);
+            }
+
+            if (breaker != null) {
+                breaker.onFailure();
+            }
+            throw e;
+        } catch (Exception | Error e) {
+            if (breaker != null) {
+                breaker.onIgnored();
+            }
+            throw e;
+        } finally {
+            exchange.close();
+            if (limiter != null) {
+                limiter.release();
+            }
+        }
+    }
+
+    private static LokiHttpException failure(ClassicHttpResponse response) throws IOException, ParseException {
+        Header retryAfter = response.getFirstHeader("Retry-After");
+
+        return new LokiHttpException(
+            response.getCode(),
+            response.getEntity() != null ? EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8) : null,
+            LokiRetry.parseRetryAfter(retryAfter != null ? retryAfter.getValue() : null)
+        );
+    }
+
+    @FunctionalInterface
+    private interface Attempt<T> {
+        T execute(Exchange exchange) throws Exception;
+    }
+
+    /**
+     * A request attempt: its timeouts, when it was sent and answered, and its abort at the options deadline or when the
+     * task or trigger sending it is stopped.
+     */
+    private static final class Exchange implements Cancellable {
+        private final LokiClientOptions options;
+        private final HttpClientContext context = HttpClientContext.create();
+        private volatile long sentAt = System.nanoTime();
+        private volatile long respondedAt = 0;
+        private volatile boolean reading = false;
+        private volatile boolean expired = false;
+        private volatile boolean cancelled = false;
+        private volatile HttpUriRequest request;
+        private ScheduledFuture<?> abort;
 
-        if (res.getStatus().getCode() < 200 || res.getStatus().getCode() >= 300) {
-            throw new RuntimeException(
-                String.format("Loki API request failed with status %d: %s",
-                    res.getStatus().getCode(),
-                    res.getBody())
+        Exchange(RunContext runContext, LokiClientOptions options) {
+            this.options = options;
+
+            // the pooled client logs the request to the run sending it
+            context.setAttribute(LokiClientPool.RUN_CONTEXT_ATTRIBUTE, runContext);
+            context.setAttribute(LokiClientPool.LOGS_ATTRIBUTE, options.getLogs());
+        }
+
+        /**
+         * Prepare the request for sending: its response timeout is the read timeout, shortened to the time left
+         * before the deadline, when it is aborted.
+         */
+        HttpUriRequest send(HttpUriRequest request) {
+            Duration timeout = options.getReadTimeout();
+            Duration remaining = options.remaining();
+
+            if (remaining != null) {
+                remaining = remaining.isPositive() ? remaining : Duration.ofMillis(1);
+                timeout = timeout.compareTo(remaining) < 0 ? timeout : remaining;
+
+                abort = DEADLINES.schedule(() -> {
+                    expired = true;
+                    request.abort();
+                }, remaining.toNanos(), TimeUnit.NANOSECONDS);
+            }
+
+            context.setRequestConfig(RequestConfig.custom()
+                .setResponseTimeout(Timeout.of(timeout))
+                .setConnectionRequestTimeout(Timeout.of(timeout))
+                .build()
             );
+
+            this.request = request;
+            if (options.getInFlight() != null) {
+                options.getInFlight().add(this);
+            }
+
+            sentAt = System.nanoTime();
+            return request;
+        }
+
+        @Override
+        public boolean cancel() {
+            cancelled = true;
+
+            HttpUriRequest sent = request;
+            if (sent != null) {
+                sent.abort();
+            }
+            return true;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        HttpClientContext context() {
+            return context;
+        }
+
+        void responded() {
+            respondedAt = System.nanoTime();
+        }
+
+        void reading() {
+            reading = true;
+        }
+
+        boolean isReading() {
+            return reading;
         }
-        return res;
+
+        boolean isExpired() {
+            return expired;
+        }
+
+        /**
+         * The time until the response headers were received, or until now when none was.
+         */
+        Duration latency() {
+            return Duration.ofNanos((respondedAt != 0 ? respondedAt : System.nanoTime()) - sentAt);
+        }
+
+        void close() {
+            if (abort != null) {
+                abort.cancel(false);
+            }
+
+            if (options.getInFlight() != null) {
+                options.getInFlight().remove(this);
+            }
+        }
+    }
+
+    private static InputStream decode(InputStream inputStream, String contentEncoding) throws IOException {
+        if (contentEncoding == null) {
+            return inputStream;
+        }
+
+        return switch (contentEncoding.trim().toLowerCase(Locale.ROOT)) {
+            case "", "identity" -> inputStream;
+            case "gzip", "x-gzip" -> new GZIPInputStream(inputStream, 64 * 1024);
+            case "deflate" -> new InflaterInputStream(inputStream);
+            case "zstd" -> new ZstdInputStream(inputStream);
+            default -> throw new IOException("Unsupported Loki response content encoding '" + contentEncoding + "'");
+        };
+    }
+
+    @FunctionalInterface
+    public interface BodyReader<T> {
+        T read(InputStream inputStream) throws IOException;
     }
 
     public static String buildBaseUrl(RunContext runContext, Property<String> url) throws IllegalVariableEvaluationException {
@@ -0,0 +1,34 @@
+package io.kestra.plugin.grafana.loki;
+
+import org.apache.hc.core5.concurrent.Cancellable;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Requests in flight of a task or trigger, cancelled when the worker stops it. The pooled clients they were sent with
+ * are left open for the other flows of the worker.
+ */
+public class LokiInFlightRequests {
+    private final Set<Cancellable> requests = ConcurrentHashMap.newKeySet();
+
+    void add(Cancellable request) {
+        requests.add(request);
+    }
+
+    void remove(Cancellable request) {
+        requests.remove(request);
+    }
+
+    public void cancelAll() {
+        requests.forEach(request -> {
+            if (requests.remove(request)) {
+                request.cancel();
+            }
+        });
+    }
+
+    int size() {
+        return requests.size();
+    }
+}
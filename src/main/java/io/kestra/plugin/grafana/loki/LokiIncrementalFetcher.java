@@ -0,0 +1,226 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.runners.RunContext;
+import io.kestra.plugin.grafana.loki.models.LokiEntry;
+import io.kestra.plugin.grafana.loki.models.LokiMatrix;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Fetches a metric range query by chunks of whole steps aligned on the epoch, as the query frontends of Prometheus and
+ * Thanos do: runs over a sliding window then evaluate the same points, so the chunks Loki will no longer change are read
+ * from the {@link LokiResultCache}, and only the missing chunks and the recent tail are queried.
+ * <p>
+ * A missing chunk is fetched together with the next immutable ones, up to {@link #MAX_CHUNKS_PER_REQUEST} chunks and
+ * Loki's {@link #MAX_POINTS} points per series, and each of them is cached, whether they were already cached or not: in
+ * a sliding window, the chunks following a missing one are usually missing too.
+ * <p>
+ * Chunks are cached whole, samples outside of the requested range or past {@code maxRecords} are only dropped when they
+ * are sent to the sink. Chunks of results that are not a {@code matrix} are not cached, log queries are not meant to be
+ * fetched by chunks: see {@link #isMetricQuery(String)}.
+ */
+class LokiIncrementalFetcher {
+    static final long MAX_POINTS = 11_000;
+    static final int MAX_CHUNKS_PER_REQUEST = 24;
+
+    private final RunContext runContext;
+    private final LokiRangeFetcher fetcher;
+    private final LokiResultCache cache;
+    private final LokiTransferStats transferStats;
+    private final String queryKey;
+    private final long step;
+    private final long chunk;
+
+    /**
+     * @param bytesSaved the response bytes received from Loki when the cached chunks were fetched
+     */
+    record Summary(String resultType, int hits, int misses, int pages, long bytesSaved) {
+    }
+
+    /**
+     * @param queryKey the key of everything the result depends on but its time range
+     * @param step the query step in nanoseconds
+     * @param chunk the chunk duration in nanoseconds, a multiple of {@code step}
+     */
+    LokiIncrementalFetcher(RunContext runContext, LokiRangeFetcher fetcher, LokiResultCache cache, LokiTransferStats transferStats, String queryKey, long step, long chunk) {
+        this.runContext = runContext;
+        this.fetcher = fetcher;
+        this.cache = cache;
+        this.transferStats = transferStats;
+        this.queryKey = queryKey;
+        this.step = step;
+        this.chunk = chunk;
+    }
+
+    /**
+     * Whether a LogQL query is a metric query, log queries starting with a stream selector.
+     */
+    static boolean isMetricQuery(String query) {
+        for (String line : query.split("\n")) {
+            String stripped = line.strip();
+            if (!stripped.isEmpty() && !stripped.startsWith("#")) {
+                return !stripped.startsWith("{");
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Send the samples of the steps from {@code start} to {@code end} included, in chunk order, until
+     * {@code maxRecords} samples have been sent.
+     *
+     * @param start the first step in nanoseconds, a multiple of {@code step}
+     * @param end the last step in nanoseconds, a multiple of {@code step}
+     */
+    Summary fetch(long start, long end, long maxRecords, LokiResponseParser.Sink sink) throws Exception {
+        RangeSink range = new RangeSink(sink, start, end, maxRecords);
+        int maxChunks = (int) Math.clamp(MAX_POINTS * step / chunk, 1, MAX_CHUNKS_PER_REQUEST);
+
+        String resultType = null;
+        int hits = 0;
+        int misses = 0;
+        int pages = 0;
+        long bytesSaved = 0;
+
+        long index = Math.floorDiv(start, chunk);
+        long last = Math.floorDiv(end, chunk);
+
+        while (index <= last && !range.isFull()) {
+            if (!isImmutable(index)) {
+                LokiResponseParser.Result result = fetcher.fetch(Math.max(start, index * chunk), end, range);
+                resultType = resultType != null ? resultType : result.resultType();
+                pages++;
+                break;
+            }
+
+            // a chunk unreadable before any of its samples was sent is fetched again, like a missing one
+            LokiResultCache.Hit hit = cache.read(runContext, key(index), range);
+            if (hit != null) {
+                resultType = resultType != null ? resultType : hit.resultType();
+                bytesSaved += hit.bytes();
+                hits++;
+                index++;
+                continue;
+            }
+
+            long to = index;
+            while (to < last && to - index + 1 < maxChunks && isImmutable(to + 1)) {
+                to++;
+            }
+
+            String fetched = fetchChunks(index, to, range);
+            resultType = resultType != null ? resultType : fetched;
+            misses += "matrix".equals(fetched) ? (int) (to - index + 1) : 0;
+            pages++;
+            index = to + 1;
+        }
+
+        return new Summary(resultType, hits, misses, pages, bytesSaved);
+    }
+
+    private boolean isImmutable(long index) {
+        return cache.isImmutable((index + 1) * chunk - step);
+    }
+
+    private String key(long index) {
+        return LokiResultCache.key(queryKey, chunk, index);
+    }
+
+    /**
+     * Fetch the chunks from {@code first} to {@code last} included in a single request, writing each sample to the
+     * cache of its chunk.
+     */
+    private String fetchChunks(long first, long last, RangeSink range) throws Exception {
+        LokiResultCache.Writer[] writers = new LokiResultCache.Writer[(int) (last - first + 1)];
+
+        try {
+            for (int i = 0; i < writers.length; i++) {
+                writers[i] = cache.writer(runContext, range);
+            }
+
+            LokiResponseParser.SampleSink chunks = new LokiResponseParser.SampleSink() {
+                @Override
+                public void accept(LokiEntry entry) throws IOException {
+                    if (entry.isLine()) {
+                        range.accept(entry);
+                    } else {
+                        acceptSample(entry.labels(), LokiTime.parseTimestamp(entry.timestamp()), LokiMatrix.parseValue(entry.value()));
+                    }
+                }
+
+                @Override
+                public void acceptSample(Map<String, String> labels, long timestamp, double value) throws IOException {
+                    long index = Math.floorDiv(timestamp, chunk) - first;
+                    if (index >= 0 && index < writers.length) {
+                        writers[(int) index].acceptSample(labels, timestamp, value);
+                    } else {
+                        range.acceptSample(labels, timestamp, value);
+                    }
+                }
+            };
+
+            long bytes = transferStats.getCompressedBytes();
+            String resultType = fetcher.fetch(first * chunk, (last + 1) * chunk - step, chunks).resultType();
+
+            if ("matrix".equals(resultType)) {
+                long share = (transferStats.getCompressedBytes() - bytes) / writers.length;
+                for (int i = 0; i < writers.length; i++) {
+                    writers[i].commit(key(first + i), resultType, share);
+                }
+            }
+
+            return resultType;
+        } finally {
+            for (LokiResultCache.Writer writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the samples outside of the requested steps, and past {@code maxRecords}.
+     */
+    private static final class RangeSink implements LokiResponseParser.SampleSink {
+        private final LokiResponseParser.Sink delegate;
+        private final long start;
+        private final long end;
+        private final long maxRecords;
+        private long emitted = 0;
+
+        RangeSink(LokiResponseParser.Sink delegate, long start, long end, long maxRecords) {
+            this.delegate = delegate;
+            this.start = start;
+            this.end = end;
+            this.maxRecords = maxRecords;
+        }
+
+        boolean isFull() {
+            return emitted >= maxRecords;
+        }
+
+        @Override
+        public void accept(LokiEntry entry) throws IOException {
+            if (entry.isLine()) {
+                if (!isFull()) {
+                    delegate.accept(entry);
+                    emitted++;
+                }
+            } else {
+                acceptSample(entry.labels(), LokiTime.parseTimestamp(entry.timestamp()), LokiMatrix.parseValue(entry.value()));
+            }
+        }
+
+        @Override
+        public void acceptSample(Map<String, String> labels, long timestamp, double value) throws IOException {
+            if (timestamp >= start && timestamp <= end && !isFull()) {
+                LokiResponseParser.SampleSink.send(delegate, labels, timestamp, value);
+                emitted++;
+            }
+        }
+    }
+}
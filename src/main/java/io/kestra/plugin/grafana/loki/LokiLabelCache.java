@@ -0,0 +1,102 @@
+package io.kestra.plugin.grafana.loki;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Process-wide cache of label names and values, shared by every task run of the worker: at most {@link #MAX_ENTRIES}
+ * lookups are kept, the least recently used being evicted first, each one for the time to live of the task that
+ * requested it.
+ * <p>
+ * Concurrent lookups of a missing key share a single request: the first one sends it and the others wait for its
+ * result. A failed request is not cached, the next lookup sends it again.
+ */
+final class LokiLabelCache {
+    static final int MAX_ENTRIES = 1024;
+
+    private static final Map<Key, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * The auth token is only kept as a hash so the cache never holds a credential in clear text.
+     *
+     * @param start the start of the time window in nanoseconds
+     * @param end the end of the time window in nanoseconds
+     */
+    record Key(String endpoint, String authTokenHash, String tenantId, String query, long start, long end) {
+    }
+
+    private record Entry(CompletableFuture<List<String>> result, long expiresAt) {
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+    enum Source {
+        REQUEST,
+        CACHE,
+        COALESCED
+    }
+
+    record Lookup(List<String> values, Source source) {
+    }
+
+    @FunctionalInterface
+    interface Loader {
+        List<String> load() throws Exception;
+    }
+
+    private LokiLabelCache() {
+    }
+
+    /**
+     * @param ttl how long the values are kept when they are requested, a zero duration only shares concurrent requests
+     */
+    static Lookup get(Key key, Duration ttl, Loader loader) throws Exception {
+        CompletableFuture<List<String>> result;
+        Entry loading = null;
+
+        synchronized (ENTRIES) {
+            long now = System.nanoTime();
+            Entry entry = ENTRIES.get(key);
+
+            // an entry still loading is shared whatever its time to live
+            if (entry != null && (!entry.result().isDone() || !entry.isExpired(now))) {
+                result = entry.result();
+            } else {
+                loading = new Entry(new CompletableFuture<>(), now + ttl.toNanos());
+                ENTRIES.put(key, loading);
+                result = loading.result();
+            }
+        }
+
+        if (loading == null) {
+            Source source = result.isDone() ? Source.CACHE : Source.COALESCED;
+            try {
+                return new Lookup(result.get(), source);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+
+        try {
+            List<String> values = List.copyOf(loader.load());
+            loading.result().complete(values);
+            return new Lookup(values, Source.REQUEST);
+        } catch (Exception | Error e) {
+            synchronized (ENTRIES) {
+                ENTRIES.remove(key, loading);
+            }
+            loading.result().completeExceptionally(e);
+            throw e;
+        }
+    }
+}
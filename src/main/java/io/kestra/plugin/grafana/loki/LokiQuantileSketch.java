@@ -0,0 +1,125 @@
+package io.kestra.plugin.grafana.loki;
+
+/**
+ * Streaming quantile sketch with a bounded relative error, after DDSketch: each value is counted in a logarithmic bin
+ * {@code (gamma^(i-1), gamma^i]}, so a quantile is known within {@link #RELATIVE_ACCURACY} of its value whatever the
+ * distribution.
+ * <p>
+ * Bins are dense arrays indexed from the lowest bin seen, and at most {@link #MAX_BINS} of them are kept per sign: when
+ * values span a wider range, the bins of the smallest magnitudes are collapsed together, keeping the upper quantiles
+ * exact within the relative error.
+ */
+final class LokiQuantileSketch {
+    static final double RELATIVE_ACCURACY = 0.01;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final double MIN_INDEXABLE = 1e-9;
+    private static final int MAX_BINS = 2048;
+    private static final int INITIAL_BINS = 32;
+
+    private final Bins positive = new Bins();
+    private final Bins negative = new Bins();
+    private long zeros = 0;
+
+    void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+
+        if (value > MIN_INDEXABLE) {
+            positive.add(index(value));
+        } else if (value < -MIN_INDEXABLE) {
+            negative.add(index(-value));
+        } else {
+            zeros++;
+        }
+    }
+
+    long count() {
+        return positive.total + negative.total + zeros;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the estimated value, {@code NaN} when nothing was added
+     */
+    double quantile(double quantile) {
+        long count = count();
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        long rank = (long) (quantile * (count - 1));
+
+        // negative values come first, the largest magnitude being the lowest value
+        if (rank < negative.total) {
+            return -negative.valueAt(negative.total - 1 - rank);
+        }
+        rank -= negative.total;
+
+        if (rank < zeros) {
+            return 0;
+        }
+
+        return positive.valueAt(rank - zeros);
+    }
+
+    private static int index(double value) {
+        return (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+    }
+
+    private static double value(int index) {
+        // the middle of the bin relatively, so that both bounds are within the accuracy
+        return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+
+    private static final class Bins {
+        private long[] counts = new long[0];
+        private int offset;
+        private long total = 0;
+
+        void add(int index) {
+            if (counts.length == 0) {
+                counts = new long[INITIAL_BINS];
+                offset = index - INITIAL_BINS / 2;
+            } else if (index < offset || index >= offset + counts.length) {
+                grow(index);
+            }
+
+            counts[Math.max(index, offset) - offset]++;
+            total++;
+        }
+
+        /**
+         * The value of the bin holding the value of the given rank, counting from the smallest magnitude.
+         */
+        double valueAt(long rank) {
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen > rank) {
+                    return value(offset + i);
+                }
+            }
+
+            return value(offset + counts.length - 1);
+        }
+
+        private void grow(int index) {
+            int low = Math.min(index, offset);
+            int high = Math.max(index, offset + counts.length - 1);
+            int length = Math.min(MAX_BINS, Math.max(high - low + 1, counts.length * 2));
+
+            // leave the extra room on the side that grew, and collapse the lowest bins past the maximum
+            int grownOffset = index < offset ? high - length + 1 : Math.max(low, high - length + 1);
+
+            long[] grown = new long[length];
+            for (int i = 0; i < counts.length; i++) {
+                grown[Math.max(offset + i, grownOffset) - grownOffset] += counts[i];
+            }
+
+            counts = grown;
+            offset = grownOffset;
+        }
+    }
+}
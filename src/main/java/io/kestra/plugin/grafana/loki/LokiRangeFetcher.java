@@ -0,0 +1,520 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.plugin.grafana.loki.AbstractLokiConnection.Direction;
+import io.kestra.plugin.grafana.loki.models.LokiEntry;
+import io.kestra.plugin.grafana.loki.models.LokiMatrix;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
+import io.kestra.plugin.grafana.loki.models.LokiStreams;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Issues {@code query_range} requests over explicit nanosecond ranges.
+ * <p>
+ * Log queries can be paginated past {@code limit}: the cursor is moved to the last returned timestamp (the oldest
+ * one for {@code BACKWARD}), this timestamp being included again in the next page so that entries sharing it are
+ * not lost, and entries already returned at this boundary are skipped.
+ */
+class LokiRangeFetcher {
+    static final long MIN_SHARD_DURATION = 1_000_000L;
+
+    private final String endpoint;
+    private final Map<String, String> queryParams;
+    private final int limit;
+    private final Direction direction;
+    private final Executor executor;
+    private final Logger logger;
+
+    @FunctionalInterface
+    interface Executor {
+        LokiResponseParser.Result execute(URI uri, LokiResponseParser.Sink sink) throws Exception;
+    }
+
+    record Summary(String resultType, long count, int pages, int shards, int bisected, int merged) {
+        Summary(String resultType, long count, int pages) {
+            this(resultType, count, pages, 0, 0, 0);
+        }
+    }
+
+    private static final class Shard {
+        private final long start;
+        private final long end;
+        private final long rangeEnd;
+        private final Deque<ShardPage> pages = new ArrayDeque<>();
+        private Future<Summary> future;
+        private boolean exhaustive;
+        private boolean done;
+
+        Shard(long start, long end, long rangeEnd) {
+            this.start = start;
+            this.end = end;
+            this.rangeEnd = rangeEnd;
+        }
+
+        boolean isLast() {
+            return end == rangeEnd;
+        }
+    }
+
+    /**
+     * A page of a shard: log lines are buffered as columns, metric samples per series, both sorted in the fetch direction.
+     */
+    private record ShardPage(LokiStreams lines, LokiMatrix samples, boolean ascending) {
+        long size() {
+            return lines.size() + samples.size();
+        }
+
+        void forEach(LokiResponseParser.Sink sink) throws IOException {
+            lines.forEach(sink);
+            samples.forEachInTimeOrder(ascending, sink);
+        }
+    }
+
+    @FunctionalInterface
+    interface PageListener {
+        void pageDone() throws Exception;
+    }
+
+    /**
+     * @param queryParams the query parameters except {@code start}, {@code end}, {@code since} and {@code limit}
+     */
+    LokiRangeFetcher(String endpoint, Map<String, String> queryParams, int limit, Direction direction, Executor executor, Logger logger) {
+        this.endpoint = endpoint;
+        this.queryParams = queryParams;
+        this.limit = limit;
+        this.direction = direction;
+        this.executor = executor;
+        this.logger = logger;
+    }
+
+    LokiResponseParser.Result fetch(long start, long end, LokiResponseParser.Sink sink) throws Exception {
+        Map<String, String> params = new HashMap<>(queryParams);
+        params.put("start", String.valueOf(start));
+        params.put("end", String.valueOf(end));
+        params.put("limit", String.valueOf(limit));
+
+        URI uri = LokiHttpService.buildUri(endpoint, params);
+        logger.debug("Querying Loki: {}", uri);
+
+        return executor.execute(uri, sink);
+    }
+
+    /**
+     * Fetch every entry of {@code [start, end)}, page by page, until the range is exhausted or {@code maxRecords}
+     * entries have been sent to the sink. Metric queries are not paginated as Loki does not apply {@code limit} to them.
+     */
+    Summary fetchAll(long start, long end, long maxRecords, LokiResponseParser.Sink sink) throws Exception {
+        return fetchAll(start, end, maxRecords, sink, () -> {});
+    }
+
+    /**
+     * @param listener called once the entries of each page have been sent to the sink
+     */
+    Summary fetchAll(long start, long end, long maxRecords, LokiResponseParser.Sink sink, PageListener listener) throws Exception {
+        long cursorStart = start;
+        long cursorEnd = end;
+        long emitted = 0;
+        int pages = 0;
+        String resultType = null;
+
+        long boundaryTimestamp = Long.MIN_VALUE;
+        Set<Long> boundaryHashes = new HashSet<>();
+
+        while (cursorStart < cursorEnd && emitted < maxRecords) {
+            PageSink page = new PageSink(sink, boundaryTimestamp, boundaryHashes, maxRecords - emitted);
+            LokiResponseParser.Result result = fetch(cursorStart, cursorEnd, page);
+
+            pages++;
+            emitted += page.emitted;
+            resultType = result.resultType();
+            listener.pageDone();
+
+            if (!"streams".equals(resultType) || result.count() < limit) {
+                break;
+            }
+
+            if (page.emitted == 0) {
+                // a whole page shares the boundary timestamp, we can only move past it
+                logger.warn("More than {} entries share the timestamp {}, some of them may be skipped, increase the limit to retrieve them", limit, boundaryTimestamp);
+
+                if (direction == Direction.FORWARD) {
+                    cursorStart = boundaryTimestamp + 1;
+                } else {
+                    cursorEnd = boundaryTimestamp;
+                }
+
+                boundaryTimestamp = Long.MIN_VALUE;
+                boundaryHashes = new HashSet<>();
+                continue;
+            }
+
+            if (page.extremeTimestamp == boundaryTimestamp) {
+                boundaryHashes.addAll(page.extremeHashes);
+            } else {
+                boundaryTimestamp = page.extremeTimestamp;
+                boundaryHashes = page.extremeHashes;
+            }
+
+            if (direction == Direction.FORWARD) {
+                cursorStart = boundaryTimestamp;
+            } else {
+                cursorEnd = boundaryTimestamp + 1;
+            }
+        }
+
+        return new Summary(resultType, emitted, pages);
+    }
+
+    /**
+     * Split {@code [start, end)} into consecutive shards of {@code shardDuration} nanoseconds, fetch them concurrently
+     * with at most {@code parallelism} requests in flight, and send their entries to the sink in timestamp order
+     * according to the direction.
+     * <p>
+     * Shards are fetched page by page. The pages of the first shard not sent yet are sent to the sink as soon as they
+     * are fetched, while the pages of the shards after it are buffered. Once the buffered pages hold
+     * {@code parallelism * limit} entries, their shards wait before buffering another page, so memory is bounded by
+     * the parallelism and the limit rather than by the size of the result, even when shards are paginated.
+     * <p>
+     * When {@code adaptive} is set, the shard size follows the data density: a log shard that returns {@code limit}
+     * entries was too coarse, its result is dropped and it is bisected, while a shard returning less than a quarter of
+     * {@code limit} merges the next two shards not started yet. A saturated shard that can no longer be bisected is
+     * paginated when {@code paginate} is set.
+     */
+    Summary fetchSharded(long start, long end, long shardDuration, int parallelism, boolean paginate, boolean adaptive, long maxRecords, LokiResponseParser.Sink sink) throws Exception {
+        LinkedList<Shard> shards = new LinkedList<>();
+        for (long shardStart = start; shardStart < end; shardStart += shardDuration) {
+            shards.add(new Shard(shardStart, Math.min(end, shardStart + shardDuration), end));
+        }
+
+        if (direction == Direction.BACKWARD) {
+            Collections.reverse(shards);
+        }
+
+        logger.debug("Querying Loki with {} shards of {}ns with a parallelism of {}", shards.size(), shardDuration, parallelism);
+
+        long emitted = 0;
+        int pages = 0;
+        int issued = 0;
+        int bisected = 0;
+        int merged = 0;
+        String resultType = null;
+        ShardBuffer buffer = new ShardBuffer((long) Math.max(1, parallelism) * Math.max(1, limit));
+
+        try (ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("loki-shard-", 0).factory())) {
+            try {
+                while (!shards.isEmpty() && emitted < maxRecords) {
+                    // shards are started in order; the first one is always started, even if later ones
+                    // started before a bisection still occupy every slot
+                    long running = shards.stream().filter(shard -> shard.future != null).count();
+                    for (Shard shard : shards) {
+                        if (shard.future != null) {
+                            continue;
+                        }
+
+                        if ((running >= parallelism || buffer.full()) && shard != shards.getFirst()) {
+                            break;
+                        }
+
+                        boolean exhaustive = shard.exhaustive || (paginate && !adaptive);
+                        shard.future = submit(executor, buffer, shard, exhaustive, maxRecords - emitted);
+                        issued++;
+                        running++;
+                    }
+
+                    Shard shard = shards.removeFirst();
+                    buffer.head(shard);
+
+                    if (paginate && !adaptive || shard.exhaustive) {
+                        // an exhaustive shard is streamed to the sink while its next pages are fetched
+                        ShardPage page;
+                        while (emitted < maxRecords && (page = buffer.take(shard)) != null) {
+                            emitted += send(page, maxRecords - emitted, sink);
+                        }
+
+                        if (emitted >= maxRecords) {
+                            break;
+                        }
+
+                        Summary summary = await(shard.future);
+                        pages += summary.pages();
+                        resultType = resultType == null ? summary.resultType() : resultType;
+                        continue;
+                    }
+
+                    Summary summary = await(shard.future);
+                    pages += summary.pages();
+                    resultType = resultType == null ? summary.resultType() : resultType;
+
+                    boolean saturated = adaptive
+                        && "streams".equals(summary.resultType())
+                        && summary.count() >= limit;
+
+                    if (saturated && shard.end - shard.start > MIN_SHARD_DURATION) {
+                        long middle = shard.start + (shard.end - shard.start) / 2;
+                        Shard first = new Shard(shard.start, middle, end);
+                        Shard second = new Shard(middle, shard.end, end);
+
+                        shards.addFirst(direction == Direction.FORWARD ? second : first);
+                        shards.addFirst(direction == Direction.FORWARD ? first : second);
+                        bisected++;
+                        continue;
+                    }
+
+                    if (saturated && paginate) {
+                        buffer.reset(shard);
+                        shard.future = null;
+                        shard.exhaustive = true;
+                        shards.addFirst(shard);
+                        continue;
+                    }
+
+                    ShardPage page;
+                    while ((page = buffer.take(shard)) != null) {
+                        emitted += send(page, maxRecords - emitted, sink);
+                    }
+
+                    if (adaptive && summary.count() < limit / 4) {
+                        // widen the next shards that are not started yet
+                        int next = 0;
+                        while (next < shards.size() && shards.get(next).future != null) {
+                            next++;
+                        }
+
+                        if (next + 1 < shards.size()) {
+                            Shard first = shards.remove(next);
+                            Shard second = shards.remove(next);
+                            shards.add(next, new Shard(Math.min(first.start, second.start), Math.max(first.end, second.end), end));
+                            merged++;
+                        }
+                    }
+                }
+            } finally {
+                shards.stream()
+                    .filter(shard -> shard.future != null)
+                    .forEach(shard -> shard.future.cancel(true));
+            }
+        }
+
+        return new Summary(resultType, emitted, pages, issued, bisected, merged);
+    }
+
+    private Future<Summary> submit(ExecutorService executor, ShardBuffer buffer, Shard shard, boolean exhaustive, long maxRecords) {
+        return executor.submit(() -> {
+            try {
+                ShardSink shardSink = new ShardSink(shard);
+
+                if (exhaustive) {
+                    return fetchAll(shard.start, shard.end, maxRecords, shardSink, () -> buffer.publish(shard, shardSink.page()));
+                }
+
+                LokiResponseParser.Result result = fetch(shard.start, shard.end, shardSink);
+                buffer.publish(shard, shardSink.page());
+                return new Summary(result.resultType(), result.count(), 1);
+            } finally {
+                buffer.finish(shard);
+            }
+        });
+    }
+
+    /**
+     * Send the entries of a page to the sink, at most {@code remaining} of them.
+     */
+    private static long send(ShardPage page, long remaining, LokiResponseParser.Sink sink) throws IOException {
+        long[] sent = {0};
+        page.forEach(entry -> {
+            if (sent[0] < remaining) {
+                sink.accept(entry);
+                sent[0]++;
+            }
+        });
+        return sent[0];
+    }
+
+    /**
+     * Collects the entries of a shard page.
+     */
+    private class ShardSink implements LokiResponseParser.SampleSink {
+        private final Shard shard;
+        private LokiStreams lines = new LokiStreams();
+        private LokiMatrix samples = new LokiMatrix();
+
+        ShardSink(Shard shard) {
+            this.shard = shard;
+        }
+
+        @Override
+        public void accept(LokiEntry entry) {
+            if (entry.isLine()) {
+                lines.add(entry);
+            } else {
+                acceptSample(entry.labels(), LokiTime.parseTimestamp(entry.timestamp()), LokiMatrix.parseValue(entry.value()));
+            }
+        }
+
+        @Override
+        public void acceptSample(Map<String, String> labels, long timestamp, double value) {
+            // metric queries include their end, the next shard already evaluates this step
+            if (shard.isLast() || timestamp < shard.end) {
+                samples.add(labels, timestamp, value);
+            }
+        }
+
+        /**
+         * The entries collected since the previous page, sorted in the fetch direction.
+         */
+        ShardPage page() {
+            lines.sort(direction == Direction.FORWARD);
+            ShardPage page = new ShardPage(lines, samples, direction == Direction.FORWARD);
+
+            lines = new LokiStreams();
+            samples = new LokiMatrix();
+            return page;
+        }
+    }
+
+    /**
+     * Pages fetched by the shards and not sent to the sink yet. The shard being sent, the head, never waits; the
+     * others wait before adding a page once the pages buffered for them hold {@code budget} entries.
+     */
+    private static final class ShardBuffer {
+        private final long budget;
+        private long buffered = 0;
+        private Shard head;
+
+        ShardBuffer(long budget) {
+            this.budget = budget;
+        }
+
+        synchronized void publish(Shard shard, ShardPage page) throws InterruptedException {
+            if (page.size() == 0) {
+                return;
+            }
+
+            // a single page is always accepted so that a page larger than the budget cannot block every shard
+            while (shard != head && buffered > 0 && buffered + page.size() > budget) {
+                wait();
+            }
+
+            shard.pages.add(page);
+            if (shard != head) {
+                buffered += page.size();
+            }
+            notifyAll();
+        }
+
+        synchronized boolean full() {
+            return buffered >= budget;
+        }
+
+        /**
+         * Drop the pages of a shard to fetch it again.
+         */
+        synchronized void reset(Shard shard) {
+            shard.pages.clear();
+            shard.done = false;
+        }
+
+        synchronized void finish(Shard shard) {
+            shard.done = true;
+            notifyAll();
+        }
+
+        /**
+         * Make a shard the head: its pages are not counted in the budget anymore.
+         */
+        synchronized void head(Shard shard) {
+            head = shard;
+            for (ShardPage page : shard.pages) {
+                buffered -= page.size();
+            }
+            notifyAll();
+        }
+
+        /**
+         * The next page of the head shard, waiting for it to be fetched; {@code null} once the shard is done.
+         */
+        synchronized ShardPage take(Shard shard) throws InterruptedException {
+            while (shard.pages.isEmpty() && !shard.done) {
+                wait();
+            }
+
+            return shard.pages.poll();
+        }
+    }
+
+    private static Summary await(Future<Summary> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private class PageSink implements LokiResponseParser.SampleSink {
+        private final LokiResponseParser.Sink delegate;
+        private final long boundaryTimestamp;
+        private final Set<Long> boundaryHashes;
+        private final long remaining;
+
+        private long emitted = 0;
+        private long extremeTimestamp = direction == Direction.FORWARD ? Long.MIN_VALUE : Long.MAX_VALUE;
+        private Set<Long> extremeHashes = new HashSet<>();
+
+        PageSink(LokiResponseParser.Sink delegate, long boundaryTimestamp, Set<Long> boundaryHashes, long remaining) {
+            this.delegate = delegate;
+            this.boundaryTimestamp = boundaryTimestamp;
+            this.boundaryHashes = boundaryHashes;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public void acceptSample(Map<String, String> labels, long timestamp, double value) throws IOException {
+            if (emitted < remaining) {
+                LokiResponseParser.SampleSink.send(delegate, labels, timestamp, value);
+                emitted++;
+            }
+        }
+
+        @Override
+        public void accept(LokiEntry entry) throws IOException {
+            if (!entry.isLine()) {
+                if (emitted < remaining) {
+                    delegate.accept(entry);
+                    emitted++;
+                }
+                return;
+            }
+
+            long timestamp = Long.parseLong(entry.timestamp());
+            long hash = entry.hash();
+
+            boolean further = direction == Direction.FORWARD ? timestamp > extremeTimestamp : timestamp < extremeTimestamp;
+            if (further) {
+                extremeTimestamp = timestamp;
+                extremeHashes = new HashSet<>();
+            }
+            if (timestamp == extremeTimestamp) {
+                extremeHashes.add(hash);
+            }
+
+            if (timestamp == boundaryTimestamp && boundaryHashes.contains(hash)) {
+                return;
+            }
+
+            if (emitted < remaining) {
+                delegate.accept(entry);
+                emitted++;
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.exceptions.IllegalVariableEvaluationException;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+/**
+ * Client-side limits of the requests sent to a Loki tenant, shared by every task and trigger of the worker sending to
+ * the same Loki and tenant.
+ */
+@Builder
+@Getter
+@EqualsAndHashCode
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class LokiRateLimit {
+    @Schema(
+        title = "Requests per second",
+        description = "Maximum rate of requests sent to the tenant, requests over it wait for their turn. Defaults to no limit."
+    )
+    private Property<Double> requestsPerSecond;
+
+    @Schema(
+        title = "Burst",
+        description = "Number of requests that can be sent at once after an idle period, without waiting. Defaults to one second of `requestsPerSecond`."
+    )
+    private Property<Integer> burst;
+
+    @Schema(
+        title = "Maximum in-flight requests",
+        description = "Maximum number of requests to the tenant waiting for a response at the same time. Defaults to no limit."
+    )
+    private Property<Integer> maxInFlight;
+
+    static LokiRateLimiter.Limits render(RunContext runContext, LokiRateLimit rateLimit) throws IllegalVariableEvaluationException {
+        if (rateLimit == null) {
+            return null;
+        }
+
+        Double rRequestsPerSecond = runContext.render(rateLimit.requestsPerSecond).as(Double.class).orElse(null);
+        Integer rBurst = runContext.render(rateLimit.burst).as(Integer.class).orElse(null);
+        Integer rMaxInFlight = runContext.render(rateLimit.maxInFlight).as(Integer.class).orElse(null);
+
+        if (rRequestsPerSecond == null && rMaxInFlight == null) {
+            return null;
+        }
+
+        double permitsPerSecond = rRequestsPerSecond != null && rRequestsPerSecond > 0 ? rRequestsPerSecond : Double.POSITIVE_INFINITY;
+
+        return new LokiRateLimiter.Limits(
+            permitsPerSecond,
+            rBurst != null ? Math.max(1, rBurst) : (int) Math.clamp(Math.ceil(permitsPerSecond), 1, Integer.MAX_VALUE),
+            rMaxInFlight != null && rMaxInFlight > 0 ? rMaxInFlight : Integer.MAX_VALUE
+        );
+    }
+}
@@ -0,0 +1,226 @@
+package io.kestra.plugin.grafana.loki;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Process-wide token buckets and in-flight request caps, one per Loki origin and tenant, so that every task run and
+ * trigger poll of a worker shapes its load on a tenant together instead of being throttled by Loki.
+ * <p>
+ * A limiter takes the limits of the last request that used it: tasks configured differently for the same tenant
+ * share a single bucket. Limiters left unused for {@link #IDLE_TIMEOUT} are dropped while getting a limiter, at most
+ * every {@link #SWEEP_INTERVAL}.
+ */
+public final class LokiRateLimiter {
+    static final Duration IDLE_TIMEOUT = Duration.ofMinutes(10);
+    static final Duration SWEEP_INTERVAL = Duration.ofMinutes(1);
+
+    private static final Map<Key, LokiRateLimiter> LIMITERS = new ConcurrentHashMap<>();
+    private static final AtomicLong NEXT_SWEEP = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL.toNanos());
+
+    /**
+     * @param permitsPerSecond the token bucket refill rate, {@link Double#POSITIVE_INFINITY} for no rate limit
+     * @param burst the token bucket capacity
+     * @param maxInFlight the maximum number of concurrent requests, {@link Integer#MAX_VALUE} for no limit
+     */
+    public record Limits(double permitsPerSecond, int burst, int maxInFlight) {
+    }
+
+    record Key(String origin, String tenantId) {
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotReleased = lock.newCondition();
+
+    private volatile Limits limits;
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+    private int inFlight = 0;
+    private long lastUsed = System.nanoTime();
+    private boolean evicted = false;
+
+    private LokiRateLimiter(Limits limits) {
+        this.limits = limits;
+        this.tokens = limits.burst();
+    }
+
+    public static LokiRateLimiter get(URI uri, String tenantId, Limits limits) {
+        Key key = new Key(uri.getScheme() + "://" + uri.getRawAuthority(), tenantId);
+        sweepIfDue();
+
+        while (true) {
+            LokiRateLimiter limiter = LIMITERS.computeIfAbsent(key, k -> new LokiRateLimiter(limits));
+            // dropped by the sweep after it was looked up, it is not in the map anymore
+            if (limiter.configure(limits)) {
+                return limiter;
+            }
+        }
+    }
+
+    static int size() {
+        return LIMITERS.size();
+    }
+
+    private static void sweepIfDue() {
+        long now = System.nanoTime();
+        long next = NEXT_SWEEP.get();
+
+        if (now - next < 0 || !NEXT_SWEEP.compareAndSet(next, now + SWEEP_INTERVAL.toNanos())) {
+            return;
+        }
+
+        LIMITERS.forEach((key, limiter) -> {
+            if (limiter.evictIfIdle(now)) {
+                LIMITERS.remove(key, limiter);
+            }
+        });
+    }
+
+    /**
+     * Wait for a token and a free in-flight slot, the slot must be released with {@link #release()} once the response
+     * has been read.
+     *
+     * @return the time spent waiting
+     */
+    public Duration acquire() throws InterruptedException {
+        return acquire(null);
+    }
+
+    /**
+     * Wait at most {@code maxWait} for a token and a free in-flight slot, see {@link #acquire()}.
+     *
+     * @return the time spent waiting, {@code null} when nothing was acquired as the wait would have been longer
+     */
+    public Duration acquire(Duration maxWait) throws InterruptedException {
+        long start = System.nanoTime();
+        long maxWaitNanos = maxWait != null ? Math.max(0, maxWait.toNanos()) : Long.MAX_VALUE;
+
+        long wait = reserve(maxWaitNanos);
+        if (wait < 0) {
+            return null;
+        }
+
+        boolean acquired = false;
+        try {
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+
+            lock.lockInterruptibly();
+            try {
+                while (inFlight >= limits.maxInFlight()) {
+                    long left = maxWaitNanos - (System.nanoTime() - start);
+                    if (left <= 0) {
+                        return null;
+                    }
+                    slotReleased.awaitNanos(left);
+                }
+                inFlight++;
+                lastUsed = System.nanoTime();
+                acquired = true;
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            // no request is sent with the token taken
+            if (!acquired) {
+                refund();
+            }
+        }
+
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            lastUsed = System.nanoTime();
+            slotReleased.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return {@code false} when the limiter was dropped by the sweep and must not be used
+     */
+    private boolean configure(Limits limits) {
+        lock.lock();
+        try {
+            if (evicted) {
+                return false;
+            }
+
+            lastUsed = System.nanoTime();
+            if (!limits.equals(this.limits)) {
+                this.limits = limits;
+                this.tokens = Math.min(tokens, limits.burst());
+                slotReleased.signalAll();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean evictIfIdle(long now) {
+        lock.lock();
+        try {
+            if (inFlight > 0 || now - lastUsed <= IDLE_TIMEOUT.toNanos()) {
+                return false;
+            }
+
+            evicted = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refund() {
+        lock.lock();
+        try {
+            if (!Double.isInfinite(limits.permitsPerSecond())) {
+                tokens = Math.min(limits.burst(), tokens + 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take a token, going into debt when none is left so that waiting requests are served in order.
+     *
+     * @return the nanoseconds to wait until the token is available, or -1 without taking it when that is longer than
+     * {@code maxWait}
+     */
+    private long reserve(long maxWait) {
+        lock.lock();
+        try {
+            if (Double.isInfinite(limits.permitsPerSecond())) {
+                return 0;
+            }
+
+            long now = System.nanoTime();
+            tokens = Math.min(limits.burst(), tokens + (now - refilledAt) * limits.permitsPerSecond() / 1e9);
+            refilledAt = now;
+
+            long wait = tokens >= 1 ? 0 : (long) ((1 - tokens) * 1e9 / limits.permitsPerSecond());
+            if (wait > maxWait) {
+                return -1;
+            }
+
+            tokens--;
+            return wait;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
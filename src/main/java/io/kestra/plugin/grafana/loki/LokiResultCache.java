@@ -0,0 +1,361 @@
+package io.kestra.plugin.grafana.loki;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.hash.Hashing;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.FileSerde;
+import io.kestra.core.serializers.JacksonMapper;
+import io.kestra.core.storages.kv.KVMetadata;
+import io.kestra.core.storages.kv.KVStore;
+import io.kestra.core.storages.kv.KVValueAndMetadata;
+import io.kestra.plugin.grafana.loki.models.LokiEntry;
+import io.kestra.plugin.grafana.loki.models.LokiMatrix;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
+import lombok.Getter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Results of range queries over time ranges that Loki will no longer change, those ending before now minus a freshness
+ * margin, kept in the cache of Kestra's internal storage so that the same query run again by the flow reads nothing
+ * from Loki.
+ * <p>
+ * A result is a gzipped Ion file with one row per entry, as written for {@code STORE}, followed by a row with its result
+ * type, number of entries and the response bytes it cost. An index in the namespace KV store keeps the size of the
+ * results of each flow to evict the oldest ones past {@code maxBytes}; it is updated on a best effort basis, concurrent
+ * executions may lose each other's updates, leaving results to their time to live.
+ */
+final class LokiResultCache {
+    static final String CACHE_ID = "loki-query-range";
+    private static final String INDEX_PREFIX = "loki_result_cache_";
+    private static final TypeReference<Map<String, IndexEntry>> INDEX_TYPE = new TypeReference<>() {};
+
+    private final Duration freshnessMargin;
+    private final Duration ttl;
+    private final long maxBytes;
+
+    @Getter
+    private final Duration chunkDuration;
+
+    /**
+     * @param chunkDuration the duration of the chunks metric queries are cached by, {@code null} to cache whole results
+     */
+    LokiResultCache(Duration freshnessMargin, Duration ttl, long maxBytes, Duration chunkDuration) {
+        this.freshnessMargin = freshnessMargin;
+        this.ttl = ttl;
+        this.maxBytes = maxBytes;
+        this.chunkDuration = chunkDuration;
+    }
+
+    /**
+     * @param rangeEnd in nanoseconds since epoch
+     */
+    boolean isImmutable(long rangeEnd) {
+        return rangeEnd <= LokiTime.now() - freshnessMargin.toNanos();
+    }
+
+    /**
+     * Hash of everything the result depends on, {@code null} parts included.
+     */
+    static String key(Object... parts) {
+        StringBuilder key = new StringBuilder();
+        for (Object part : parts) {
+            key.append(part).append('\n');
+        }
+
+        return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Collapse the whitespace of a LogQL query outside of its string literals, so that queries only formatted
+     * differently share their results.
+     */
+    static String normalizeQuery(String query) {
+        StringBuilder normalized = new StringBuilder(query.length());
+        char quote = 0;
+        boolean space = false;
+
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+
+            if (quote != 0) {
+                normalized.append(c);
+                if (c == '\\' && quote == '"' && i + 1 < query.length()) {
+                    normalized.append(query.charAt(++i));
+                } else if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+
+            if (space && !normalized.isEmpty()) {
+                normalized.append(' ');
+            }
+            space = false;
+
+            if (c == '"' || c == '`') {
+                quote = c;
+            }
+            normalized.append(c);
+        }
+
+        return normalized.toString();
+    }
+
+    /**
+     * @param resultType the type of result Loki returned
+     * @param size the number of cached entries
+     * @param bytes the response bytes received from Loki for the result
+     */
+    record Hit(String resultType, long size, long bytes) {
+    }
+
+    /**
+     * Send the cached result to the sink.
+     *
+     * @return the cached result, {@code null} when there is none, or when it is unreadable before any entry was sent;
+     * an unreadable result is removed from the cache
+     * @throws IOException when the result is unreadable after some entries were sent, as querying Loki would send them
+     * again
+     */
+    Hit read(RunContext runContext, String key, LokiResponseParser.Sink sink) throws IOException {
+        Optional<InputStream> cached;
+        try {
+            cached = runContext.storage().getCacheFile(CACHE_ID, key, ttl);
+        } catch (Exception e) {
+            runContext.logger().warn("Unable to read the cached result, querying Loki", e);
+            return null;
+        }
+
+        if (cached.isEmpty()) {
+            return null;
+        }
+
+        Replay replay = new Replay(sink);
+        Exception invalid = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(cached.get()), StandardCharsets.UTF_8), FileSerde.BUFFER_SIZE)) {
+            FileSerde.reader(reader, replay);
+        } catch (SinkException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw (RuntimeException) e.getCause();
+        } catch (IOException | RuntimeException e) {
+            invalid = e;
+        }
+
+        if (invalid == null && replay.hit != null) {
+            return replay.hit;
+        }
+
+        IOException failure = invalid != null ? new IOException("Invalid cached result", invalid) : new IOException("Truncated cached result");
+        try {
+            runContext.storage().deleteCacheFile(CACHE_ID, key);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+
+        if (replay.sent > 0) {
+            throw failure;
+        }
+
+        runContext.logger().warn("Unable to read the cached result, querying Loki", failure);
+        return null;
+    }
+
+    /**
+     * A failure of the sink the cached result is sent to, rather than of the cached result itself.
+     */
+    private static final class SinkException extends RuntimeException {
+        SinkException(Exception cause) {
+            super(cause);
+        }
+    }
+
+    private static final class Replay implements Consumer<Object> {
+        private final LokiResponseParser.Sink sink;
+
+        // rows are read with their own label maps, sharing them lets sinks look label sets up by identity
+        private final Map<Map<String, String>, Map<String, String>> labels = new HashMap<>();
+        private Hit hit;
+        private long sent = 0;
+
+        Replay(LokiResponseParser.Sink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void accept(Object value) {
+            Map<String, Object> row = (Map<String, Object>) value;
+            String timestamp = (String) row.get("timestamp");
+
+            if (timestamp == null) {
+                hit = new Hit((String) row.get("resultType"), ((Number) row.get("size")).longValue(), ((Number) row.get("bytes")).longValue());
+                return;
+            }
+
+            Map<String, String> rowLabels = labels.computeIfAbsent((Map<String, String>) row.get("labels"), key -> key);
+
+            String line = (String) row.get("line");
+            long sampleTimestamp = line == null ? LokiTime.parseTimestamp(timestamp) : 0;
+            double sampleValue = line == null ? LokiMatrix.parseValue((String) row.get("value")) : 0;
+
+            try {
+                if (line != null) {
+                    sink.accept(new LokiEntry(timestamp, rowLabels, line, null));
+                } else {
+                    LokiResponseParser.SampleSink.send(sink, rowLabels, sampleTimestamp, sampleValue);
+                }
+            } catch (IOException | RuntimeException e) {
+                throw new SinkException(e);
+            }
+            sent++;
+        }
+    }
+
+    /**
+     * A sink writing the entries to a cache file before passing them on to the delegate.
+     */
+    Writer writer(RunContext runContext, LokiResponseParser.Sink delegate) throws IOException {
+        return new Writer(runContext, delegate);
+    }
+
+    final class Writer implements LokiResponseParser.SampleSink, AutoCloseable {
+        private final RunContext runContext;
+        private final LokiResponseParser.Sink delegate;
+        private final File file;
+        private final OutputStream output;
+
+        // reused for every entry, the serialized map is not kept
+        private final Map<String, Object> row = new HashMap<>();
+        private long size = 0;
+
+        private Writer(RunContext runContext, LokiResponseParser.Sink delegate) throws IOException {
+            this.runContext = runContext;
+            this.delegate = delegate;
+            this.file = runContext.workingDir().createTempFile(".ion.gz").toFile();
+            this.output = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file), FileSerde.BUFFER_SIZE), FileSerde.BUFFER_SIZE);
+        }
+
+        @Override
+        public void accept(LokiEntry entry) throws IOException {
+            row.clear();
+            row.put("timestamp", entry.timestamp());
+            if (entry.isLine()) {
+                row.put("line", entry.line());
+            } else {
+                row.put("value", entry.value());
+            }
+            row.put("labels", entry.labels());
+            FileSerde.write(output, row);
+            size++;
+
+            delegate.accept(entry);
+        }
+
+        @Override
+        public void acceptSample(Map<String, String> labels, long timestamp, double value) throws IOException {
+            row.clear();
+            row.put("timestamp", LokiMatrix.formatTimestamp(timestamp));
+            row.put("value", LokiMatrix.formatValue(value));
+            row.put("labels", labels);
+            FileSerde.write(output, row);
+            size++;
+
+            LokiResponseParser.SampleSink.send(delegate, labels, timestamp, value);
+        }
+
+        /**
+         * Upload the result to the cache and evict the oldest results past {@code maxBytes}, failures are only logged
+         * as the result was already sent to the delegate.
+         *
+         * @param responseBytes the response bytes received from Loki for the result
+         */
+        void commit(String key, String resultType, long responseBytes) {
+            try {
+                row.clear();
+                row.put("resultType", resultType);
+                row.put("size", size);
+                row.put("bytes", responseBytes);
+                FileSerde.write(output, row);
+                output.close();
+
+                long bytes = file.length();
+                if (bytes > maxBytes) {
+                    runContext.logger().debug("Not caching a result of {} bytes, over the maximum size of the cache", bytes);
+                    return;
+                }
+
+                runContext.storage().putCacheFile(file, CACHE_ID, key);
+                evict(runContext, key, bytes);
+            } catch (Exception e) {
+                runContext.logger().warn("Unable to cache the result", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    /**
+     * @param created when the result was cached, in milliseconds since epoch
+     */
+    record IndexEntry(long created, long bytes) {
+    }
+
+    private void evict(RunContext runContext, String key, long bytes) throws IOException {
+        KVStore kvStore = runContext.namespaceKv(runContext.flowInfo().namespace());
+        String indexKey = INDEX_PREFIX + runContext.flowInfo().id();
+
+        Map<String, IndexEntry> index;
+        try {
+            index = kvStore.getValue(indexKey)
+                .map(value -> JacksonMapper.ofJson().convertValue(value.value(), INDEX_TYPE))
+                .map(HashMap::new)
+                .orElseGet(HashMap::new);
+        } catch (Exception e) {
+            runContext.logger().warn("Unable to read the result cache index, starting a new one", e);
+            index = new HashMap<>();
+        }
+
+        long now = System.currentTimeMillis();
+        index.put(key, new IndexEntry(now, bytes));
+
+        List<Map.Entry<String, IndexEntry>> entries = new ArrayList<>(index.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().created()));
+
+        long total = entries.stream().mapToLong(entry -> entry.getValue().bytes()).sum();
+        for (Map.Entry<String, IndexEntry> entry : entries) {
+            boolean expired = entry.getValue().created() + ttl.toMillis() <= now;
+            if (!expired && total <= maxBytes) {
+                continue;
+            }
+
+            // expired results are already ignored, they are only removed from storage
+            if (!expired) {
+                runContext.logger().debug("Evicting a cached result of {} bytes", entry.getValue().bytes());
+            }
+            runContext.storage().deleteCacheFile(CACHE_ID, entry.getKey());
+            index.remove(entry.getKey());
+            total -= entry.getValue().bytes();
+        }
+
+        kvStore.put(indexKey, new KVValueAndMetadata(new KVMetadata("Loki result cache index", ttl), index));
+    }
+}
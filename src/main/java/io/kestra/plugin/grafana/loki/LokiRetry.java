@@ -0,0 +1,90 @@
+package io.kestra.plugin.grafana.loki;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry settings rendered from a {@link LokiRetryPolicy}, deciding whether and when a failed request is attempted
+ * again.
+ */
+@Value
+@Builder
+public class LokiRetry {
+    public static final LokiRetry DEFAULT = LokiRetry.builder().build();
+
+    @Builder.Default
+    int maxAttempts = 3;
+
+    @Builder.Default
+    Duration initialBackoff = Duration.ofMillis(500);
+
+    @Builder.Default
+    Duration maxBackoff = Duration.ofSeconds(30);
+
+    @Builder.Default
+    double multiplier = 2;
+
+    @Builder.Default
+    double jitter = 0.5;
+
+    @Builder.Default
+    List<Integer> retryableStatusCodes = List.of(429, 502, 503, 504);
+
+    public boolean isRetryable(int statusCode) {
+        return retryableStatusCodes.contains(statusCode);
+    }
+
+    /**
+     * The delay before attempting a request again after its {@code attempt}-th failure, at least {@code retryAfter}
+     * when the server sent one.
+     *
+     * @return {@code null} when the request must not be retried: the attempts are exhausted or the server asked to
+     * wait longer than {@link #maxBackoff}
+     */
+    public Duration delay(int attempt, Duration retryAfter) {
+        if (attempt >= maxAttempts) {
+            return null;
+        }
+
+        double backoff = Math.min(maxBackoff.toNanos(), initialBackoff.toNanos() * Math.pow(multiplier, attempt - 1));
+        long delay = (long) (backoff * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+
+        if (retryAfter != null) {
+            if (retryAfter.compareTo(maxBackoff) > 0) {
+                return null;
+            }
+            delay = Math.max(delay, retryAfter.toNanos());
+        }
+
+        return Duration.ofNanos(delay);
+    }
+
+    /**
+     * Parse a {@code Retry-After} header, either a number of seconds or an HTTP date.
+     *
+     * @return {@code null} when absent or invalid
+     */
+    public static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                Duration until = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return until.isNegative() ? Duration.ZERO : until;
+            } catch (DateTimeParseException dateException) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.exceptions.IllegalVariableEvaluationException;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Retries of the requests sent to Loki that fail with a retryable status or a connection error, with an exponential
+ * backoff and jitter.
+ */
+@Builder
+@Getter
+@EqualsAndHashCode
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class LokiRetryPolicy {
+    @Schema(
+        title = "Maximum attempts",
+        description = "Maximum number of attempts of a request, including the first one. 1 disables retries."
+    )
+    @Builder.Default
+    private Property<Integer> maxAttempts = Property.ofValue(LokiRetry.DEFAULT.getMaxAttempts());
+
+    @Schema(
+        title = "Initial backoff",
+        description = "Delay before the first retry, multiplied by `multiplier` for each following one."
+    )
+    @Builder.Default
+    private Property<Duration> initialBackoff = Property.ofValue(LokiRetry.DEFAULT.getInitialBackoff());
+
+    @Schema(
+        title = "Maximum backoff",
+        description = "Maximum delay between two attempts. A `Retry-After` header asking for a longer delay fails the request instead."
+    )
+    @Builder.Default
+    private Property<Duration> maxBackoff = Property.ofValue(LokiRetry.DEFAULT.getMaxBackoff());
+
+    @Schema(
+        title = "Backoff multiplier"
+    )
+    @Builder.Default
+    private Property<Double> multiplier = Property.ofValue(LokiRetry.DEFAULT.getMultiplier());
+
+    @Schema(
+        title = "Jitter",
+        description = "Fraction of each delay that is randomized, between 0 and 1, so that concurrent clients throttled together do not retry together."
+    )
+    @Builder.Default
+    private Property<Double> jitter = Property.ofValue(LokiRetry.DEFAULT.getJitter());
+
+    @Schema(
+        title = "Retryable status codes",
+        description = "HTTP status codes retried, a `Retry-After` header sent with them is honoured. Connection errors are retried for queries but not for pushes."
+    )
+    @Builder.Default
+    private Property<List<Integer>> retryableStatusCodes = Property.ofValue(LokiRetry.DEFAULT.getRetryableStatusCodes());
+
+    static LokiRetry render(RunContext runContext, LokiRetryPolicy policy) throws IllegalVariableEvaluationException {
+        if (policy == null) {
+            return LokiRetry.DEFAULT;
+        }
+
+        LokiRetry defaults = LokiRetry.DEFAULT;
+        List<Integer> rRetryableStatusCodes = runContext.render(policy.retryableStatusCodes).asList(Integer.class);
+
+        return LokiRetry.builder()
+            .maxAttempts(Math.max(1, runContext.render(policy.maxAttempts).as(Integer.class).orElse(defaults.getMaxAttempts())))
+            .initialBackoff(runContext.render(policy.initialBackoff).as(Duration.class).orElse(defaults.getInitialBackoff()))
+            .maxBackoff(runContext.render(policy.maxBackoff).as(Duration.class).orElse(defaults.getMaxBackoff()))
+            .multiplier(Math.max(1, runContext.render(policy.multiplier).as(Double.class).orElse(defaults.getMultiplier())))
+            .jitter(Math.clamp(runContext.render(policy.jitter).as(Double.class).orElse(defaults.getJitter()), 0, 1))
+            .retryableStatusCodes(policy.retryableStatusCodes == null ? defaults.getRetryableStatusCodes() : rRetryableStatusCodes)
+            .build();
+    }
+}
@@ -0,0 +1,106 @@
+package io.kestra.plugin.grafana.loki;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Label sets already seen, kept as 128-bit hashes in an open addressing table of two {@code long[]}, about 32 bytes per
+ * label set instead of the maps themselves.
+ * <p>
+ * Labels are combined independently of their iteration order. Two label sets sharing a hash, which is vanishingly
+ * unlikely at 128 bits, would be taken for the same one.
+ */
+final class LokiSeriesSet {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // a zero hash marks an empty slot, the hash of the empty label set is zero too and tracked apart
+    private long[] high = new long[INITIAL_CAPACITY];
+    private long[] low = new long[INITIAL_CAPACITY];
+    private boolean empty = false;
+    private int size = 0;
+
+    /**
+     * Record a label set, returns {@code false} if it was already seen.
+     */
+    boolean add(Map<String, String> labels) {
+        long hashHigh = 0;
+        long hashLow = 0;
+        for (Map.Entry<String, String> label : labels.entrySet()) {
+            HashCode hash = HASH.newHasher()
+                .putString(label.getKey(), StandardCharsets.UTF_8)
+                .putByte((byte) 0)
+                .putString(label.getValue() != null ? label.getValue() : "", StandardCharsets.UTF_8)
+                .hash();
+
+            byte[] bytes = hash.asBytes();
+            hashHigh += longAt(bytes, 0);
+            hashLow += longAt(bytes, 8);
+        }
+
+        if (hashHigh == 0 && hashLow == 0) {
+            if (empty) {
+                return false;
+            }
+            empty = true;
+            size++;
+            return true;
+        }
+
+        if (insert(high, low, hashHigh, hashLow)) {
+            size++;
+            if (size * 2 > high.length) {
+                grow();
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static boolean insert(long[] high, long[] low, long hashHigh, long hashLow) {
+        int mask = high.length - 1;
+        int slot = (int) (hashLow ^ hashLow >>> 32) & mask;
+
+        while (high[slot] != 0 || low[slot] != 0) {
+            if (high[slot] == hashHigh && low[slot] == hashLow) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        high[slot] = hashHigh;
+        low[slot] = hashLow;
+        return true;
+    }
+
+    private void grow() {
+        long[] grownHigh = new long[high.length * 2];
+        long[] grownLow = new long[low.length * 2];
+
+        for (int i = 0; i < high.length; i++) {
+            if (high[i] != 0 || low[i] != 0) {
+                insert(grownHigh, grownLow, high[i], low[i]);
+            }
+        }
+
+        high = grownHigh;
+        low = grownLow;
+    }
+
+    private static long longAt(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value |= (bytes[offset + i] & 0xFFL) << (8 * i);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,109 @@
+package io.kestra.plugin.grafana.loki;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses times and durations the same way the Loki HTTP API does, so that ranges can be computed client-side.
+ */
+public final class LokiTime {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ns|us|µs|ms|s|m|h|d|w|y)");
+    private static final Pattern DECIMAL_SECONDS = Pattern.compile("(\\d+)\\.(\\d*)");
+    private static final Pattern SECONDS = Pattern.compile("\\d+(?:\\.\\d*)?");
+
+    private LokiTime() {
+    }
+
+    public static long now() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * NANOS_PER_SECOND + now.getNano();
+    }
+
+    /**
+     * Parse a Loki timestamp to nanoseconds since epoch: an integer Unix epoch in seconds (up to 10 digits) or
+     * nanoseconds, a floating point number of seconds, or an RFC3339 date.
+     */
+    public static long parseTimestamp(String value) {
+        String trimmed = value.trim();
+
+        // decimal seconds are read digit by digit, a double cannot hold nanoseconds since epoch
+        Matcher decimal = DECIMAL_SECONDS.matcher(trimmed);
+        if (decimal.matches()) {
+            String fraction = (decimal.group(2) + "000000000").substring(0, 9);
+            return Long.parseLong(decimal.group(1)) * NANOS_PER_SECOND + Long.parseLong(fraction);
+        }
+
+        if (trimmed.contains(".") && !trimmed.contains("-") && !trimmed.contains(":")) {
+            return toNanos(Double.parseDouble(trimmed));
+        }
+
+        try {
+            long epoch = Long.parseLong(trimmed);
+            return trimmed.length() <= 10 ? epoch * NANOS_PER_SECOND : epoch;
+        } catch (NumberFormatException e) {
+            try {
+                Instant instant = OffsetDateTime.parse(trimmed).toInstant();
+                return instant.getEpochSecond() * NANOS_PER_SECOND + instant.getNano();
+            } catch (DateTimeParseException dateException) {
+                throw new IllegalArgumentException("Invalid Loki timestamp '" + value + "'", dateException);
+            }
+        }
+    }
+
+    /**
+     * Parse a Loki duration (e.g. {@code 1h30m}, {@code 10m}, {@code 7d}) or a plain number of seconds to nanoseconds.
+     */
+    public static long parseDuration(String value) {
+        String trimmed = value.trim();
+
+        // a plain number of seconds, Double.parseDouble alone would also accept 7d or 1f
+        if (SECONDS.matcher(trimmed).matches()) {
+            return toNanos(Double.parseDouble(trimmed));
+        }
+
+        if (trimmed.startsWith("P") || trimmed.startsWith("p")) {
+            return Duration.parse(trimmed).toNanos();
+        }
+
+        Matcher matcher = DURATION_PART.matcher(trimmed);
+        long nanos = 0;
+        int position = 0;
+
+        while (matcher.find() && matcher.start() == position) {
+            double amount = Double.parseDouble(matcher.group(1));
+            nanos += (long) (amount * unitNanos(matcher.group(2)));
+            position = matcher.end();
+        }
+
+        if (position == 0 || position != trimmed.length()) {
+            throw new IllegalArgumentException("Invalid Loki duration '" + value + "'");
+        }
+
+        return nanos;
+    }
+
+    private static long unitNanos(String unit) {
+        return switch (unit) {
+            case "ns" -> 1L;
+            case "us", "µs" -> 1_000L;
+            case "ms" -> 1_000_000L;
+            case "s" -> NANOS_PER_SECOND;
+            case "m" -> 60 * NANOS_PER_SECOND;
+            case "h" -> 3_600 * NANOS_PER_SECOND;
+            case "d" -> 86_400 * NANOS_PER_SECOND;
+            case "w" -> 7 * 86_400 * NANOS_PER_SECOND;
+            case "y" -> 365 * 86_400 * NANOS_PER_SECOND;
+            default -> throw new IllegalArgumentException("Invalid Loki duration unit '" + unit + "'");
+        };
+    }
+
+    private static long toNanos(double seconds) {
+        long wholeSeconds = (long) Math.floor(seconds);
+        return wholeSeconds * NANOS_PER_SECOND + Math.round((seconds - wholeSeconds) * NANOS_PER_SECOND);
+    }
+}
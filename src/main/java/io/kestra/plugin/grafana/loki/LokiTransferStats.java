@@ -0,0 +1,69 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.models.executions.metrics.Timer;
+import io.kestra.core.runners.RunContext;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Response bytes received on the wire and after decompression, the retries with the time spent backing off before
+ * them, and the time spent waiting for the rate limiter, summed over every request of a task run.
+ */
+public class LokiTransferStats {
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong backoffNanos = new AtomicLong();
+    private final AtomicLong rateLimitWaitNanos = new AtomicLong();
+
+    void record(long compressed, long uncompressed) {
+        compressedBytes.addAndGet(compressed);
+        uncompressedBytes.addAndGet(uncompressed);
+    }
+
+    void recordRetry(Duration backoff) {
+        retries.incrementAndGet();
+        backoffNanos.addAndGet(backoff.toNanos());
+    }
+
+    void recordRateLimitWait(Duration wait) {
+        rateLimitWaitNanos.addAndGet(wait.toNanos());
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    public long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public Duration getBackoff() {
+        return Duration.ofNanos(backoffNanos.get());
+    }
+
+    public Duration getRateLimitWait() {
+        return Duration.ofNanos(rateLimitWaitNanos.get());
+    }
+
+    public void report(RunContext runContext) {
+        runContext.metric(Counter.of("bytes.compressed", compressedBytes.get()));
+        runContext.metric(Counter.of("bytes.uncompressed", uncompressedBytes.get()));
+        reportRequests(runContext);
+    }
+
+    /**
+     * Report the retries and rate limiter waits only, for tasks that do not read responses.
+     */
+    public void reportRequests(RunContext runContext) {
+        runContext.metric(Counter.of("retries", retries.get()));
+        runContext.metric(Timer.of("retries.backoff", getBackoff()));
+        runContext.metric(Timer.of("ratelimit.wait", getRateLimitWait()));
+    }
+}
@@ -0,0 +1,375 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.airlift.compress.snappy.SnappyCompressor;
+import io.kestra.core.http.HttpRequest;
+import io.kestra.core.models.annotations.Example;
+import io.kestra.core.models.annotations.Metric;
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.annotations.PluginProperty;
+import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.models.executions.metrics.Timer;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.FileSerde;
+import io.kestra.core.serializers.JacksonMapper;
+import io.kestra.plugin.grafana.loki.models.LokiPushRequest;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+@SuperBuilder
+@Getter
+@EqualsAndHashCode
+@ToString
+@NoArgsConstructor
+@Schema(
+    title = "Push log entries to Grafana Loki",
+    description = "Read records from an Ion or NDJSON file in Kestra's internal storage and push them to Loki. " +
+        "Records are grouped into streams by label set, encoded as Loki's protobuf push request compressed with snappy, " +
+        "and sent in size-bounded batches with several requests in flight. " +
+        "Each record may have a `line`, a `timestamp` (nanosecond Unix epoch, RFC3339 date or date-time value, defaults to now) and a `labels` map, " +
+        "which is the format written by `QueryRange` with `fetchType: STORE`. A record without `line` is pushed as its JSON representation."
+)
+@Plugin(
+    examples = {
+        @Example(
+            title = "Push the entries of an Ion file to Loki",
+            full = true,
+            code = """
+                id: push_loki_logs
+                namespace: company.team
+
+                inputs:
+                  - id: logs
+                    type: FILE
+
+                tasks:
+                  - id: push
+                    type: io.kestra.plugin.grafana.loki.Push
+                    url: http://localhost:3100
+                    from: "{{ inputs.logs }}"
+                    labels:
+                      job: kestra
+                      flow: "{{ flow.id }}"
+                """
+        ),
+        @Example(
+            title = "Copy a day of logs to another Loki tenant",
+            full = true,
+            code = """
+                id: copy_loki_logs
+                namespace: company.team
+
+                tasks:
+                  - id: export
+                    type: io.kestra.plugin.grafana.loki.QueryRange
+                    url: http://loki:3100
+                    tenantId: production
+                    query: '{namespace="production"}'
+                    since: 1d
+                    paginate: true
+                    limit: 5000
+                    fetchType: STORE
+
+                  - id: push
+                    type: io.kestra.plugin.grafana.loki.Push
+                    url: http://loki:3100
+                    tenantId: archive
+                    from: "{{ outputs.export.uri }}"
+                    maxBatchBytes: 4194304
+                    parallelism: 8
+                """
+        )
+    },
+    metrics = {
+        @Metric(
+            name = "records",
+            type = Counter.TYPE,
+            description = "Number of log entries pushed to Loki"
+        ),
+        @Metric(
+            name = "batches",
+            type = Counter.TYPE,
+            description = "Number of push requests sent to Loki"
+        ),
+        @Metric(
+            name = "bytes",
+            type = Counter.TYPE,
+            description = "Number of snappy-compressed bytes sent to Loki"
+        ),
+        @Metric(
+            name = "retries",
+            type = Counter.TYPE,
+            description = "Number of requests to Loki attempted again according to `retryPolicy`"
+        ),
+        @Metric(
+            name = "retries.backoff",
+            type = Timer.TYPE,
+            description = "Total time spent waiting before retrying requests"
+        ),
+        @Metric(
+            name = "ratelimit.wait",
+            type = Timer.TYPE,
+            description = "Total time spent waiting for the `rateLimit` of the tenant before sending requests"
+        )
+    }
+)
+public class Push extends AbstractLokiTask implements RunnableTask<Push.Output> {
+
+    @Schema(
+        title = "Source file URI",
+        description = "URI of an Ion or NDJSON file in Kestra's internal storage, with one record per log entry."
+    )
+    @NotNull
+    @PluginProperty(internalStorageURI = true)
+    private Property<String> from;
+
+    @Schema(
+        title = "Labels",
+        description = "Labels added to every entry, a record's own `labels` take precedence. At least one label is required by Loki."
+    )
+    private Property<Map<String, String>> labels;
+
+    @Schema(
+        title = "Maximum batch size",
+        description = "Maximum uncompressed size in bytes of the entries sent in one push request. Defaults to 1 MiB."
+    )
+    @Builder.Default
+    private Property<Integer> maxBatchBytes = Property.ofValue(1024 * 1024);
+
+    @Schema(
+        title = "Parallelism",
+        description = "Maximum number of push requests in flight."
+    )
+    @Builder.Default
+    private Property<Integer> parallelism = Property.ofValue(4);
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        var logger = runContext.logger();
+
+        URI rFrom = URI.create(runContext.render(from).as(String.class).orElseThrow());
+        Map<String, String> rLabels = runContext.render(labels).asMap(String.class, String.class);
+        int rMaxBatchBytes = runContext.render(maxBatchBytes).as(Integer.class).orElse(1024 * 1024);
+        int rParallelism = Math.max(1, runContext.render(parallelism).as(Integer.class).orElse(4));
+
+        URI uri = URI.create(LokiHttpService.buildBaseUrl(runContext, url) + "/loki/api/v1/push");
+        LokiClientOptions options = clientOptions(runContext);
+
+        BatchSender sender = new BatchSender(runContext, uri, options, rParallelism);
+        long[] records = {0};
+
+        try (
+            BufferedReader reader = new BufferedReader(new InputStreamReader(runContext.storage().getFile(rFrom), StandardCharsets.UTF_8), FileSerde.BUFFER_SIZE);
+            sender
+        ) {
+            LokiPushRequest[] batch = {new LokiPushRequest()};
+
+            FileSerde.reader(reader, record -> {
+                Entry entry = toEntry(record, rLabels);
+                batch[0].add(entry.labels(), entry.timestamp(), entry.line());
+                records[0]++;
+
+                if (batch[0].estimatedSize() >= rMaxBatchBytes) {
+                    sender.send(batch[0]);
+                    batch[0] = new LokiPushRequest();
+                }
+            });
+
+            if (!batch[0].isEmpty()) {
+                sender.send(batch[0]);
+            }
+
+            sender.await();
+        }
+
+        logger.info("Pushed {} log entries to Loki in {} requests", records[0], sender.batches);
+
+        runContext.metric(Counter.of("records", records[0]));
+        runContext.metric(Counter.of("batches", sender.batches));
+        runContext.metric(Counter.of("bytes", sender.bytes.get()));
+        options.getTransferStats().reportRequests(runContext);
+
+        return Output.builder()
+            .count(records[0])
+            .batches(sender.batches)
+            .bytes(sender.bytes.get())
+            .build();
+    }
+
+    /**
+     * Compresses and sends batches on virtual threads, blocking the reader while {@code parallelism} requests are in
+     * flight so that at most that many encoded batches are held in memory. The first failure stops the push.
+     */
+    private static final class BatchSender implements AutoCloseable {
+        private final RunContext runContext;
+        private final URI uri;
+        private final LokiClientOptions options;
+        private final Semaphore inFlight;
+        private final int parallelism;
+        private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("loki-push-", 0).factory());
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+        private final AtomicLong bytes = new AtomicLong();
+        private int batches = 0;
+
+        BatchSender(RunContext runContext, URI uri, LokiClientOptions options, int parallelism) {
+            this.runContext = runContext;
+            this.uri = uri;
+            this.options = options;
+            this.parallelism = parallelism;
+            this.inFlight = new Semaphore(parallelism);
+        }
+
+        void send(LokiPushRequest batch) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a push request to complete", e);
+            }
+
+            throwIfFailed();
+            batches++;
+
+            executor.submit(() -> {
+                try {
+                    byte[] body = compress(batch.encode());
+
+                    LokiHttpService.executePostRequest(runContext, uri, options, HttpRequest.ByteArrayRequestBody.builder()
+                        .contentType("application/x-protobuf")
+                        .content(body)
+                        .build()
+                    );
+
+                    bytes.addAndGet(body.length);
+                    runContext.logger().debug("Pushed {} entries to Loki in {} bytes", batch.entryCount(), body.length);
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+
+        /**
+         * Wait for every request in flight and rethrow the first failure.
+         */
+        void await() throws Exception {
+            inFlight.acquire(parallelism);
+            inFlight.release(parallelism);
+
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+        }
+
+        private void throwIfFailed() {
+            Exception exception = failure.get();
+            if (exception != null) {
+                throw exception instanceof RuntimeException runtimeException ?
+                    runtimeException :
+                    new IllegalStateException("Unable to push log entries to Loki", exception);
+            }
+        }
+
+        private static byte[] compress(byte[] input) {
+            SnappyCompressor compressor = new SnappyCompressor();
+            byte[] output = new byte[compressor.maxCompressedLength(input.length)];
+            int length = compressor.compress(input, 0, input.length, output, 0, output.length);
+            return Arrays.copyOf(output, length);
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+            executor.close();
+        }
+    }
+
+    private record Entry(String labels, long timestamp, String line) {
+    }
+
+    private static Entry toEntry(Object record, Map<String, String> defaultLabels) {
+        Map<String, String> labels = new HashMap<>(defaultLabels);
+        if (record instanceof Map<?, ?> map && map.get("labels") instanceof Map<?, ?> recordLabels) {
+            recordLabels.forEach((key, value) -> labels.put(String.valueOf(key), String.valueOf(value)));
+        }
+
+        if (labels.isEmpty()) {
+            throw new IllegalArgumentException("Loki requires at least one label per entry, set `labels` or add labels to the records");
+        }
+
+        if (!(record instanceof Map<?, ?> map)) {
+            return new Entry(LokiPushRequest.labels(labels), LokiTime.now(), String.valueOf(record));
+        }
+
+        Object line = map.get("line");
+        String rLine;
+        if (line != null) {
+            rLine = String.valueOf(line);
+        } else {
+            try {
+                rLine = JacksonMapper.ofJson().writeValueAsString(map);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Unable to serialize record as a log line", e);
+            }
+        }
+
+        return new Entry(LokiPushRequest.labels(labels), timestamp(map.get("timestamp")), rLine);
+    }
+
+    static long timestamp(Object value) {
+        Instant instant = switch (value) {
+            case null -> null;
+            case Instant i -> i;
+            case ZonedDateTime date -> date.toInstant();
+            case OffsetDateTime date -> date.toInstant();
+            case LocalDateTime date -> date.toInstant(ZoneOffset.UTC);
+            case LocalDate date -> date.atStartOfDay(ZoneOffset.UTC).toInstant();
+            case Date date -> date.toInstant();
+            default -> null;
+        };
+
+        if (instant != null) {
+            return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+        }
+
+        return value == null ? LokiTime.now() : LokiTime.parseTimestamp(String.valueOf(value));
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(
+            title = "Number of log entries pushed"
+        )
+        private final Long count;
+
+        @Schema(
+            title = "Number of push requests sent"
+        )
+        private final Integer batches;
+
+        @Schema(
+            title = "Number of snappy-compressed bytes sent"
+        )
+        private final Long bytes;
+    }
+}
@@ -1,15 +1,15 @@
 package io.kestra.plugin.grafana.loki;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.kestra.core.http.HttpResponse;
 import io.kestra.core.models.annotations.Example;
 import io.kestra.core.models.annotations.Metric;
 import io.kestra.core.models.annotations.Plugin;
 import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.models.executions.metrics.Timer;
 import io.kestra.core.models.property.Property;
 import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.models.tasks.common.FetchType;
 import io.kestra.core.runners.RunContext;
-import io.kestra.plugin.grafana.loki.models.LokiQueryResponse;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
@@ -76,6 +76,31 @@ import java.util.Map;
             name = "Records",
             type = Counter.TYPE,
             description = "Total number of log entries retrieved from Loki instant query"
+        ),
+        @Metric(
+            name = "bytes.compressed",
+            type = Counter.TYPE,
+            description = "Response bytes received from Loki, compressed according to `compression`"
+        ),
+        @Metric(
+            name = "bytes.uncompressed",
+            type = Counter.TYPE,
+            description = "Response bytes after decompression"
+        ),
+        @Metric(
+            name = "retries",
+            type = Counter.TYPE,
+            description = "Number of requests to Loki attempted again according to `retryPolicy`"
+        ),
+        @Metric(
+            name = "retries.backoff",
+            type = Timer.TYPE,
+            description = "Total time spent waiting before retrying requests"
+        ),
+        @Metric(
+            name = "ratelimit.wait",
+            type = Timer.TYPE,
+            description = "Total time spent waiting for the `rateLimit` of the tenant before sending requests"
         )
     }
 )
@@ -113,21 +138,20 @@ public class Query extends AbstractLokiConnection implements RunnableTask<Query.
 
         logger.debug("Querying Loki instant: {}", uri);
 
-        HttpResponse<String> res = executeGetReq(runContext, uri);
-
-        ObjectMapper objectMapper = new ObjectMapper();
-        LokiQueryResponse lokiQueryResponse = objectMapper.readValue(res.getBody(), LokiQueryResponse.class);
+        LokiClientOptions options = clientOptions(runContext);
+        try (LokiFetchSink sink = new LokiFetchSink(runContext, FetchType.FETCH)) {
+            LokiResponseParser.Result result = executeGetReq(runContext, options, uri, sink);
 
-        List<Map<String, Object>> logs = lokiQueryResponse.toLogEntries();
+            logger.info("Retrieved {} entries from Loki", sink.getSize());
 
-        logger.info("Retrieved {} entries from Loki", logs.size());
+            runContext.metric(Counter.of("records", sink.getSize()));
+            options.getTransferStats().report(runContext);
 
-        runContext.metric(Counter.of("records", logs.size()));
-
-        return Output.builder()
-            .logs(logs)
-            .resultType(lokiQueryResponse.getData().getResultType())
-            .build();
+            return Output.builder()
+                .logs(sink.getLogs())
+                .resultType(result.resultType())
+                .build();
+        }
     }
 
     @Builder
@@ -1,20 +1,21 @@
 package io.kestra.plugin.grafana.loki;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.kestra.core.http.HttpResponse;
 import io.kestra.core.models.annotations.Example;
 import io.kestra.core.models.annotations.Metric;
 import io.kestra.core.models.annotations.Plugin;
 import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.models.executions.metrics.Timer;
 import io.kestra.core.models.property.Property;
 import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.models.tasks.common.FetchType;
 import io.kestra.core.runners.RunContext;
-import io.kestra.plugin.grafana.loki.models.LokiQueryResponse;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
 
 import java.net.URI;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -81,6 +82,95 @@ import java.util.Map;
                     start: "{{ now() | dateAdd(-6, 'HOURS') }}"
                     step: 1m
                 """
+        ),
+        @Example(
+            title = "Export a day of logs to internal storage",
+            full = true,
+            code = """
+                id: export_loki_logs
+                namespace: company.team
+
+                tasks:
+                  - id: export
+                    type: io.kestra.plugin.grafana.loki.QueryRange
+                    url: http://localhost:3100
+                    query: '{namespace="production"}'
+                    start: "2024-01-01T00:00:00Z"
+                    end: "2024-01-02T00:00:00Z"
+                    limit: 5000
+                    paginate: true
+                    shardDuration: PT1H
+                    parallelism: 8
+                    fetchType: STORE
+                """
+        ),
+        @Example(
+            title = "Summarize the error rate of each service over a day",
+            full = true,
+            code = """
+                id: loki_error_rate_summary
+                namespace: company.team
+
+                tasks:
+                  - id: error_rate
+                    type: io.kestra.plugin.grafana.loki.QueryRange
+                    url: http://localhost:3100
+                    query: 'sum by (service) (rate({env="production"} |= "error" [5m]))'
+                    since: 24h
+                    step: 1m
+                    aggregations:
+                      - AVG
+                      - MAX
+                      - P95
+                      - LAST
+                """
+        ),
+        @Example(
+            title = "Cache the daily report of yesterday's logs",
+            full = true,
+            code = """
+                id: loki_daily_report
+                namespace: company.team
+
+                tasks:
+                  - id: yesterday
+                    type: io.kestra.plugin.grafana.loki.QueryRange
+                    url: http://localhost:3100
+                    query: 'sum by (level) (count_over_time({env="production"}[1h]))'
+                    start: "{{ now() | dateAdd(-1, 'DAYS') | date(\"yyyy-MM-dd'T'00:00:00XXX\") }}"
+                    end: "{{ now() | date(\"yyyy-MM-dd'T'00:00:00XXX\") }}"
+                    step: 1h
+                    cache:
+                      ttl: P2D
+                """
+        ),
+        @Example(
+            title = "Compute an SLO over the last 30 days every 5 minutes, only querying Loki for the last hour",
+            full = true,
+            code = """
+                id: loki_slo
+                namespace: company.team
+
+                tasks:
+                  - id: error_ratio
+                    type: io.kestra.plugin.grafana.loki.QueryRange
+                    url: http://localhost:3100
+                    query: 'sum(rate({app="checkout"} |= "error" [5m])) / sum(rate({app="checkout"}[5m]))'
+                    since: 30d
+                    step: 5m
+                    aggregations:
+                      - AVG
+                      - P99
+                    fetchType: NONE
+                    cache:
+                      chunkDuration: PT1H
+                      ttl: P31D
+
+                triggers:
+                  - id: every_5_minutes
+                    type: io.kestra.plugin.core.trigger.Schedule
+                    cron: "*/5 * * * *"
+                """
         )
     },
     metrics = {
@@ -88,6 +178,66 @@ import java.util.Map;
             name = "Records",
             type = Counter.TYPE,
             description = "Total number of log entries retrieved from Loki range query"
+        ),
+        @Metric(
+            name = "pages",
+            type = Counter.TYPE,
+            description = "Number of requests issued to Loki when `paginate`, `shardDuration` or `shardCount` is set"
+        ),
+        @Metric(
+            name = "shards.issued",
+            type = Counter.TYPE,
+            description = "Number of shards queried, including the ones created by adaptive sharding"
+        ),
+        @Metric(
+            name = "shards.bisected",
+            type = Counter.TYPE,
+            description = "Number of saturated shards split in two by adaptive sharding"
+        ),
+        @Metric(
+            name = "shards.merged",
+            type = Counter.TYPE,
+            description = "Number of sparse shards merged by adaptive sharding"
+        ),
+        @Metric(
+            name = "bytes.compressed",
+            type = Counter.TYPE,
+            description = "Response bytes received from Loki, compressed according to `compression`"
+        ),
+        @Metric(
+            name = "bytes.uncompressed",
+            type = Counter.TYPE,
+            description = "Response bytes after decompression"
+        ),
+        @Metric(
+            name = "retries",
+            type = Counter.TYPE,
+            description = "Number of requests to Loki attempted again according to `retryPolicy`"
+        ),
+        @Metric(
+            name = "retries.backoff",
+            type = Timer.TYPE,
+            description = "Total time spent waiting before retrying requests"
+        ),
+        @Metric(
+            name = "ratelimit.wait",
+            type = Timer.TYPE,
+            description = "Total time spent waiting for the `rateLimit` of the tenant before sending requests"
+        ),
+        @Metric(
+            name = "cache.hits",
+            type = Counter.TYPE,
+            description = "Number of results, or chunks when `chunkDuration` is set, read from the `cache`"
+        ),
+        @Metric(
+            name = "cache.misses",
+            type = Counter.TYPE,
+            description = "Number of results, or chunks when `chunkDuration` is set, that could be cached but were queried from Loki"
+        ),
+        @Metric(
+            name = "cache.bytes.saved",
+            type = Counter.TYPE,
+            description = "Response bytes received from Loki when the results read from the `cache` were queried"
         )
     }
 )
@@ -123,6 +273,105 @@ public class QueryRange extends AbstractLokiConnection implements RunnableTask<Q
     )
     private Property<String> interval;
 
+    @Schema(
+        title = "Fetch type",
+        description = """
+            How to return the retrieved entries:
+            - FETCH: return all entries in the `logs` output.
+            - FETCH_ONE: return only the first entry in the `log` output.
+            - STORE: write the entries to an Ion file in Kestra's internal storage and return its `uri`; recommended for large results as nothing but the URI is kept in the execution.
+            - NONE: only count the entries."""
+    )
+    @Builder.Default
+    private Property<FetchType> fetchType = Property.ofValue(FetchType.FETCH);
+
+    @Schema(
+        title = "Paginate",
+        description = "Keep querying Loki past `limit` until the whole time range has been retrieved, `limit` becoming the page size. " +
+            "Each page starts from the last returned timestamp according to `direction`, and entries returned twice at a page boundary are deduplicated. " +
+            "Only applies to log queries that return stream responses."
+    )
+    @Builder.Default
+    private Property<Boolean> paginate = Property.ofValue(false);
+
+    @Schema(
+        title = "Maximum records",
+        description = "Maximum total number of entries to retrieve when `paginate` is enabled, or when a metric query is cached by chunks. Defaults to no limit."
+    )
+    private Property<Integer> maxRecords;
+
+    @Schema(
+        title = "Shard duration",
+        description = "Split the time range into consecutive sub-ranges of this duration that are queried concurrently, then merged in timestamp order according to `direction`. " +
+            "`limit` applies to each shard, unless `paginate` is enabled. For metric queries, the duration is rounded up to a multiple of `step`."
+    )
+    private Property<Duration> shardDuration;
+
+    @Schema(
+        title = "Shard count",
+        description = "Split the time range into this number of sub-ranges of equal duration, as an alternative to `shardDuration`."
+    )
+    private Property<Integer> shardCount;
+
+    @Schema(
+        title = "Parallelism",
+        description = "Maximum number of shards queried concurrently when `shardDuration` or `shardCount` is set."
+    )
+    @Builder.Default
+    private Property<Integer> parallelism = Property.ofValue(4);
+
+    @Schema(
+        title = "Adaptive sharding",
+        description = "Shard the time range according to data density: a shard returning `limit` log entries is split in two and queried again, " +
+            "while a shard returning less than a quarter of `limit` merges the next two shards. `shardDuration` or `shardCount` sets the initial shards, " +
+            "defaulting to one shard per `parallelism`."
+    )
+    @Builder.Default
+    private Property<Boolean> adaptiveSharding = Property.ofValue(false);
+
+    @Schema(
+        title = "Aggregations",
+        description = "Aggregations computed for each series of a metric query while the response is read, returned in the `aggregations` output " +
+            "instead of the samples: SUM, AVG, MIN, MAX, P50, P95 and P99 (estimated within 1%), LAST value and RATE of change per second " +
+            "between the first and last samples. `NaN` samples are counted but not aggregated. Log lines are still returned according to `fetchType`."
+    )
+    private Property<List<Aggregation>> aggregations;
+
+    @Schema(
+        title = "Result cache",
+        description = "Cache the results of time ranges with an explicit `end` before now minus `freshnessMargin`, which Loki will no longer change, " +
+            "in the internal storage of the flow: running the same query over the same range again reads the result from the cache instead of Loki. " +
+            "Results are keyed by the query with its whitespace collapsed, the tenant, the parsed start and end, the step and the limit. " +
+            "With `chunkDuration`, metric queries with a `step` are cached by chunks instead, whatever their end. Defaults to none."
+    )
+    private LokiCachePolicy cache;
+
+    public enum Aggregation {
+        SUM,
+        AVG,
+        MIN,
+        MAX,
+        P50(0.5),
+        P95(0.95),
+        P99(0.99),
+        LAST,
+        RATE;
+
+        private final Double quantile;
+
+        Aggregation() {
+            this(null);
+        }
+
+        Aggregation(Double quantile) {
+            this.quantile = quantile;
+        }
+
+        Double quantile() {
+            return quantile;
+        }
+    }
+
     @Override
     public Output run(RunContext runContext) throws Exception {
 
@@ -136,23 +385,17 @@ public class QueryRange extends AbstractLokiConnection implements RunnableTask<Q
         String rSince = this.since != null ? runContext.render(since).as(String.class).orElse(null) : null;
         String rInterval = this.interval != null ? runContext.render(interval).as(String.class).orElse(null) : null;
         Direction rDirection = runContext.render(direction).as(Direction.class).orElse(Direction.BACKWARD);
+        FetchType rFetchType = runContext.render(fetchType).as(FetchType.class).orElse(FetchType.FETCH);
+        boolean rPaginate = runContext.render(paginate).as(Boolean.class).orElse(false);
+        Integer rMaxRecords = runContext.render(maxRecords).as(Integer.class).orElse(null);
+        Duration rShardDuration = runContext.render(shardDuration).as(Duration.class).orElse(null);
+        Integer rShardCount = runContext.render(shardCount).as(Integer.class).orElse(null);
+        Integer rParallelism = runContext.render(parallelism).as(Integer.class).orElse(4);
+        boolean rAdaptiveSharding = runContext.render(adaptiveSharding).as(Boolean.class).orElse(false);
+        List<Aggregation> rAggregations = runContext.render(aggregations).asList(Aggregation.class);
 
         Map<String, String> queryParams = new HashMap<>();
         queryParams.put("query",rQuery);
-
-        if (rStart != null) {
-            queryParams.put("start", rStart);
-        }
-
-        if (rEnd != null) {
-            queryParams.put("end", rEnd);
-        }
-
-        if (rSince != null) {
-            queryParams.put("since", rSince);
-        }
-
-        queryParams.put("limit", String.valueOf(rLimit));
         queryParams.put("direction", rDirection.name().toLowerCase());
 
         if (rStep != null) {
@@ -165,25 +408,143 @@ public class QueryRange extends AbstractLokiConnection implements RunnableTask<Q
 
         String baseUrl = buildBaseUrl(runContext);
         String endpoint = baseUrl + "/loki/api/v1/query_range";
-        URI uri = buildUri(endpoint, queryParams);
+        LokiClientOptions options = clientOptions(runContext);
+
+        boolean sharded = rShardDuration != null || rShardCount != null || rAdaptiveSharding;
+        long rangeEnd = rEnd != null ? LokiTime.parseTimestamp(rEnd) : LokiTime.now();
+        long rangeStart = rStart != null ? LokiTime.parseTimestamp(rStart) : rangeEnd - LokiTime.parseDuration(rSince != null ? rSince : "1h");
+
+        LokiRangeFetcher fetcher = new LokiRangeFetcher(
+            endpoint,
+            queryParams,
+            rLimit != null ? rLimit : 100,
+            rDirection,
+            (uri, pageSink) -> executeGetReq(runContext, options, uri, pageSink),
+            logger
+        );
+
+        // a range ending now is never immutable; timestamps and durations are keyed once parsed, whatever their format
+        LokiResultCache resultCache = LokiCachePolicy.render(runContext, cache);
+        // log queries are fetched as a whole, `limit` applying to the range rather than to each chunk
+        boolean incremental = resultCache != null && resultCache.getChunkDuration() != null && rStep != null && LokiIncrementalFetcher.isMetricQuery(rQuery);
+        String cacheKey = resultCache != null && !incremental && rEnd != null && resultCache.isImmutable(rangeEnd) ?
+            LokiResultCache.key(
+                baseUrl, options.getTenantId(), LokiResultCache.normalizeQuery(rQuery), rangeStart, rangeEnd,
+                rStep != null ? LokiTime.parseDuration(rStep) : null, rInterval != null ? LokiTime.parseDuration(rInterval) : null,
+                rLimit, rDirection, rPaginate, rMaxRecords, rShardDuration, rShardCount, rAdaptiveSharding
+            ) :
+            null;
+
+        try (LokiFetchSink fetchSink = new LokiFetchSink(runContext, rFetchType)) {
+            LokiAggregator aggregator = rAggregations.isEmpty() ? null : new LokiAggregator(fetchSink, rAggregations);
+            LokiResponseParser.Sink sink = aggregator != null ? aggregator : fetchSink;
+            String resultType;
+
+            LokiResultCache.Hit hit = cacheKey != null ? resultCache.read(runContext, cacheKey, sink) : null;
+
+            if (incremental) {
+                long stepNanos = LokiTime.parseDuration(rStep);
+                long chunkNanos = Math.max(1, Math.ceilDiv(resultCache.getChunkDuration().toNanos(), stepNanos)) * stepNanos;
+                String queryKey = LokiResultCache.key(baseUrl, options.getTenantId(), LokiResultCache.normalizeQuery(rQuery), stepNanos);
+
+                LokiIncrementalFetcher.Summary summary = new LokiIncrementalFetcher(runContext, fetcher, resultCache, options.getTransferStats(), queryKey, stepNanos, chunkNanos)
+                    .fetch(Math.floorDiv(rangeStart, stepNanos) * stepNanos, Math.floorDiv(rangeEnd, stepNanos) * stepNanos, rMaxRecords != null ? rMaxRecords : Long.MAX_VALUE, sink);
+                resultType = summary.resultType();
+
+                logger.debug("Read {} chunks from the result cache, fetched {} pages from Loki", summary.hits(), summary.pages());
+                runContext.metric(Counter.of("pages", summary.pages()));
+                runContext.metric(Counter.of("cache.hits", summary.hits()));
+                runContext.metric(Counter.of("cache.misses", summary.misses()));
+                runContext.metric(Counter.of("cache.bytes.saved", summary.bytesSaved()));
+            } else if (hit != null) {
+                resultType = hit.resultType();
+
+                logger.debug("Read {} entries from the result cache", hit.size());
+                runContext.metric(Counter.of("cache.hits", 1));
+                runContext.metric(Counter.of("cache.bytes.saved", hit.bytes()));
+            } else {
+                // the cache is written before the aggregations, so that the same samples can be aggregated differently
+                try (LokiResultCache.Writer writer = cacheKey != null ? resultCache.writer(runContext, sink) : null) {
+                    LokiResponseParser.Sink target = writer != null ? writer : sink;
+
+                    if (rPaginate || sharded) {
+                        long rMaxTotal = rMaxRecords != null ? rMaxRecords : Long.MAX_VALUE;
+
+                        LokiRangeFetcher.Summary summary;
+                        if (sharded) {
+                            // the adaptive planner starts with one shard per parallel request when no size is given
+                            long shardNanos = rShardDuration != null ?
+                                rShardDuration.toNanos() :
+                                Math.ceilDiv(rangeEnd - rangeStart, Math.max(1, rShardCount != null ? rShardCount : rParallelism));
+
+                            // shards must start on a step so that each one evaluates the same points as a single query
+                            if (rStep != null) {
+                                long stepNanos = LokiTime.parseDuration(rStep);
+                                shardNanos = Math.max(1, Math.ceilDiv(shardNanos, stepNanos)) * stepNanos;
+                            }
+
+                            summary = fetcher.fetchSharded(rangeStart, rangeEnd, Math.max(1, shardNanos), Math.max(1, rParallelism), rPaginate, rAdaptiveSharding, rMaxTotal, target);
 
-        logger.debug("Querying Loki: {}", uri);
+                            logger.debug("Issued {} shards to Loki, {} bisected and {} merged", summary.shards(), summary.bisected(), summary.merged());
+                            runContext.metric(Counter.of("shards.issued", summary.shards()));
+                            if (rAdaptiveSharding) {
+                                runContext.metric(Counter.of("shards.bisected", summary.bisected()));
+                                runContext.metric(Counter.of("shards.merged", summary.merged()));
+                            }
+                        } else {
+                            summary = fetcher.fetchAll(rangeStart, rangeEnd, rMaxTotal, target);
+                        }
+                        resultType = summary.resultType();
 
-        HttpResponse<String> res = executeGetReq(runContext, uri);
+                        logger.debug("Fetched {} pages from Loki", summary.pages());
+                        runContext.metric(Counter.of("pages", summary.pages()));
+                    } else {
+                        if (rStart != null) {
+                            queryParams.put("start", rStart);
+                        }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        LokiQueryResponse lokiQueryResponse = objectMapper.readValue(res.getBody(), LokiQueryResponse.class);
+                        if (rEnd != null) {
+                            queryParams.put("end", rEnd);
+                        }
 
-        List<Map<String, Object>> logs = lokiQueryResponse.toLogEntries();
+                        if (rSince != null) {
+                            queryParams.put("since", rSince);
+                        }
 
-        logger.info("Retrieved {} log entries from Loki", logs.size());
+                        queryParams.put("limit", String.valueOf(rLimit));
 
-        runContext.metric(Counter.of("records", logs.size()));
+                        URI uri = buildUri(endpoint, queryParams);
 
-        return Output.builder()
-            .logs(logs)
-            .resultType(lokiQueryResponse.getData().getResultType())
-            .build();
+                        logger.debug("Querying Loki: {}", uri);
+
+                        resultType = executeGetReq(runContext, options, uri, target).resultType();
+                    }
+
+                    if (writer != null) {
+                        runContext.metric(Counter.of("cache.misses", 1));
+                        writer.commit(cacheKey, resultType, options.getTransferStats().getCompressedBytes());
+                    }
+                }
+            }
+
+            long size = fetchSink.getSize() + (aggregator != null ? aggregator.getSize() : 0);
+            logger.info("Retrieved {} log entries from Loki", size);
+
+            runContext.metric(Counter.of("records", size));
+            options.getTransferStats().report(runContext);
+
+            Output.OutputBuilder output = Output.builder()
+                .size(size)
+                .resultType(resultType)
+                .aggregations(aggregator != null ? aggregator.summaries() : null);
+
+            return switch (rFetchType) {
+                case FETCH -> output.logs(fetchSink.getLogs()).build();
+                case FETCH_ONE -> output.log(fetchSink.getLog()).build();
+                case STORE -> output.uri(fetchSink.store()).build();
+                case NONE -> output.build();
+            };
+        }
     }
 
     @Builder
@@ -191,14 +552,38 @@ public class QueryRange extends AbstractLokiConnection implements RunnableTask<Q
     public static class Output implements io.kestra.core.models.tasks.Output {
         @Schema(
             title = "List of log entries",
-            description = "Each entry contains timestamp, labels, and log line"
+            description = "Each entry contains timestamp, labels, and log line. Only populated when `fetchType` is FETCH"
         )
         private final List<Map<String, Object>> logs;
 
+        @Schema(
+            title = "First log entry",
+            description = "Only populated when `fetchType` is FETCH_ONE"
+        )
+        private final Map<String, Object> log;
+
+        @Schema(
+            title = "URI of the stored entries",
+            description = "Ion file in Kestra's internal storage with one entry per row, only populated when `fetchType` is STORE"
+        )
+        private final URI uri;
+
+        @Schema(
+            title = "Number of entries retrieved"
+        )
+        private final Long size;
+
         @Schema(
             title = "Result type",
             description = "Type of result returned by Loki (streams or matrix)"
         )
         private final String resultType;
+
+        @Schema(
+            title = "Aggregations of each series",
+            description = "One map per series with its `labels`, its number of samples as `count` and the requested `aggregations` in lower case, " +
+                "null when undefined. Only populated when `aggregations` is set"
+        )
+        private final List<Map<String, Object>> aggregations;
     }
 }
@@ -0,0 +1,447 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.models.annotations.Example;
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.conditions.ConditionContext;
+import io.kestra.core.models.executions.Execution;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.models.triggers.*;
+import io.kestra.core.runners.RunContext;
+import io.kestra.plugin.grafana.loki.models.LokiEntry;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import javax.net.ssl.SSLContext;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(
+    title = "Trigger a flow for each new Loki log entry in real time",
+    description = "Subscribes to the Loki tail WebSocket with a LogQL query and creates an execution for each new log entry, or for each micro-batch of entries. " +
+        "A single long-lived connection is used instead of polling; it is re-established after a failure and resumes from the last entry received. " +
+        "Use the `io.kestra.plugin.grafana.loki.Trigger` polling trigger instead when executions can be delayed by the polling interval."
+)
+@Plugin(
+    examples = {
+        @Example(
+            title = "Create an execution for each critical security log",
+            full = true,
+            code = """
+                id: realtime_security_alerts
+                namespace: security
+
+                tasks:
+                  - id: handle_alert
+                    type: io.kestra.plugin.core.log.Log
+                    message: "{{ trigger.logs[0].line }}"
+
+                triggers:
+                  - id: tail_security_logs
+                    type: io.kestra.plugin.grafana.loki.RealtimeTrigger
+                    url: http://loki.example.com:3100
+                    authToken: "{{ secret('LOKI_TOKEN') }}"
+                    tenantId: production
+                    query: '{job="security", level="critical"} |= "unauthorized access"'
+                """
+        ),
+        @Example(
+            title = "Process error logs in micro-batches of up to 500 entries or 5 seconds",
+            full = true,
+            code = """
+                id: realtime_error_batches
+                namespace: monitoring
+
+                tasks:
+                  - id: log_batch
+                    type: io.kestra.plugin.core.log.Log
+                    message: "{{ trigger.count }} errors, {{ trigger.droppedEntries }} dropped by Loki"
+
+                triggers:
+                  - id: tail_errors
+                    type: io.kestra.plugin.grafana.loki.RealtimeTrigger
+                    url: http://loki:3100
+                    query: '{job="api", level="error"}'
+                    batchSize: 500
+                    batchDuration: PT5S
+                """
+        )
+    }
+)
+public class RealtimeTrigger extends AbstractLokiTrigger implements RealtimeTriggerInterface, TriggerOutput<RealtimeTrigger.Output> {
+
+    @Schema(
+        title = "LogQL query to tail",
+        description = "The LogQL log query to tail, metric queries are not supported by the Loki tail endpoint."
+    )
+    @NotNull
+    private Property<String> query;
+
+    @Schema(
+        title = "Delay for",
+        description = "Number of seconds, up to 5, Loki waits before sending entries, to let late entries be sorted in. Defaults to 0."
+    )
+    @Builder.Default
+    private Property<Integer> delayFor = Property.ofValue(0);
+
+    @Schema(
+        title = "Replay limit",
+        description = "Maximum number of entries Loki sends back when the connection is re-established, to replay the entries received while disconnected. Defaults to 100."
+    )
+    @Builder.Default
+    private Property<Integer> limit = Property.ofValue(100);
+
+    @Schema(
+        title = "Batch size",
+        description = "Maximum number of entries per execution. Defaults to 1, one execution per entry."
+    )
+    @Builder.Default
+    private Property<Integer> batchSize = Property.ofValue(1);
+
+    @Schema(
+        title = "Batch duration",
+        description = "Maximum time to wait for a batch to be full before creating an execution with the entries received so far. " +
+            "Only used when `batchSize` is greater than 1. Defaults to 1 second."
+    )
+    @Builder.Default
+    private Property<Duration> batchDuration = Property.ofValue(Duration.ofSeconds(1));
+
+    @Schema(
+        title = "Maximum reconnect delay",
+        description = "The delay between reconnection attempts doubles from 1 second up to this value. Defaults to 1 minute."
+    )
+    @Builder.Default
+    private Property<Duration> maxReconnectDelay = Property.ofValue(Duration.ofMinutes(1));
+
+    @Builder.Default
+    @Getter(AccessLevel.NONE)
+    private final AtomicBoolean isActive = new AtomicBoolean(true);
+
+    @Builder.Default
+    @Getter(AccessLevel.NONE)
+    private final CountDownLatch waitForTermination = new CountDownLatch(1);
+
+    @Override
+    public Publisher<Execution> evaluate(ConditionContext conditionContext, TriggerContext context) throws Exception {
+        RunContext runContext = conditionContext.getRunContext();
+
+        String rQuery = runContext.render(query).as(String.class).orElseThrow();
+        int rBatchSize = runContext.render(batchSize).as(Integer.class).orElse(1);
+        Duration rBatchDuration = runContext.render(batchDuration).as(Duration.class).orElse(Duration.ofSeconds(1));
+
+        Map<String, String> queryParams = new HashMap<>();
+        queryParams.put("query", rQuery);
+        queryParams.put("delay_for", String.valueOf(runContext.render(delayFor).as(Integer.class).orElse(0)));
+        queryParams.put("limit", String.valueOf(runContext.render(limit).as(Integer.class).orElse(100)));
+
+        String endpoint = buildBaseUrl(runContext).replaceFirst("^http", "ws") + "/loki/api/v1/tail";
+        Duration rMaxReconnectDelay = runContext.render(maxReconnectDelay).as(Duration.class).orElse(Duration.ofMinutes(1));
+        LokiClientOptions options = clientOptions(runContext);
+
+        AtomicLong dropped = new AtomicLong();
+
+        Flux<LokiEntry> entries = Flux.create(emitter -> {
+            Thread thread = Thread.ofVirtual()
+                .name("loki-tail-" + context.getTriggerId())
+                .start(() -> {
+                    try {
+                        tail(runContext, endpoint, queryParams, options, rMaxReconnectDelay, dropped, emitter);
+                        emitter.complete();
+                    } catch (Throwable e) {
+                        emitter.error(e);
+                    } finally {
+                        waitForTermination.countDown();
+                    }
+                });
+
+            emitter.onDispose(() -> {
+                isActive.set(false);
+                thread.interrupt();
+            });
+        });
+
+        Flux<List<LokiEntry>> batches = rBatchSize <= 1 ?
+            entries.map(List::of) :
+            entries.bufferTimeout(rBatchSize, rBatchDuration);
+
+        return batches.map(batch -> {
+            Output output = Output.builder()
+                .logs(batch.stream().map(LokiEntry::toMap).toList())
+                .count(batch.size())
+                .query(rQuery)
+                .droppedEntries(dropped.getAndSet(0))
+                .lastTimestamp(batch.getLast().timestamp())
+                .build();
+
+            return TriggerService.generateRealtimeExecution(this, conditionContext, context, output);
+        });
+    }
+
+    /**
+     * Tail the query until the trigger is stopped, reconnecting with an exponential backoff after a failure.
+     * A reconnection resumes from the last timestamp received, entries already sent at this timestamp are skipped.
+     */
+    private void tail(
+        RunContext runContext,
+        String endpoint,
+        Map<String, String> queryParams,
+        LokiClientOptions options,
+        Duration maxReconnectDelay,
+        AtomicLong dropped,
+        FluxSink<LokiEntry> emitter
+    ) throws InterruptedException {
+        Logger logger = runContext.logger();
+        TailCursor cursor = new TailCursor(LokiTime.now());
+        Duration reconnectDelay = Duration.ofSeconds(1);
+
+        HttpClient.Builder clientBuilder = HttpClient.newBuilder().connectTimeout(options.getConnectTimeout());
+        ProxySelector proxySelector = options.getTransport().proxySelector();
+        if (proxySelector != null) {
+            clientBuilder.proxy(proxySelector);
+        }
+        SSLContext sslContext = options.getTransport().sslContext();
+        if (sslContext != null) {
+            clientBuilder.sslContext(sslContext);
+        }
+
+        try (HttpClient client = clientBuilder.build()) {
+            while (isActive.get()) {
+                Map<String, String> params = new HashMap<>(queryParams);
+                params.put("start", String.valueOf(cursor.resumeFrom()));
+                URI uri = buildUri(endpoint, params);
+
+                CompletableFuture<Void> closed = new CompletableFuture<>();
+                TailListener listener = new TailListener(cursor, dropped, emitter, closed, logger);
+
+                try {
+                    WebSocket.Builder builder = client.newWebSocketBuilder().connectTimeout(options.getConnectTimeout());
+                    if (options.getAuthToken() != null) {
+                        builder.header("Authorization", "Bearer " + options.getAuthToken());
+                    }
+                    if (options.getTenantId() != null) {
+                        builder.header("X-Scope-OrgID", options.getTenantId());
+                    }
+
+                    logger.debug("Tailing Loki: {}", uri);
+                    WebSocket webSocket = builder.buildAsync(uri, listener).join();
+
+                    try {
+                        while (isActive.get() && !closed.isDone()) {
+                            try {
+                                closed.get(1, TimeUnit.SECONDS);
+                            } catch (TimeoutException ignored) {
+                                // check whether the trigger was stopped
+                            }
+                        }
+                    } finally {
+                        if (!webSocket.isOutputClosed()) {
+                            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "");
+                        }
+                        webSocket.abort();
+                    }
+
+                    if (listener.received) {
+                        reconnectDelay = Duration.ofSeconds(1);
+                    }
+
+                    if (isActive.get()) {
+                        logger.warn("Loki tail connection closed, reconnecting in {}", reconnectDelay);
+                    }
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    if (!isActive.get()) {
+                        break;
+                    }
+
+                    logger.warn("Loki tail connection failed, reconnecting in {}", reconnectDelay, e);
+                }
+
+                if (isActive.get()) {
+                    Thread.sleep(reconnectDelay.toMillis());
+                    reconnectDelay = reconnectDelay.multipliedBy(2);
+                    reconnectDelay = reconnectDelay.compareTo(maxReconnectDelay) > 0 ? maxReconnectDelay : reconnectDelay;
+                }
+            }
+        }
+    }
+
+    /**
+     * The latest timestamp received and the hashes of the entries received at this timestamp.
+     */
+    private static final class TailCursor {
+        private final long start;
+        private long timestamp = Long.MIN_VALUE;
+        private Set<Long> hashes = new HashSet<>();
+
+        TailCursor(long start) {
+            this.start = start;
+        }
+
+        long resumeFrom() {
+            return timestamp == Long.MIN_VALUE ? start : timestamp;
+        }
+
+        /**
+         * Record an entry, returns {@code false} if it was already received at the latest timestamp.
+         */
+        boolean advance(LokiEntry entry) {
+            long entryTimestamp = LokiTime.parseTimestamp(entry.timestamp());
+            long hash = entry.hash();
+
+            if (entryTimestamp > timestamp) {
+                timestamp = entryTimestamp;
+                hashes = new HashSet<>();
+            } else if (entryTimestamp == timestamp && hashes.contains(hash)) {
+                return false;
+            }
+
+            if (entryTimestamp == timestamp) {
+                hashes.add(hash);
+            }
+
+            return true;
+        }
+    }
+
+    private static final class TailListener implements WebSocket.Listener {
+        private final TailCursor cursor;
+        private final AtomicLong dropped;
+        private final FluxSink<LokiEntry> emitter;
+        private final CompletableFuture<Void> closed;
+        private final Logger logger;
+        private final StringBuilder message = new StringBuilder();
+
+        private volatile boolean received = false;
+
+        TailListener(TailCursor cursor, AtomicLong dropped, FluxSink<LokiEntry> emitter, CompletableFuture<Void> closed, Logger logger) {
+            this.cursor = cursor;
+            this.dropped = dropped;
+            this.emitter = emitter;
+            this.closed = closed;
+            this.logger = logger;
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            message.append(data);
+
+            if (last) {
+                try {
+                    LokiResponseParser.TailResult result = LokiResponseParser.parseTail(message.toString(), entry -> {
+                        if (cursor.advance(entry)) {
+                            emitter.next(entry);
+                        }
+                    });
+
+                    received = true;
+                    if (result.dropped() > 0) {
+                        logger.warn("Loki dropped {} entries as the tail could not keep up", result.dropped());
+                        dropped.addAndGet(result.dropped());
+                    }
+                } catch (Exception e) {
+                    closed.completeExceptionally(e);
+                } finally {
+                    message.setLength(0);
+                }
+            }
+
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            logger.debug("Loki tail connection closed with status {}: {}", statusCode, reason);
+            closed.complete(null);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            closed.completeExceptionally(error);
+        }
+    }
+
+    @Override
+    public void kill() {
+        stop(true);
+    }
+
+    @Override
+    public void stop() {
+        stop(false);
+        super.stop();
+    }
+
+    private void stop(boolean wait) {
+        if (!isActive.compareAndSet(true, false)) {
+            return;
+        }
+
+        if (wait) {
+            try {
+                this.waitForTermination.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Builder
+    @Getter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(
+            title = "Log entries of this execution",
+            description = "A single entry, or up to `batchSize` entries. Each entry contains timestamp, labels, and log line"
+        )
+        private List<Map<String, Object>> logs;
+
+        @Schema(
+            title = "Number of log entries"
+        )
+        private Integer count;
+
+        @Schema(
+            title = "Query tailed",
+            description = "The LogQL query that was tailed"
+        )
+        private String query;
+
+        @Schema(
+            title = "Dropped entries",
+            description = "Number of entries Loki reported as dropped since the previous execution, because the tail could not keep up"
+        )
+        private Long droppedEntries;
+
+        @Schema(
+            title = "Latest timestamp",
+            description = "Timestamp of the last log entry of this execution (in nanoseconds)"
+        )
+        private String lastTimestamp;
+    }
+}
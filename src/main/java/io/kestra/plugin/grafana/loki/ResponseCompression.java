@@ -0,0 +1,20 @@
+package io.kestra.plugin.grafana.loki;
+
+/**
+ * Content encodings accepted for Loki query responses.
+ */
+public enum ResponseCompression {
+    NONE("identity"),
+    GZIP("gzip"),
+    ZSTD("zstd, gzip;q=0.5");
+
+    private final String acceptEncoding;
+
+    ResponseCompression(String acceptEncoding) {
+        this.acceptEncoding = acceptEncoding;
+    }
+
+    public String acceptEncoding() {
+        return acceptEncoding;
+    }
+}
@@ -0,0 +1,270 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.models.annotations.Example;
+import io.kestra.core.models.annotations.Metric;
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.models.executions.metrics.Timer;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.FileSerde;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import static java.net.URLEncoder.encode;
+
+@SuperBuilder
+@Getter
+@EqualsAndHashCode
+@ToString
+@NoArgsConstructor
+@Schema(
+    title = "List the streams of Grafana Loki",
+    description = "Retrieve the label sets of the streams matching selectors within a time window, for example to audit the cardinality of labels. " +
+        "Streams are written to an Ion file in Kestra's internal storage as they are read, one label set per row, and only counted in the execution. " +
+        "Large windows can be split into shards queried concurrently, streams returned by several shards being written once."
+)
+@Plugin(
+    examples = {
+        @Example(
+            title = "Export the streams of the production namespace over a week",
+            full = true,
+            code = """
+                id: loki_cardinality_audit
+                namespace: company.team
+
+                tasks:
+                  - id: series
+                    type: io.kestra.plugin.grafana.loki.Series
+                    url: http://localhost:3100
+                    match:
+                      - '{namespace="production"}'
+                    since: 7d
+                    shardDuration: PT6H
+                    parallelism: 4
+                """
+        )
+    },
+    metrics = {
+        @Metric(
+            name = "records",
+            type = Counter.TYPE,
+            description = "Number of distinct streams written"
+        ),
+        @Metric(
+            name = "duplicates",
+            type = Counter.TYPE,
+            description = "Number of streams returned again by another shard and skipped"
+        ),
+        @Metric(
+            name = "shards.issued",
+            type = Counter.TYPE,
+            description = "Number of requests issued to Loki, one per shard"
+        ),
+        @Metric(
+            name = "bytes.compressed",
+            type = Counter.TYPE,
+            description = "Response bytes received from Loki"
+        ),
+        @Metric(
+            name = "bytes.uncompressed",
+            type = Counter.TYPE,
+            description = "Response bytes after decompression"
+        ),
+        @Metric(
+            name = "retries",
+            type = Counter.TYPE,
+            description = "Number of requests to Loki attempted again according to `retryPolicy`"
+        ),
+        @Metric(
+            name = "retries.backoff",
+            type = Timer.TYPE,
+            description = "Total time spent waiting before retrying requests"
+        ),
+        @Metric(
+            name = "ratelimit.wait",
+            type = Timer.TYPE,
+            description = "Total time spent waiting for the `rateLimit` of the tenant before sending requests"
+        )
+    }
+)
+public class Series extends AbstractLokiMetadata implements RunnableTask<Series.Output> {
+
+    @Schema(
+        title = "Stream selectors",
+        description = "LogQL stream selectors (e.g., '{job=\"api\"}'), the streams matching any of them are returned."
+    )
+    @NotNull
+    private Property<List<String>> match;
+
+    @Schema(
+        title = "Shard duration",
+        description = "Split the time window into consecutive sub-windows of this duration queried concurrently. Defaults to a single request."
+    )
+    private Property<Duration> shardDuration;
+
+    @Schema(
+        title = "Parallelism",
+        description = "Maximum number of shards queried concurrently when `shardDuration` is set."
+    )
+    @Builder.Default
+    private Property<Integer> parallelism = Property.ofValue(4);
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        var logger = runContext.logger();
+
+        List<String> rMatch = runContext.render(match).asList(String.class);
+        Duration rShardDuration = runContext.render(shardDuration).as(Duration.class).orElse(null);
+        int rParallelism = Math.max(1, runContext.render(parallelism).as(Integer.class).orElse(4));
+
+        if (rMatch.isEmpty()) {
+            throw new IllegalArgumentException("At least one stream selector is required in `match`");
+        }
+
+        Window window = window(runContext);
+        long shardNanos = rShardDuration != null ? Math.max(1, rShardDuration.toNanos()) : Math.max(1, window.end() - window.start());
+
+        List<URI> shards = new ArrayList<>();
+        String endpoint = LokiHttpService.buildBaseUrl(runContext, url) + "/loki/api/v1/series";
+        for (long shardStart = window.start(); shardStart < window.end() || shards.isEmpty(); shardStart += shardNanos) {
+            shards.add(buildUri(endpoint, rMatch, shardStart, Math.min(shardStart + shardNanos, window.end())));
+        }
+
+        LokiClientOptions options = clientOptions(runContext);
+        File file = runContext.workingDir().createTempFile(".ion").toFile();
+
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file), FileSerde.BUFFER_SIZE)) {
+            SeriesWriter writer = new SeriesWriter(output);
+            fetchAll(runContext, options, shards, rParallelism, writer);
+
+            logger.info("Retrieved {} streams from Loki, {} returned again by another shard", writer.size, writer.duplicates);
+
+            runContext.metric(Counter.of("records", writer.size));
+            runContext.metric(Counter.of("duplicates", writer.duplicates));
+            runContext.metric(Counter.of("shards.issued", shards.size()));
+            options.getTransferStats().report(runContext);
+
+            output.close();
+
+            return Output.builder()
+                .uri(runContext.storage().putFile(file))
+                .size(writer.size)
+                .build();
+        }
+    }
+
+    /**
+     * Writes each label set not seen yet, label sets of concurrent shards are written one at a time.
+     */
+    private static final class SeriesWriter implements LokiResponseParser.SeriesSink {
+        private final OutputStream output;
+        private final LokiSeriesSet seen = new LokiSeriesSet();
+        private long size = 0;
+        private long duplicates = 0;
+
+        SeriesWriter(OutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public synchronized void accept(Map<String, String> labels) throws java.io.IOException {
+            if (!seen.add(labels)) {
+                duplicates++;
+                return;
+            }
+
+            FileSerde.write(output, labels);
+            size++;
+        }
+    }
+
+    private static void fetchAll(RunContext runContext, LokiClientOptions options, List<URI> shards, int parallelism, SeriesWriter writer) throws Exception {
+        if (shards.size() == 1) {
+            fetch(runContext, options, shards.getFirst(), writer);
+            return;
+        }
+
+        Semaphore slots = new Semaphore(parallelism);
+        List<Future<Long>> futures = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("loki-series-", 0).factory())) {
+            try {
+                for (URI shard : shards) {
+                    slots.acquire();
+                    futures.add(executor.submit(() -> {
+                        try {
+                            return fetch(runContext, options, shard, writer);
+                        } finally {
+                            slots.release();
+                        }
+                    }));
+                }
+
+                for (Future<Long> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            } finally {
+                futures.forEach(future -> future.cancel(true));
+            }
+        }
+    }
+
+    private static long fetch(RunContext runContext, LokiClientOptions options, URI uri, SeriesWriter writer) throws Exception {
+        runContext.logger().debug("Querying Loki: {}", uri);
+
+        return LokiHttpService.executeGetRequest(runContext, uri, options, inputStream -> LokiResponseParser.parseSeries(inputStream, writer));
+    }
+
+    /**
+     * Selectors are sent as repeated {@code match[]} parameters.
+     */
+    private static URI buildUri(String endpoint, List<String> selectors, long start, long end) {
+        StringBuilder uri = new StringBuilder(endpoint)
+            .append("?start=").append(start)
+            .append("&end=").append(end);
+
+        for (String selector : selectors) {
+            uri.append("&").append(encode("match[]", StandardCharsets.UTF_8)).append("=").append(encode(selector, StandardCharsets.UTF_8));
+        }
+
+        return URI.create(uri.toString());
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(
+            title = "URI of the stored streams",
+            description = "Ion file in Kestra's internal storage with the label set of one stream per row"
+        )
+        private final URI uri;
+
+        @Schema(
+            title = "Number of distinct streams"
+        )
+        private final Long size;
+    }
+}
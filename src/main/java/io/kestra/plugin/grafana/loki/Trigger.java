@@ -1,7 +1,6 @@
 package io.kestra.plugin.grafana.loki;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.kestra.core.http.HttpResponse;
+import com.fasterxml.jackson.core.type.TypeReference;
 import io.kestra.core.models.annotations.Example;
 import io.kestra.core.models.annotations.Plugin;
 import io.kestra.core.models.conditions.ConditionContext;
@@ -9,7 +8,11 @@ import io.kestra.core.models.executions.Execution;
 import io.kestra.core.models.property.Property;
 import io.kestra.core.models.triggers.*;
 import io.kestra.core.runners.RunContext;
-import io.kestra.plugin.grafana.loki.models.LokiQueryResponse;
+import io.kestra.core.serializers.JacksonMapper;
+import io.kestra.core.storages.kv.KVMetadata;
+import io.kestra.core.storages.kv.KVStore;
+import io.kestra.core.storages.kv.KVValueAndMetadata;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotNull;
 import lombok.*;
@@ -17,10 +20,10 @@ import lombok.experimental.SuperBuilder;
 
 import java.net.URI;
 import java.time.Duration;
-import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
-import static io.kestra.core.models.triggers.StatefulTriggerService.*;
+import static io.kestra.core.models.triggers.StatefulTriggerService.defaultKey;
 
 @SuperBuilder
 @ToString
@@ -31,6 +34,7 @@ import static io.kestra.core.models.triggers.StatefulTriggerService.*;
     title = "Trigger a flow when a Loki query returns new results",
     description = "Polls Loki at regular intervals with a LogQL query and triggers a flow execution when new log entries matching the query are found. " +
         "The trigger maintains state to track processed logs and only fires on new entries. " +
+        "Each poll starts from the latest timestamp already seen minus a lateness allowance, so only new data is fetched. " +
         "Ideal for SecOps, SOAR, alerting, and monitoring use cases."
 )
 @Plugin(
@@ -123,6 +127,8 @@ import static io.kestra.core.models.triggers.StatefulTriggerService.*;
     }
 )
 public class Trigger extends AbstractLokiTrigger implements PollingTriggerInterface, TriggerOutput<Trigger.Output>, StatefulTriggerInterface {
+    private static final TypeReference<Map<String, Watermark>> WATERMARKS_TYPE = new TypeReference<>() {
+    };
 
     @Schema(
         title = "LogQL query to monitor",
@@ -152,6 +158,14 @@ public class Trigger extends AbstractLokiTrigger implements PollingTriggerInterf
     @Builder.Default
     private Property<String> since = Property.ofValue("10m");
 
+    @Schema(
+        title = "Lateness allowance",
+        description = "How far before the latest timestamp already seen the next poll starts, to catch entries ingested late. " +
+            "Entries already seen in this window are deduplicated by the trigger state. Defaults to 1 minute."
+    )
+    @Builder.Default
+    private Property<Duration> lateness = Property.ofValue(Duration.ofMinutes(1));
+
     @Schema(
         title = "State TTL",
         description = "Time to live for the trigger state. After this duration, the state will be cleared. Defaults to 1 day."
@@ -177,66 +191,109 @@ public class Trigger extends AbstractLokiTrigger implements PollingTriggerInterf
         var rStateKey = runContext.render(stateKey).as(String.class).orElse(defaultKey(context.getNamespace(), context.getFlowId(), context.getTriggerId()));
         var rStateTtl = runContext.render(stateTtl).as(Duration.class);
 
-        Map<String, StatefulTriggerService.Entry> state = readState(runContext, rStateKey, rStateTtl);
+        String endpoint = buildBaseUrl(runContext) + "/loki/api/v1/query_range";
+        LokiClientOptions options = clientOptions(runContext);
+
+        // skip the poll before reading any state while Loki is known to be failing
+        if (options.getCircuitBreaker() != null) {
+            LokiCircuitBreaker breaker = LokiCircuitBreaker.get(URI.create(endpoint), options.getCircuitBreaker());
+            if (!breaker.allowsRequests()) {
+                logger.debug("Skipping poll, the circuit breaker of {} is open for {}", endpoint, breaker.remainingOpen());
+                return Optional.empty();
+            }
+        }
+
+        // Start from the watermark of the previous polls, or look back from now on first run
+        long queryEnd = LokiTime.now();
+        long rLateness = runContext.render(lateness).as(Duration.class).orElse(Duration.ofMinutes(1)).toNanos();
+
+        Map<String, Watermark> watermarks = readWatermarks(runContext, rStateKey);
+        Watermark watermark = watermarks.get(rQuery);
+
+        Optional<LokiDedupState> storedState = LokiDedupState.read(runContext, rStateKey, rStateTtl);
+        LokiDedupState state = storedState.orElseGet(LokiDedupState::new);
 
-        String queryStart = null;
-        String queryEnd = String.valueOf(Instant.now().toEpochMilli() * 1_000_000); // Current time in nanoseconds
+        // a state written by a previous version has no watermark, resume from its latest entry instead of the lookback window
+        long lookbackStart = queryEnd - LokiTime.parseDuration(rSince);
+        if (watermark == null && state.legacyUntil().isPresent() && state.legacyUntil().getAsLong() > lookbackStart) {
+            logger.info("Migrating the trigger state, resuming from the latest entry seen {}", state.legacyUntil().getAsLong());
+            watermark = new Watermark(state.legacyUntil().getAsLong(), null);
+        }
+
+        long queryStart;
+        if (watermark == null) {
+            queryStart = lookbackStart;
+        } else if (storedState.isEmpty()) {
+            // without the seen entries, going back by the lateness allowance would fire them again
+            logger.info("No trigger state found, resuming after the watermark {}", watermark.timestamp());
+            queryStart = Math.max(watermark.nextStart(rLateness), watermark.timestamp() + 1);
+        } else {
+            queryStart = watermark.nextStart(rLateness);
+        }
 
         // Build query parameters
         Map<String, String> queryParams = new HashMap<>();
         queryParams.put("query", rQuery);
         queryParams.put("limit", String.valueOf(rMaxRecords));
         queryParams.put("direction", "forward"); // Always forward to get oldest first
-        queryParams.put("since", rSince);
-        queryParams.put("end", queryEnd);
+        queryParams.put("start", String.valueOf(queryStart));
+        queryParams.put("end", String.valueOf(queryEnd));
 
         // Execute query
-        String baseUrl = buildBaseUrl(runContext);
-        String endpoint = baseUrl + "/loki/api/v1/query_range";
         URI uri = buildUri(endpoint, queryParams);
 
         logger.debug("Polling Loki: {}", uri);
 
-        HttpResponse<String> res = executeGetReq(runContext, uri);
+        // Deduplicate while parsing so that only new entries are kept in memory
+        List<Map<String, Object>> toFire = new ArrayList<>();
+        AtomicLong latest = new AtomicLong(Long.MIN_VALUE);
+        LokiResponseParser.Result result;
+        try {
+            result = executeGetReq(runContext, options, uri, log -> {
+                try {
+                    latest.accumulateAndGet(LokiTime.parseTimestamp(log.timestamp()), Math::max);
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        LokiQueryResponse lokiQueryResponse;
-        Object body = res.getBody();
-        if (body instanceof String) {
-            lokiQueryResponse = objectMapper.readValue((String) body, LokiQueryResponse.class);
-        } else {
-            lokiQueryResponse = objectMapper.convertValue(body, LokiQueryResponse.class);
+                    // Only fire for entries not seen by a previous poll
+                    if (state.add(log)) {
+                        toFire.add(log.toMap());
+                    }
+                } catch (Exception e) {
+                    logger.warn("Failed to process log entry for state tracking", e);
+                }
+            });
+        } catch (LokiCircuitOpenException e) {
+            logger.debug("Skipping poll: {}", e.getMessage());
+            return Optional.empty();
         }
 
-        List<Map<String, Object>> logs = lokiQueryResponse.toLogEntries();
+        logger.debug("Found {} potential log entries", result.count());
+        boolean empty = latest.get() == Long.MIN_VALUE;
 
-        if (logs.isEmpty()) {
-            logger.debug("No logs found");
-            return Optional.empty();
+        // A full page means there are more entries after it: the next poll resumes right after them instead of
+        // going back by the lateness allowance, which could otherwise return the same already seen page forever
+        boolean saturated = result.count() >= rMaxRecords && !empty;
+        Long cursor = null;
+        if (saturated) {
+            // a full page sharing the start timestamp can only be moved past
+            cursor = latest.get() > queryStart ? latest.get() : latest.get() + 1;
         }
 
-        logger.debug("Found {} potential log entries", logs.size());
-
-        List<Map<String, Object>> toFire = logs.stream()
-            .filter(log -> {
-                try {
-                    String timestamp = (String) log.get("timestamp");
-                    // Create a unique ID for the log entry
-                    // We use timestamp + hash of content/labels to be unique
-                    String content = log.containsKey("line") ? (String) log.get("line") : String.valueOf(log.get("value"));
-                    Map<?, ?> labels = (Map<?, ?>) log.get("labels");
-                    Entry candidate = getEntry(timestamp, content, labels);
-
-                    // Check if we should fire for this entry
-                    return computeAndUpdateState(state, candidate, On.CREATE).fire();
-                } catch (Exception e) {
-                    logger.warn("Failed to process log entry for state tracking", e);
-                    return false;
-                }
-            })
-            .toList();
+        // a poll without entries still moves the watermark, so that the next window does not keep growing from the last entry
+        long latestTimestamp = empty ? queryEnd - rLateness : latest.get();
+        if (watermark != null) {
+            latestTimestamp = Math.max(latestTimestamp, watermark.timestamp());
+        }
+        Watermark next = new Watermark(latestTimestamp, cursor);
+        if (!next.equals(watermark)) {
+            watermarks.put(rQuery, next);
+            writeWatermarks(runContext, rStateKey, watermarks, rStateTtl);
+        }
 
-        writeState(runContext, rStateKey, state, rStateTtl);
+        // later polls never start before the watermark minus the lateness allowance, older entries will not be returned again
+        state.prune(Math.min(next.nextStart(rLateness), next.timestamp() - rLateness));
+        if (state.isModified()) {
+            state.write(runContext, rStateKey, rStateTtl);
+        }
 
         if (toFire.isEmpty()) {
             logger.debug("No new logs found after state evaluation");
@@ -246,18 +303,18 @@ public class Trigger extends AbstractLokiTrigger implements PollingTriggerInterf
         logger.info("Found {} new log entries", toFire.size());
 
         // Find the latest timestamp from the results
-        String latestTimestamp = toFire.stream()
+        String lastTimestamp = toFire.stream()
             .map(log -> (String) log.get("timestamp"))
             .filter(Objects::nonNull)
             .max(Comparator.naturalOrder())
-            .orElse(queryEnd);
+            .orElse(String.valueOf(queryEnd));
 
         Output output = Output.builder()
             .logs(toFire)
             .count(toFire.size())
             .query(rQuery)
-            .resultType(lokiQueryResponse.getData().getResultType())
-            .lastTimestamp(latestTimestamp)
+            .resultType(result.resultType())
+            .lastTimestamp(lastTimestamp)
             .build();
 
         Execution execution = TriggerService.generateExecution(this, conditionContext, context, output);
@@ -265,19 +322,41 @@ public class Trigger extends AbstractLokiTrigger implements PollingTriggerInterf
         return Optional.of(execution);
     }
 
-    private static Entry getEntry(String timestamp, String content, Map<?, ?> labels) {
-        String uniqueId = timestamp + "_" + (content + labels).hashCode();
+    private static String watermarkKey(String stateKey) {
+        return stateKey + "_watermark";
+    }
+
+    private static Map<String, Watermark> readWatermarks(RunContext runContext, String stateKey) {
+        try {
+            KVStore kvStore = runContext.namespaceKv(runContext.flowInfo().namespace());
+            return kvStore.getValue(watermarkKey(stateKey))
+                .map(value -> JacksonMapper.ofJson().convertValue(value.value(), WATERMARKS_TYPE))
+                .map(HashMap::new)
+                .orElseGet(HashMap::new);
+        } catch (Exception e) {
+            runContext.logger().warn("Unable to read the trigger watermark, falling back to the lookback window", e);
+            return new HashMap<>();
+        }
+    }
 
-        Instant recordTimestamp = Instant.ofEpochSecond(
-            Long.parseLong(timestamp) / 1_000_000_000,
-            Long.parseLong(timestamp) % 1_000_000_000
-        );
+    private static void writeWatermarks(RunContext runContext, String stateKey, Map<String, Watermark> watermarks, Optional<Duration> ttl) {
+        try {
+            KVStore kvStore = runContext.namespaceKv(runContext.flowInfo().namespace());
+            kvStore.put(watermarkKey(stateKey), new KVValueAndMetadata(new KVMetadata("trigger watermark", ttl.orElse(null)), watermarks));
+        } catch (Exception e) {
+            runContext.logger().warn("Unable to write the trigger watermark", e);
+        }
+    }
 
-        return Entry.candidate(
-            uniqueId,
-            timestamp,
-            recordTimestamp
-        );
+    /**
+     * Latest timestamp seen for a query, in nanoseconds.
+     *
+     * @param cursor where the next poll must start when the last one was truncated by {@code maxRecords}, {@code null} otherwise
+     */
+    record Watermark(long timestamp, Long cursor) {
+        long nextStart(long lateness) {
+            return cursor != null ? cursor : timestamp - lateness;
+        }
     }
 
     @Override
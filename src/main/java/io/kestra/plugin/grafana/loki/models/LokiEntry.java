@@ -0,0 +1,72 @@
+package io.kestra.plugin.grafana.loki.models;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A single log line (stream results) or sample (matrix, vector and scalar results) as returned by Loki.
+ * <p>
+ * {@code labels} is shared by every entry of the same stream or series.
+ */
+public record LokiEntry(String timestamp, Map<String, String> labels, String line, String value) {
+    public boolean isLine() {
+        return line != null;
+    }
+
+    /**
+     * 64-bit hash of the labels and the line or value, used to recognize an entry without keeping it.
+     * Labels are combined independently of their iteration order.
+     */
+    public long hash() {
+        long labelsHash = 0;
+        if (labels != null) {
+            for (Map.Entry<String, String> label : labels.entrySet()) {
+                labelsHash += mix(hash(label.getKey()) * 31 + hash(label.getValue()));
+            }
+        }
+
+        return mix(labelsHash ^ hash(line != null ? line : value) * 0x9E3779B97F4A7C15L);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("timestamp", timestamp);
+
+        if (line != null) {
+            entry.put("line", line);
+        } else {
+            entry.put("value", value);
+        }
+
+        entry.put("labels", labels);
+        return entry;
+    }
+
+    /**
+     * FNV-1a over the UTF-16 code units of the string.
+     */
+    static long hash(String value) {
+        if (value == null) {
+            return 0;
+        }
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Murmur3 finalizer, spreads the bits of a combined hash.
+     */
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
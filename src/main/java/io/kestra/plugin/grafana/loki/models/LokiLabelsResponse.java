@@ -0,0 +1,25 @@
+package io.kestra.plugin.grafana.loki.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.Data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Response of the {@code labels} and {@code label/<name>/values} endpoints.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class LokiLabelsResponse {
+    private static final ObjectReader READER = LokiQueryResponse.MAPPER.readerFor(LokiLabelsResponse.class);
+
+    private String status;
+    private List<String> data;
+
+    public static LokiLabelsResponse read(InputStream inputStream) throws IOException {
+        return READER.readValue(inputStream);
+    }
+}
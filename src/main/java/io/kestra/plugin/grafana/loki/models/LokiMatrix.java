@@ -0,0 +1,288 @@
+package io.kestra.plugin.grafana.loki.models;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Samples of {@code matrix} and {@code vector} results held per series in primitive arrays: each label set is kept
+ * once with a {@code long[]} of nanosecond timestamps and a {@code double[]} of values, instead of one map with two
+ * strings per sample.
+ * <p>
+ * Samples of a series are expected in ascending time order, as Loki returns them. They are expanded to maps only when
+ * read through {@link #asMaps()}, with the timestamp and value formatted as Loki does.
+ */
+public final class LokiMatrix {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final List<Series> series = new ArrayList<>();
+    private final Map<Map<String, String>, Series> seriesByLabels = new HashMap<>();
+    private Series last;
+    private long size = 0;
+
+    @FunctionalInterface
+    public interface SampleConsumer {
+        void accept(Map<String, String> labels, long timestamp, double value) throws IOException;
+    }
+
+    private static final class Series {
+        private final Map<String, String> labels;
+        private long[] timestamps = new long[INITIAL_CAPACITY];
+        private double[] values = new double[INITIAL_CAPACITY];
+        private int size = 0;
+
+        Series(Map<String, String> labels) {
+            this.labels = labels;
+        }
+
+        void add(long timestamp, double value) {
+            if (size == timestamps.length) {
+                int capacity = size + (size >> 1);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+        }
+    }
+
+    /**
+     * Append a sample, the series is looked up by identity first as consecutive samples usually share it.
+     */
+    public void add(Map<String, String> labels, long timestamp, double value) {
+        if (last == null || last.labels != labels) {
+            last = seriesByLabels.computeIfAbsent(labels, key -> {
+                Series created = new Series(key);
+                series.add(created);
+                return created;
+            });
+        }
+
+        last.add(timestamp, value);
+        size++;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int seriesCount() {
+        return series.size();
+    }
+
+    public Map<String, String> labels(int series) {
+        return this.series.get(series).labels;
+    }
+
+    public int sampleCount(int series) {
+        return this.series.get(series).size;
+    }
+
+    public long timestamp(int series, int index) {
+        Series s = this.series.get(series);
+        return s.timestamps[Objects.checkIndex(index, s.size)];
+    }
+
+    public double value(int series, int index) {
+        Series s = this.series.get(series);
+        return s.values[Objects.checkIndex(index, s.size)];
+    }
+
+    /**
+     * Visit every sample series by series.
+     */
+    public void forEach(SampleConsumer consumer) throws IOException {
+        for (Series s : series) {
+            for (int i = 0; i < s.size; i++) {
+                consumer.accept(s.labels, s.timestamps[i], s.values[i]);
+            }
+        }
+    }
+
+    /**
+     * Visit every sample in time order across series, samples sharing a timestamp in series order.
+     */
+    public void forEachInTimeOrder(boolean ascending, SampleConsumer consumer) throws IOException {
+        int count = series.size();
+        int[] cursors = new int[count];
+        int[] heap = new int[count];
+        int heapSize = 0;
+
+        for (int i = 0; i < count; i++) {
+            Series s = series.get(i);
+            if (s.size > 0) {
+                cursors[i] = ascending ? 0 : s.size - 1;
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++, cursors, ascending);
+            }
+        }
+
+        while (heapSize > 0) {
+            int index = heap[0];
+            Series s = series.get(index);
+            int cursor = cursors[index];
+            consumer.accept(s.labels, s.timestamps[cursor], s.values[cursor]);
+
+            cursors[index] = ascending ? cursor + 1 : cursor - 1;
+            if (cursors[index] < 0 || cursors[index] >= s.size) {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(heap, heapSize, cursors, ascending);
+        }
+    }
+
+    public void forEachInTimeOrder(boolean ascending, LokiResponseParser.Sink sink) throws IOException {
+        forEachInTimeOrder(ascending, (labels, timestamp, value) -> LokiResponseParser.SampleSink.send(sink, labels, timestamp, value));
+    }
+
+    /**
+     * A read-only view building each sample map when it is read, series by series.
+     */
+    public List<Map<String, Object>> asMaps() {
+        int[] offsets = new int[series.size() + 1];
+        for (int i = 0; i < series.size(); i++) {
+            offsets[i + 1] = offsets[i] + series.get(i).size;
+        }
+
+        return new MapView(offsets);
+    }
+
+    public static LokiEntry entry(Map<String, String> labels, long timestamp, double value) {
+        return new LokiEntry(formatTimestamp(timestamp), labels, null, formatValue(value));
+    }
+
+    public static Map<String, Object> toMap(Map<String, String> labels, long timestamp, double value) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("timestamp", formatTimestamp(timestamp));
+        entry.put("value", formatValue(value));
+        entry.put("labels", labels);
+        return entry;
+    }
+
+    /**
+     * Format a timestamp as Loki does for samples: seconds since epoch with up to millisecond decimals.
+     */
+    public static String formatTimestamp(long timestamp) {
+        long seconds = Math.floorDiv(timestamp, NANOS_PER_SECOND);
+        long millis = Math.floorMod(timestamp, NANOS_PER_SECOND) / NANOS_PER_MILLI;
+
+        if (millis == 0) {
+            return Long.toString(seconds);
+        }
+
+        String decimals = String.format("%03d", millis);
+        int end = decimals.length();
+        while (decimals.charAt(end - 1) == '0') {
+            end--;
+        }
+
+        return seconds + "." + decimals.substring(0, end);
+    }
+
+    /**
+     * Format a value as Loki does: the shortest decimal representation without exponent, {@code NaN}, {@code +Inf}
+     * or {@code -Inf}.
+     */
+    public static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    public static double parseValue(String value) {
+        return switch (value) {
+            case "+Inf", "Inf" -> Double.POSITIVE_INFINITY;
+            case "-Inf" -> Double.NEGATIVE_INFINITY;
+            default -> Double.parseDouble(value);
+        };
+    }
+
+    private boolean before(int first, int second, int[] cursors, boolean ascending) {
+        long firstTimestamp = series.get(first).timestamps[cursors[first]];
+        long secondTimestamp = series.get(second).timestamps[cursors[second]];
+
+        if (firstTimestamp != secondTimestamp) {
+            return ascending ? firstTimestamp < secondTimestamp : firstTimestamp > secondTimestamp;
+        }
+        return first < second;
+    }
+
+    private void siftUp(int[] heap, int position, int[] cursors, boolean ascending) {
+        int item = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!before(item, heap[parent], cursors, ascending)) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = item;
+    }
+
+    private void siftDown(int[] heap, int heapSize, int[] cursors, boolean ascending) {
+        if (heapSize == 0) {
+            return;
+        }
+
+        int item = heap[0];
+        int position = 0;
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child], cursors, ascending)) {
+                child++;
+            }
+            if (!before(heap[child], item, cursors, ascending)) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = item;
+    }
+
+    private final class MapView extends AbstractList<Map<String, Object>> implements RandomAccess {
+        private final int[] offsets;
+
+        MapView(int[] offsets) {
+            this.offsets = offsets;
+        }
+
+        @Override
+        public Map<String, Object> get(int index) {
+            Objects.checkIndex(index, size());
+
+            // series are never empty, so offsets are strictly increasing
+            int position = Arrays.binarySearch(offsets, index);
+            int seriesIndex = position >= 0 ? position : -position - 2;
+
+            Series s = series.get(seriesIndex);
+            int sample = index - offsets[seriesIndex];
+            return toMap(s.labels, s.timestamps[sample], s.values[sample]);
+        }
+
+        @Override
+        public int size() {
+            return offsets[offsets.length - 1];
+        }
+    }
+}
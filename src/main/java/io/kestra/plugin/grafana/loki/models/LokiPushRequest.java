@@ -0,0 +1,201 @@
+package io.kestra.plugin.grafana.loki.models;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Entries grouped by stream and encoded as a Loki {@code logproto.PushRequest} protobuf message:
+ * <pre>
+ * message PushRequest { repeated StreamAdapter streams = 1; }
+ * message StreamAdapter { string labels = 1; repeated EntryAdapter entries = 2; }
+ * message EntryAdapter { google.protobuf.Timestamp timestamp = 1; string line = 2; }
+ * message Timestamp { int64 seconds = 1; int32 nanos = 2; }
+ * </pre>
+ * The message is small enough to be written by hand, so no protobuf runtime or generated code is needed.
+ */
+public final class LokiPushRequest {
+    private static final int LENGTH_DELIMITED = 2;
+    private static final int VARINT = 0;
+
+    private final Map<String, Stream> streams = new LinkedHashMap<>();
+    private long estimatedSize = 0;
+    private int entryCount = 0;
+
+    private static final class Stream {
+        private final byte[] labels;
+        private final List<Long> timestamps = new ArrayList<>();
+        private final List<byte[]> lines = new ArrayList<>();
+
+        Stream(String labels) {
+            this.labels = labels.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @param labels the stream labels in LogQL stream selector form, see {@link #labels(Map)}
+     * @param timestamp the entry timestamp in nanoseconds since epoch
+     */
+    public void add(String labels, long timestamp, String line) {
+        Stream stream = streams.computeIfAbsent(labels, key -> {
+            Stream created = new Stream(key);
+            estimatedSize += created.labels.length + 8;
+            return created;
+        });
+
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        stream.timestamps.add(timestamp);
+        stream.lines.add(bytes);
+
+        estimatedSize += bytes.length + 20;
+        entryCount++;
+    }
+
+    public boolean isEmpty() {
+        return entryCount == 0;
+    }
+
+    public int entryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Approximation of the encoded size, used to bound batches before encoding them.
+     */
+    public long estimatedSize() {
+        return estimatedSize;
+    }
+
+    public byte[] encode() {
+        int size = 0;
+        for (Stream stream : streams.values()) {
+            size += lengthDelimitedSize(1, streamSize(stream));
+        }
+
+        byte[] buffer = new byte[size];
+        int position = 0;
+
+        for (Stream stream : streams.values()) {
+            position = writeTag(buffer, position, 1, LENGTH_DELIMITED);
+            position = writeVarint(buffer, position, streamSize(stream));
+            position = writeBytes(buffer, position, 1, stream.labels);
+
+            for (int i = 0; i < stream.lines.size(); i++) {
+                long timestamp = stream.timestamps.get(i);
+                byte[] line = stream.lines.get(i);
+
+                position = writeTag(buffer, position, 2, LENGTH_DELIMITED);
+                position = writeVarint(buffer, position, entrySize(timestamp, line));
+
+                position = writeTag(buffer, position, 1, LENGTH_DELIMITED);
+                position = writeVarint(buffer, position, timestampSize(timestamp));
+                position = writeTimestamp(buffer, position, timestamp);
+
+                position = writeBytes(buffer, position, 2, line);
+            }
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Format labels as a LogQL stream selector, e.g. {@code {app="api", env="prod"}}, sorted by name so that equal
+     * label sets always map to the same stream.
+     */
+    public static String labels(Map<String, String> labels) {
+        StringBuilder builder = new StringBuilder("{");
+
+        labels.entrySet().stream()
+            .sorted(Map.Entry.comparingByKey())
+            .forEach(label -> {
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(label.getKey()).append("=\"");
+
+                String value = label.getValue();
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    switch (c) {
+                        case '\\' -> builder.append("\\\\");
+                        case '"' -> builder.append("\\\"");
+                        case '\n' -> builder.append("\\n");
+                        default -> builder.append(c);
+                    }
+                }
+
+                builder.append('"');
+            });
+
+        return builder.append('}').toString();
+    }
+
+    private static int streamSize(Stream stream) {
+        int size = lengthDelimitedSize(1, stream.labels.length);
+        for (int i = 0; i < stream.lines.size(); i++) {
+            size += lengthDelimitedSize(2, entrySize(stream.timestamps.get(i), stream.lines.get(i)));
+        }
+        return size;
+    }
+
+    private static int entrySize(long timestamp, byte[] line) {
+        return lengthDelimitedSize(1, timestampSize(timestamp)) + lengthDelimitedSize(2, line.length);
+    }
+
+    private static int timestampSize(long timestamp) {
+        long seconds = Math.floorDiv(timestamp, 1_000_000_000L);
+        long nanos = Math.floorMod(timestamp, 1_000_000_000L);
+
+        return (seconds != 0 ? 1 + varintSize(seconds) : 0) + (nanos != 0 ? 1 + varintSize(nanos) : 0);
+    }
+
+    private static int writeTimestamp(byte[] buffer, int position, long timestamp) {
+        long seconds = Math.floorDiv(timestamp, 1_000_000_000L);
+        long nanos = Math.floorMod(timestamp, 1_000_000_000L);
+
+        if (seconds != 0) {
+            position = writeTag(buffer, position, 1, VARINT);
+            position = writeVarint(buffer, position, seconds);
+        }
+        if (nanos != 0) {
+            position = writeTag(buffer, position, 2, VARINT);
+            position = writeVarint(buffer, position, nanos);
+        }
+        return position;
+    }
+
+    private static int lengthDelimitedSize(int field, int length) {
+        return varintSize((long) field << 3) + varintSize(length) + length;
+    }
+
+    private static int writeBytes(byte[] buffer, int position, int field, byte[] bytes) {
+        position = writeTag(buffer, position, field, LENGTH_DELIMITED);
+        position = writeVarint(buffer, position, bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    private static int writeTag(byte[] buffer, int position, int field, int wireType) {
+        return writeVarint(buffer, position, (long) field << 3 | wireType);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarint(byte[] buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+}
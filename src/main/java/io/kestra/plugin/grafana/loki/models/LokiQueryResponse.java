@@ -2,8 +2,12 @@ package io.kestra.plugin.grafana.loki.models;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.Data;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -12,9 +16,21 @@ import java.util.Map;
 @Data
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class LokiQueryResponse {
+    static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Shared by every caller so that deserializers are only built once; thread-safe as readers are immutable.
+     * Tasks and triggers read responses with {@link LokiResponseParser}, this is for callers needing the whole tree.
+     */
+    private static final ObjectReader READER = MAPPER.readerFor(LokiQueryResponse.class);
+
     private String status;
     private Data data;
 
+    public static LokiQueryResponse read(InputStream inputStream) throws IOException {
+        return READER.readValue(inputStream);
+    }
+
     @lombok.Data
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Data {
@@ -0,0 +1,357 @@
+package io.kestra.plugin.grafana.loki.models;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Token-streaming reader for Loki {@code query} and {@code query_range} responses, and {@code tail} messages.
+ * <p>
+ * Entries are handed to a {@link Sink} as soon as they are read, so the response body is never held in memory
+ * as a whole: peak memory is bounded by a single entry plus whatever the sink decides to keep.
+ */
+public final class LokiResponseParser {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private LokiResponseParser() {
+    }
+
+    @FunctionalInterface
+    public interface Sink {
+        void accept(LokiEntry entry) throws IOException;
+    }
+
+    /**
+     * A sink receiving the samples of {@code matrix} and {@code vector} results as primitives, without building their
+     * timestamp and value strings; log lines and {@code scalar} results are still sent to {@link #accept(LokiEntry)}.
+     */
+    public interface SampleSink extends Sink {
+        /**
+         * @param timestamp the sample timestamp in nanoseconds since epoch, Loki sends them with a millisecond precision
+         */
+        void acceptSample(Map<String, String> labels, long timestamp, double value) throws IOException;
+
+        /**
+         * Send a sample to any sink, as an entry if it does not accept samples.
+         */
+        static void send(Sink sink, Map<String, String> labels, long timestamp, double value) throws IOException {
+            if (sink instanceof SampleSink sampleSink) {
+                sampleSink.acceptSample(labels, timestamp, value);
+            } else {
+                sink.accept(LokiMatrix.entry(labels, timestamp, value));
+            }
+        }
+    }
+
+    /**
+     * A sink receiving the label sets of a {@code series} response.
+     */
+    @FunctionalInterface
+    public interface SeriesSink {
+        void accept(Map<String, String> labels) throws IOException;
+    }
+
+    public record Result(String status, String resultType, long count) {
+    }
+
+    /**
+     * @param dropped the number of entries Loki reported as dropped because the client could not keep up
+     */
+    public record TailResult(long count, long dropped) {
+    }
+
+    public static Result parse(InputStream inputStream, Sink sink) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+            return parse(parser, sink);
+        }
+    }
+
+    public static Result parse(JsonParser parser, Sink sink) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Invalid Loki response, expected a JSON object but got " + parser.currentToken());
+        }
+
+        String status = null;
+        String resultType = null;
+        long count = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+
+            if ("status".equals(field)) {
+                status = parser.getValueAsString();
+            } else if ("data".equals(field) && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String dataField = parser.currentName();
+                    JsonToken dataToken = parser.nextToken();
+
+                    if ("resultType".equals(dataField)) {
+                        resultType = parser.getValueAsString();
+                    } else if ("result".equals(dataField) && dataToken == JsonToken.START_ARRAY) {
+                        count += "scalar".equals(resultType) ? readScalar(parser, sink) : readResults(parser, sink);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        return new Result(status, resultType, count);
+    }
+
+    /**
+     * Parse a response of {@code /loki/api/v1/series}: {@code {"status": ..., "data": [{"label": "value", ...}, ...]}}.
+     *
+     * @return the number of label sets read
+     */
+    public static long parseSeries(InputStream inputStream, SeriesSink sink) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Invalid Loki response, expected a JSON object but got " + parser.currentToken());
+            }
+
+            long count = 0;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+
+                if ("data".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        if (parser.currentToken() == JsonToken.START_OBJECT) {
+                            sink.accept(readLabels(parser));
+                            count++;
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            return count;
+        }
+    }
+
+    /**
+     * Parse a message of the {@code /loki/api/v1/tail} WebSocket: {@code {"streams": [...], "dropped_entries": [...]}}.
+     */
+    public static TailResult parseTail(String message, Sink sink) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Invalid Loki tail message, expected a JSON object but got " + parser.currentToken());
+            }
+
+            long count = 0;
+            long dropped = 0;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+
+                if ("streams".equals(field) && token == JsonToken.START_ARRAY) {
+                    count += readResults(parser, sink);
+                } else if ("dropped_entries".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        parser.skipChildren();
+                        dropped++;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            return new TailResult(count, dropped);
+        }
+    }
+
+    private static long readResults(JsonParser parser, Sink sink) throws IOException {
+        long count = 0;
+
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                count += readResult(parser, sink);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        return count;
+    }
+
+    private static long readResult(JsonParser parser, Sink sink) throws IOException {
+        Map<String, String> labels = null;
+        boolean stream = false;
+        // only used when Loki sends the values before the labels, which it does not do in practice
+        List<String[]> pending = null;
+        long count = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+
+            switch (field) {
+                case "stream" -> {
+                    labels = readLabels(parser);
+                    stream = true;
+                }
+                case "metric" -> labels = readLabels(parser);
+                case "values" -> {
+                    if (token != JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                        continue;
+                    }
+
+                    while (parser.nextToken() == JsonToken.START_ARRAY) {
+                        if (labels != null && !stream && sink instanceof SampleSink sampleSink) {
+                            readSample(parser, labels, sampleSink);
+                            count++;
+                            continue;
+                        }
+
+                        String[] pair = readPair(parser);
+
+                        if (labels == null) {
+                            pending = pending == null ? new ArrayList<>() : pending;
+                            pending.add(pair);
+                        } else {
+                            sink.accept(entry(labels, stream, pair));
+                            count++;
+                        }
+                    }
+                }
+                case "value" -> {
+                    if (token != JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                        continue;
+                    }
+
+                    if (labels != null && !stream && sink instanceof SampleSink sampleSink) {
+                        readSample(parser, labels, sampleSink);
+                        count++;
+                        continue;
+                    }
+
+                    String[] pair = readPair(parser);
+                    if (labels == null) {
+                        pending = pending == null ? new ArrayList<>() : pending;
+                        pending.add(pair);
+                    } else {
+                        sink.accept(entry(labels, stream, pair));
+                        count++;
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        if (pending != null) {
+            for (String[] pair : pending) {
+                sink.accept(entry(labels, stream, pair));
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static long readScalar(JsonParser parser, Sink sink) throws IOException {
+        String[] pair = new String[2];
+        int index = 0;
+
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (index < 2 && parser.currentToken().isScalarValue()) {
+                pair[index] = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+            index++;
+        }
+
+        if (pair[0] == null) {
+            return 0;
+        }
+
+        sink.accept(new LokiEntry(pair[0], Map.of(), null, pair[1]));
+        return 1;
+    }
+
+    private static Map<String, String> readLabels(JsonParser parser) throws IOException {
+        Map<String, String> labels = new LinkedHashMap<>();
+
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return labels;
+        }
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            labels.put(name, parser.getValueAsString());
+        }
+
+        return labels;
+    }
+
+    /**
+     * Reads a {@code [timestamp, value]} pair, ignoring any extra element such as Loki 3 structured metadata.
+     */
+    private static String[] readPair(JsonParser parser) throws IOException {
+        String[] pair = new String[2];
+        int index = 0;
+
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (index < 2 && parser.currentToken().isScalarValue()) {
+                pair[index] = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+            index++;
+        }
+
+        return pair;
+    }
+
+    /**
+     * Reads a {@code [timestamp, "value"]} sample where the timestamp is a number of seconds.
+     */
+    private static void readSample(JsonParser parser, Map<String, String> labels, SampleSink sink) throws IOException {
+        long timestamp = 0;
+        double value = Double.NaN;
+        int index = 0;
+
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            JsonToken token = parser.currentToken();
+
+            if (index == 0 && token == JsonToken.VALUE_NUMBER_INT) {
+                timestamp = parser.getLongValue() * 1_000_000_000L;
+            } else if (index == 0 && token.isScalarValue()) {
+                timestamp = Math.round(Double.parseDouble(parser.getText()) * 1000) * 1_000_000L;
+            } else if (index == 1 && token.isScalarValue()) {
+                value = LokiMatrix.parseValue(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+            index++;
+        }
+
+        sink.acceptSample(labels, timestamp, value);
+    }
+
+    private static LokiEntry entry(Map<String, String> labels, boolean stream, String[] pair) {
+        return stream ?
+            new LokiEntry(pair[0], labels, pair[1], null) :
+            new LokiEntry(pair[0], labels, null, pair[1]);
+    }
+}
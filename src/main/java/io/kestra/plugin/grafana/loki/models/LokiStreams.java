@@ -0,0 +1,205 @@
+package io.kestra.plugin.grafana.loki.models;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Log lines held in columns instead of one map per line: each label set is kept once, and the lines are a
+ * {@code long[]} of nanosecond timestamps, an {@code int[]} of label set indexes and their UTF-8 bytes appended to a
+ * single {@code byte[]}.
+ * <p>
+ * This costs about 16 bytes per line on top of its text, where a map with a timestamp and a line string costs a few
+ * hundred. Lines are expanded to maps only when they are read through {@link #asMaps()}.
+ */
+public final class LokiStreams {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final List<Map<String, String>> labels = new ArrayList<>();
+    private final Map<Map<String, String>, Integer> labelIndexes = new HashMap<>();
+    private Map<String, String> lastLabels;
+    private int lastLabelIndex;
+
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private int[] streams = new int[INITIAL_CAPACITY];
+    private int[] lineEnds = new int[INITIAL_CAPACITY];
+    private byte[] lines = new byte[INITIAL_CAPACITY * 64];
+    private int size = 0;
+
+    /**
+     * Append a log line, the label set is looked up by identity first as consecutive lines usually share it.
+     */
+    public void add(long timestamp, Map<String, String> labels, String line) {
+        if (size == timestamps.length) {
+            int capacity = size + (size >> 1);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            streams = Arrays.copyOf(streams, capacity);
+            lineEnds = Arrays.copyOf(lineEnds, capacity);
+        }
+
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        int start = lineStart(size);
+        if (start + bytes.length > lines.length) {
+            lines = Arrays.copyOf(lines, Math.max(start + bytes.length, lines.length + (lines.length >> 1)));
+        }
+        System.arraycopy(bytes, 0, lines, start, bytes.length);
+
+        timestamps[size] = timestamp;
+        streams[size] = labelIndex(labels);
+        lineEnds[size] = start + bytes.length;
+        size++;
+    }
+
+    public void add(LokiEntry entry) {
+        add(Long.parseLong(entry.timestamp()), entry.labels(), entry.line());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int streamCount() {
+        return labels.size();
+    }
+
+    public long timestamp(int index) {
+        return timestamps[Objects.checkIndex(index, size)];
+    }
+
+    public Map<String, String> labels(int index) {
+        return labels.get(streams[Objects.checkIndex(index, size)]);
+    }
+
+    public String line(int index) {
+        int start = lineStart(Objects.checkIndex(index, size));
+        return new String(lines, start, lineEnds[index] - start, StandardCharsets.UTF_8);
+    }
+
+    public LokiEntry entry(int index) {
+        return new LokiEntry(String.valueOf(timestamp(index)), labels(index), line(index), null);
+    }
+
+    /**
+     * The line as the map written to outputs and internal storage, see {@link LokiEntry#toMap()}.
+     */
+    public Map<String, Object> toMap(int index) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("timestamp", String.valueOf(timestamp(index)));
+        entry.put("line", line(index));
+        entry.put("labels", labels(index));
+        return entry;
+    }
+
+    /**
+     * A read-only view building each map when it is read.
+     */
+    public List<Map<String, Object>> asMaps() {
+        return new MapView();
+    }
+
+    public void forEach(LokiResponseParser.Sink sink) throws java.io.IOException {
+        for (int i = 0; i < size; i++) {
+            sink.accept(entry(i));
+        }
+    }
+
+    /**
+     * Stable sort by timestamp, ascending or descending.
+     */
+    public void sort(boolean ascending) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        mergeSort(order, new int[size], 0, size, ascending);
+
+        long[] sortedTimestamps = new long[Math.max(INITIAL_CAPACITY, size)];
+        int[] sortedStreams = new int[sortedTimestamps.length];
+        int[] sortedLineEnds = new int[sortedTimestamps.length];
+        byte[] sortedLines = new byte[Math.max(lines.length, 1)];
+
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            int from = order[i];
+            int start = lineStart(from);
+            int length = lineEnds[from] - start;
+
+            System.arraycopy(lines, start, sortedLines, position, length);
+            position += length;
+
+            sortedTimestamps[i] = timestamps[from];
+            sortedStreams[i] = streams[from];
+            sortedLineEnds[i] = position;
+        }
+
+        timestamps = sortedTimestamps;
+        streams = sortedStreams;
+        lineEnds = sortedLineEnds;
+        lines = sortedLines;
+    }
+
+    private void mergeSort(int[] order, int[] buffer, int from, int to, boolean ascending) {
+        if (to - from < 2) {
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        mergeSort(order, buffer, from, middle, ascending);
+        mergeSort(order, buffer, middle, to, ascending);
+
+        if (inOrder(order[middle - 1], order[middle], ascending)) {
+            return;
+        }
+
+        System.arraycopy(order, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && inOrder(buffer[left], buffer[right], ascending))) {
+                order[i] = buffer[left++];
+            } else {
+                order[i] = buffer[right++];
+            }
+        }
+    }
+
+    private boolean inOrder(int first, int second, boolean ascending) {
+        return ascending ? timestamps[first] <= timestamps[second] : timestamps[first] >= timestamps[second];
+    }
+
+    private int lineStart(int index) {
+        return index == 0 ? 0 : lineEnds[index - 1];
+    }
+
+    private int labelIndex(Map<String, String> labels) {
+        if (labels != lastLabels) {
+            Integer index = labelIndexes.get(labels);
+            if (index == null) {
+                index = this.labels.size();
+                this.labels.add(labels);
+                labelIndexes.put(labels, index);
+            }
+
+            lastLabels = labels;
+            lastLabelIndex = index;
+        }
+
+        return lastLabelIndex;
+    }
+
+    private final class MapView extends AbstractList<Map<String, Object>> implements RandomAccess {
+        @Override
+        public Map<String, Object> get(int index) {
+            return toMap(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
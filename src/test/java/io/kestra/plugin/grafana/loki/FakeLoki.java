@@ -0,0 +1,851 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.airlift.compress.snappy.SnappyDecompressor;
+import io.airlift.compress.zstd.ZstdOutputStream;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An in-process stand-in for the Loki HTTP API, serving {@code query}, {@code query_range}, {@code tail},
+ * {@code push}, {@code labels}, {@code label/<name>/values} and {@code series}.
+ * <p>
+ * Log entries are not stored but synthesized from their position: stream {@code s} of {@link Builder#streams} has an
+ * entry every {@code 1s / entriesPerSecond}, with a line derived from the stream and the entry index, so any time
+ * range can be queried at any volume and two queries over the same range always return the same entries. Stream
+ * selectors are honoured for {@code =}, {@code !=}, {@code =~} and {@code !~} matchers. Queries that do not start with
+ * a selector are treated as metric queries and answered with a {@code matrix} or a {@code vector}.
+ * <p>
+ * Latency is added to every response and a share of requests can be failed with a configurable status, to exercise the
+ * client under a slow or overloaded Loki. It is a minimal HTTP/1.1 server on virtual threads so that the tail
+ * WebSocket can be served on the same port as the other endpoints.
+ */
+public final class FakeLoki implements AutoCloseable {
+    private static final Pattern MATCHER = Pattern.compile("([a-zA-Z_][a-zA-Z0-9_]*)\\s*(=~|!~|!=|=)\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final String[] APPS = {"api", "web", "worker", "scheduler", "gateway"};
+    private static final String[] LEVELS = {"info", "info", "info", "warn", "error"};
+    private static final String[] WORDS = {"GET", "POST", "request", "completed", "user", "order", "cache", "miss", "hit", "timeout", "retry", "db", "query", "ok"};
+
+    private final int streams;
+    private final long interval;
+    private final int lineLength;
+    private final Duration latency;
+    private final double errorRate;
+    private final int errorStatus;
+    private final boolean compress;
+    private final Random random;
+    private final List<Map<String, String>> labels;
+    private final ServerSocket server;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong entriesSent = new AtomicLong();
+    private final AtomicLong pushRequests = new AtomicLong();
+    private final AtomicLong pushedEntries = new AtomicLong();
+    private final AtomicLong pushedBytes = new AtomicLong();
+    private volatile Request lastRequest;
+    private volatile String lastContentEncoding;
+
+    private FakeLoki(Builder builder) throws IOException {
+        this.streams = builder.streams;
+        this.interval = Math.max(1, NANOS_PER_SECOND / builder.entriesPerSecond);
+        this.lineLength = builder.lineLength;
+        this.latency = builder.latency;
+        this.errorRate = builder.errorRate;
+        this.errorStatus = builder.errorStatus;
+        this.compress = builder.compress;
+        this.random = new Random(builder.seed);
+
+        this.labels = new ArrayList<>(streams);
+        for (int s = 0; s < streams; s++) {
+            Map<String, String> streamLabels = new TreeMap<>();
+            streamLabels.put("app", APPS[s % APPS.length]);
+            streamLabels.put("env", s % 10 == 0 ? "staging" : "production");
+            streamLabels.put("level", LEVELS[s / APPS.length % LEVELS.length]);
+            streamLabels.put("pod", APPS[s % APPS.length] + "-" + s);
+            labels.add(streamLabels);
+        }
+
+        this.server = new ServerSocket(0, 512, InetAddress.getLoopbackAddress());
+        Thread.ofPlatform().daemon().name("fake-loki-accept").start(this::accept);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getLocalPort();
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long errors() {
+        return errors.get();
+    }
+
+    public long bytesSent() {
+        return bytesSent.get();
+    }
+
+    public long entriesSent() {
+        return entriesSent.get();
+    }
+
+    public long pushRequests() {
+        return pushRequests.get();
+    }
+
+    public long pushedEntries() {
+        return pushedEntries.get();
+    }
+
+    public long pushedBytes() {
+        return pushedBytes.get();
+    }
+
+    /**
+     * The {@code Content-Encoding} of the latest response, {@code null} if it was not compressed.
+     */
+    public String lastContentEncoding() {
+        return lastContentEncoding;
+    }
+
+    /**
+     * The value of a query parameter of the latest request.
+     */
+    public String lastParam(String name) {
+        Request request = lastRequest;
+        return request == null ? null : request.param(name);
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    public static final class Builder {
+        private int streams = 10;
+        private int entriesPerSecond = 10;
+        private int lineLength = 120;
+        private Duration latency = Duration.ZERO;
+        private double errorRate = 0;
+        private int errorStatus = 503;
+        private boolean compress = true;
+        private long seed = 42;
+
+        /**
+         * Number of streams, i.e. label sets.
+         */
+        public Builder streams(int streams) {
+            this.streams = streams;
+            return this;
+        }
+
+        /**
+         * Entries per second in each stream.
+         */
+        public Builder entriesPerSecond(int entriesPerSecond) {
+            this.entriesPerSecond = entriesPerSecond;
+            return this;
+        }
+
+        /**
+         * Approximate length of each log line.
+         */
+        public Builder lineLength(int lineLength) {
+            this.lineLength = lineLength;
+            return this;
+        }
+
+        /**
+         * Delay added before every response.
+         */
+        public Builder latency(Duration latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * Share of requests, between 0 and 1, answered with {@link #errorStatus(int)}.
+         */
+        public Builder errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        public Builder errorStatus(int errorStatus) {
+            this.errorStatus = errorStatus;
+            return this;
+        }
+
+        /**
+         * Compress responses with zstd or gzip when the client accepts it, as Loki does.
+         */
+        public Builder compress(boolean compress) {
+            this.compress = compress;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public FakeLoki start() throws IOException {
+            return new FakeLoki(this);
+        }
+    }
+
+    private record Request(String method, String path, Map<String, List<String>> params, Map<String, String> headers, byte[] body) {
+        String param(String name) {
+            List<String> values = params.get(name);
+            return values == null || values.isEmpty() ? null : values.getFirst();
+        }
+    }
+
+    private record Response(int status, String contentType, byte[] body, Map<String, String> headers) {
+        static Response json(String body) {
+            return new Response(200, "application/json", body.getBytes(StandardCharsets.UTF_8), Map.of());
+        }
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                Thread.ofVirtual().name("fake-loki-connection").start(() -> serve(socket));
+            } catch (IOException e) {
+                // closed
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+
+            Request request;
+            while ((request = readRequest(input)) != null) {
+                requests.incrementAndGet();
+                lastRequest = request;
+
+                if (!latency.isZero()) {
+                    Thread.sleep(latency);
+                }
+
+                if (errorRate > 0 && nextDouble() < errorRate) {
+                    errors.incrementAndGet();
+                    write(output, new Response(errorStatus, "text/plain", "too many outstanding requests".getBytes(StandardCharsets.UTF_8), Map.of("Retry-After", "1")), null);
+                    continue;
+                }
+
+                if (request.path().equals("/loki/api/v1/tail")) {
+                    tail(request, output);
+                    return;
+                }
+
+                Response response;
+                try {
+                    response = route(request);
+                } catch (IllegalArgumentException e) {
+                    response = new Response(400, "text/plain", String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8), Map.of());
+                }
+
+                String acceptEncoding = request.headers().getOrDefault("accept-encoding", "");
+                write(output, response, !compress ? null : acceptEncoding.contains("zstd") ? "zstd" : acceptEncoding.contains("gzip") ? "gzip" : null);
+
+                if ("close".equalsIgnoreCase(request.headers().get("connection"))) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // client went away
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    private Response route(Request request) {
+        String path = request.path();
+
+        return switch (path) {
+            case "/loki/api/v1/query_range" -> queryRange(request);
+            case "/loki/api/v1/query" -> query(request);
+            case "/loki/api/v1/push" -> push(request);
+            case "/loki/api/v1/labels" -> labelNames();
+            case "/loki/api/v1/series" -> series(request);
+            default -> {
+                if (path.startsWith("/loki/api/v1/label/") && path.endsWith("/values")) {
+                    yield labelValues(path.substring("/loki/api/v1/label/".length(), path.length() - "/values".length()), request);
+                }
+                yield new Response(404, "text/plain", ("404 page not found: " + path).getBytes(StandardCharsets.UTF_8), Map.of());
+            }
+        };
+    }
+
+    private Response queryRange(Request request) {
+        String query = Objects.requireNonNull(request.param("query"), "query is required");
+        long[] range = range(request);
+        int[] selected = select(query);
+
+        if (isMetric(query)) {
+            String rStep = request.param("step");
+            long step = rStep != null ? LokiTime.parseDuration(rStep) : Math.max(NANOS_PER_SECOND, (range[1] - range[0]) / 250);
+            return Response.json(matrix(selected, range[0], range[1], step));
+        }
+
+        int limit = Optional.ofNullable(request.param("limit")).map(Integer::parseInt).orElse(100);
+        boolean forward = "forward".equalsIgnoreCase(request.param("direction"));
+        return Response.json(streams(selected, range[0], range[1], limit, forward));
+    }
+
+    private Response query(Request request) {
+        String query = Objects.requireNonNull(request.param("query"), "query is required");
+        long time = Optional.ofNullable(request.param("time")).map(LokiTime::parseTimestamp).orElseGet(LokiTime::now);
+        int[] selected = select(query);
+
+        if (isMetric(query)) {
+            return Response.json(vector(selected, time));
+        }
+
+        int limit = Optional.ofNullable(request.param("limit")).map(Integer::parseInt).orElse(100);
+        boolean forward = "forward".equalsIgnoreCase(request.param("direction"));
+        return Response.json(streams(selected, time - 3600 * NANOS_PER_SECOND, time, limit, forward));
+    }
+
+    private Response labelNames() {
+        return Response.json("{\"status\":\"success\",\"data\":[\"app\",\"env\",\"level\",\"pod\"]}");
+    }
+
+    private Response labelValues(String name, Request request) {
+        int[] selected = request.param("query") != null ? select(request.param("query")) : allStreams();
+
+        StringBuilder builder = new StringBuilder("{\"status\":\"success\",\"data\":[");
+        boolean first = true;
+        for (String value : new TreeSet<>(Arrays.stream(selected).mapToObj(s -> labels.get(s).get(name)).filter(Objects::nonNull).toList())) {
+            if (!first) {
+                builder.append(',');
+            }
+            builder.append('"').append(value).append('"');
+            first = false;
+        }
+
+        return Response.json(builder.append("]}").toString());
+    }
+
+    private Response series(Request request) {
+        List<String> matches = request.params().getOrDefault("match[]", List.of());
+        BitSet selected = new BitSet(streams);
+        if (matches.isEmpty()) {
+            selected.set(0, streams);
+        }
+        for (String match : matches) {
+            for (int s : select(match)) {
+                selected.set(s);
+            }
+        }
+
+        StringBuilder builder = new StringBuilder("{\"status\":\"success\",\"data\":[");
+        boolean first = true;
+        for (int s = selected.nextSetBit(0); s >= 0; s = selected.nextSetBit(s + 1)) {
+            if (!first) {
+                builder.append(',');
+            }
+            appendLabels(builder, labels.get(s));
+            first = false;
+        }
+
+        return Response.json(builder.append("]}").toString());
+    }
+
+    /**
+     * Decode a snappy compressed {@code logproto.PushRequest} and count its entries.
+     */
+    private Response push(Request request) {
+        if (!request.method().equals("POST")) {
+            return new Response(405, "text/plain", new byte[0], Map.of());
+        }
+
+        SnappyDecompressor decompressor = new SnappyDecompressor();
+        byte[] body = request.body();
+        byte[] decoded = new byte[SnappyDecompressor.getUncompressedLength(body, 0)];
+        decompressor.decompress(body, 0, body.length, decoded, 0, decoded.length);
+
+        long count = 0;
+        ProtoReader pushRequest = new ProtoReader(decoded, 0, decoded.length);
+        while (pushRequest.next()) {
+            if (pushRequest.field == 1) {
+                ProtoReader stream = pushRequest.message();
+                while (stream.next()) {
+                    if (stream.field == 2) {
+                        count++;
+                    }
+                    stream.skip();
+                }
+            } else {
+                pushRequest.skip();
+            }
+        }
+
+        pushRequests.incrementAndGet();
+        pushedEntries.addAndGet(count);
+        pushedBytes.addAndGet(body.length);
+
+        return new Response(204, "text/plain", new byte[0], Map.of());
+    }
+
+    /**
+     * Upgrade to a WebSocket and stream new entries every 100 ms until the client goes away, after replaying the last
+     * {@code limit} entries as Loki does.
+     */
+    private void tail(Request request, OutputStream output) throws IOException, InterruptedException {
+        String key = request.headers().get("sec-websocket-key");
+        if (key == null) {
+            write(output, new Response(400, "text/plain", "websocket upgrade required".getBytes(StandardCharsets.UTF_8), Map.of()), null);
+            return;
+        }
+
+        String accept;
+        try {
+            accept = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1").digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII)));
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+
+        output.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        output.flush();
+
+        int[] selected = select(Objects.requireNonNull(request.param("query"), "query is required"));
+        int limit = Optional.ofNullable(request.param("limit")).map(Integer::parseInt).orElse(100);
+        long delay = Optional.ofNullable(request.param("delay_for")).map(Long::parseLong).orElse(0L) * NANOS_PER_SECOND;
+        long from = Optional.ofNullable(request.param("start")).map(LokiTime::parseTimestamp).orElseGet(() -> LokiTime.now() - 3600 * NANOS_PER_SECOND);
+
+        long to = LokiTime.now() - delay;
+        writeFrame(output, tailMessage(streams(selected, from, to, limit, false)));
+        from = to;
+
+        while (!server.isClosed()) {
+            Thread.sleep(100);
+            to = LokiTime.now() - delay;
+            if (to > from) {
+                writeFrame(output, tailMessage(streams(selected, from, to, Integer.MAX_VALUE, true)));
+                from = to;
+            }
+        }
+    }
+
+    private static String tailMessage(String streamsResponse) {
+        int start = streamsResponse.indexOf("\"result\":") + "\"result\":".length();
+        return "{\"streams\":" + streamsResponse.substring(start, streamsResponse.length() - 2) + "}";
+    }
+
+    private static void writeFrame(OutputStream output, String text) throws IOException {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+
+        output.write(0x81);
+        if (payload.length < 126) {
+            output.write(payload.length);
+        } else if (payload.length <= 0xFFFF) {
+            output.write(126);
+            output.write(payload.length >>> 8);
+            output.write(payload.length & 0xFF);
+        } else {
+            output.write(127);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                output.write((int) ((long) payload.length >>> shift) & 0xFF);
+            }
+        }
+        output.write(payload);
+        output.flush();
+    }
+
+    private long[] range(Request request) {
+        long end = Optional.ofNullable(request.param("end")).map(LokiTime::parseTimestamp).orElseGet(LokiTime::now);
+        long start = Optional.ofNullable(request.param("start")).map(LokiTime::parseTimestamp)
+            .orElseGet(() -> end - Optional.ofNullable(request.param("since")).map(LokiTime::parseDuration).orElse(3600 * NANOS_PER_SECOND));
+
+        if (start > end) {
+            throw new IllegalArgumentException("end timestamp must not be before or equal to start time");
+        }
+
+        return new long[]{start, end};
+    }
+
+    private static boolean isMetric(String query) {
+        return !query.stripLeading().startsWith("{");
+    }
+
+    private int[] allStreams() {
+        int[] all = new int[streams];
+        for (int s = 0; s < streams; s++) {
+            all[s] = s;
+        }
+        return all;
+    }
+
+    /**
+     * Streams matching the first stream selector of the query.
+     */
+    private int[] select(String query) {
+        int open = query.indexOf('{');
+        int close = open < 0 ? -1 : query.indexOf('}', open);
+        if (open < 0 || close < 0) {
+            return allStreams();
+        }
+
+        List<String[]> matchers = new ArrayList<>();
+        Matcher matcher = MATCHER.matcher(query.substring(open + 1, close));
+        while (matcher.find()) {
+            matchers.add(new String[]{matcher.group(1), matcher.group(2), matcher.group(3).replace("\\\"", "\"").replace("\\\\", "\\")});
+        }
+
+        return Arrays.stream(allStreams())
+            .filter(s -> matchers.stream().allMatch(m -> {
+                String value = labels.get(s).getOrDefault(m[0], "");
+                return switch (m[1]) {
+                    case "=" -> value.equals(m[2]);
+                    case "!=" -> !value.equals(m[2]);
+                    case "=~" -> value.matches(m[2]);
+                    default -> !value.matches(m[2]);
+                };
+            }))
+            .toArray();
+    }
+
+    /**
+     * Entries of the selected streams in {@code [start, end)}: entry {@code k} of stream {@code s} is at
+     * {@code k * interval + s * interval / streams}, so walking {@code k * streams + s} walks entries in time order.
+     */
+    private String streams(int[] selected, long start, long end, int limit, boolean forward) {
+        Map<Integer, StringBuilder> values = new LinkedHashMap<>();
+        int count = 0;
+
+        if (selected.length > 0 && limit > 0) {
+            long first = Math.floorDiv(start, interval);
+            long last = Math.floorDiv(end, interval);
+
+            outer:
+            for (long k = forward ? first : last; forward ? k <= last : k >= first; k += forward ? 1 : -1) {
+                for (int i = 0; i < selected.length; i++) {
+                    int s = selected[forward ? i : selected.length - 1 - i];
+                    long timestamp = k * interval + s * interval / streams;
+                    if (timestamp < start || timestamp >= end) {
+                        continue;
+                    }
+
+                    StringBuilder builder = values.computeIfAbsent(s, key -> new StringBuilder());
+                    if (!builder.isEmpty()) {
+                        builder.append(',');
+                    }
+                    builder.append("[\"").append(timestamp).append("\",\"");
+                    appendLine(builder, s, k);
+                    builder.append("\"]");
+
+                    if (++count >= limit) {
+                        break outer;
+                    }
+                }
+            }
+        }
+
+        entriesSent.addAndGet(count);
+
+        StringBuilder builder = new StringBuilder(count * (lineLength + 40) + 128);
+        builder.append("{\"status\":\"success\",\"data\":{\"resultType\":\"streams\",\"result\":[");
+        boolean first = true;
+        for (Map.Entry<Integer, StringBuilder> stream : values.entrySet()) {
+            if (!first) {
+                builder.append(',');
+            }
+            builder.append("{\"stream\":");
+            appendLabels(builder, labels.get(stream.getKey()));
+            builder.append(",\"values\":[").append(stream.getValue()).append("]}");
+            first = false;
+        }
+
+        return builder.append("],\"stats\":{}}}").toString();
+    }
+
+    private String matrix(int[] selected, long start, long end, long step) {
+        StringBuilder builder = new StringBuilder("{\"status\":\"success\",\"data\":{\"resultType\":\"matrix\",\"result\":[");
+        long firstStep = Math.floorDiv(start + step - 1, step) * step;
+
+        for (int i = 0; i < selected.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"metric\":");
+            appendLabels(builder, labels.get(selected[i]));
+            builder.append(",\"values\":[");
+
+            boolean first = true;
+            for (long t = firstStep; t <= end; t += step) {
+                if (!first) {
+                    builder.append(',');
+                }
+                appendSample(builder, selected[i], t);
+                first = false;
+            }
+            builder.append("]}");
+        }
+
+        return builder.append("]}}").toString();
+    }
+
+    private String vector(int[] selected, long time) {
+        StringBuilder builder = new StringBuilder("{\"status\":\"success\",\"data\":{\"resultType\":\"vector\",\"result\":[");
+
+        for (int i = 0; i < selected.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"metric\":");
+            appendLabels(builder, labels.get(selected[i]));
+            builder.append(",\"value\":");
+            appendSample(builder, selected[i], time);
+            builder.append('}');
+        }
+
+        return builder.append("]}}").toString();
+    }
+
+    private void appendSample(StringBuilder builder, int stream, long timestamp) {
+        double rate = (double) NANOS_PER_SECOND / interval;
+        double value = rate * (0.5 + (mix(stream * 31L + Math.floorDiv(timestamp, NANOS_PER_SECOND)) >>> 11) * 0x1.0p-53);
+
+        builder.append('[').append(Math.floorDiv(timestamp, NANOS_PER_SECOND));
+        long nanos = Math.floorMod(timestamp, NANOS_PER_SECOND);
+        if (nanos != 0) {
+            builder.append('.').append(String.format("%09d", nanos));
+        }
+        builder.append(",\"").append(Math.round(value * 1000) / 1000.0).append("\"]");
+    }
+
+    private void appendLine(StringBuilder builder, int stream, long index) {
+        long seed = mix(stream * 0x9E3779B97F4A7C15L + index);
+        int start = builder.length();
+
+        builder.append("level=").append(labels.get(stream).get("level")).append(" msg=");
+        while (builder.length() - start < lineLength) {
+            builder.append(WORDS[(int) Math.floorMod(seed, (long) WORDS.length)]).append(' ');
+            seed = mix(seed);
+        }
+        builder.append("id=").append(Long.toHexString(index));
+    }
+
+    private static void appendLabels(StringBuilder builder, Map<String, String> streamLabels) {
+        builder.append('{');
+        boolean first = true;
+        for (Map.Entry<String, String> label : streamLabels.entrySet()) {
+            if (!first) {
+                builder.append(',');
+            }
+            builder.append('"').append(label.getKey()).append("\":\"").append(label.getValue()).append('"');
+            first = false;
+        }
+        builder.append('}');
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return value ^ (value >>> 33);
+    }
+
+    private void write(OutputStream output, Response response, String encoding) throws IOException {
+        byte[] body = response.body();
+        String contentEncoding = null;
+
+        if (encoding != null && body.length > 0) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+            try (OutputStream compressedOutput = encoding.equals("zstd") ? new ZstdOutputStream(compressed) : new GZIPOutputStream(compressed)) {
+                compressedOutput.write(body);
+            }
+            body = compressed.toByteArray();
+            contentEncoding = encoding;
+        }
+        lastContentEncoding = contentEncoding;
+
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(response.status()).append(' ').append(reason(response.status())).append("\r\n");
+        head.append("Content-Type: ").append(response.contentType()).append("\r\n");
+        head.append("Content-Length: ").append(body.length).append("\r\n");
+        if (contentEncoding != null) {
+            head.append("Content-Encoding: ").append(contentEncoding).append("\r\n");
+        }
+        response.headers().forEach((name, value) -> head.append(name).append(": ").append(value).append("\r\n"));
+        head.append("\r\n");
+
+        output.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+        output.write(body);
+        output.flush();
+
+        bytesSent.addAndGet(body.length);
+    }
+
+    private static String reason(int status) {
+        return switch (status) {
+            case 200 -> "OK";
+            case 204 -> "No Content";
+            case 400 -> "Bad Request";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 429 -> "Too Many Requests";
+            case 500 -> "Internal Server Error";
+            case 503 -> "Service Unavailable";
+            default -> "Status";
+        };
+    }
+
+    private static Request readRequest(InputStream input) throws IOException {
+        String requestLine = readLine(input);
+        if (requestLine == null || requestLine.isEmpty()) {
+            return null;
+        }
+
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 2) {
+            throw new IOException("Invalid request line: " + requestLine);
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(input)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+
+        byte[] body = new byte[0];
+        if (headers.containsKey("content-length")) {
+            body = input.readNBytes(Integer.parseInt(headers.get("content-length")));
+        } else if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+            ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+            int size;
+            while ((size = Integer.parseInt(Objects.requireNonNull(readLine(input)).split(";")[0].trim(), 16)) > 0) {
+                chunks.write(input.readNBytes(size));
+                readLine(input);
+            }
+            readLine(input);
+            body = chunks.toByteArray();
+        }
+
+        String target = parts[1];
+        int question = target.indexOf('?');
+        String path = question < 0 ? target : target.substring(0, question);
+
+        Map<String, List<String>> params = new HashMap<>();
+        parseParams(question < 0 ? null : target.substring(question + 1), params);
+        if ("application/x-www-form-urlencoded".equals(headers.get("content-type"))) {
+            parseParams(new String(body, StandardCharsets.UTF_8), params);
+        }
+
+        return new Request(parts[0], path, params, headers, body);
+    }
+
+    private static void parseParams(String query, Map<String, List<String>> params) {
+        if (query == null || query.isEmpty()) {
+            return;
+        }
+
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            params.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+        }
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = input.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.isEmpty() ? null : line.toString();
+    }
+
+    /**
+     * Just enough of a protobuf reader to walk length-delimited fields.
+     */
+    private static final class ProtoReader {
+        private final byte[] buffer;
+        private final int limit;
+        private int position;
+        private int field;
+        private int wireType;
+
+        ProtoReader(byte[] buffer, int offset, int limit) {
+            this.buffer = buffer;
+            this.position = offset;
+            this.limit = limit;
+        }
+
+        boolean next() {
+            if (position >= limit) {
+                return false;
+            }
+            long tag = varint();
+            field = (int) (tag >>> 3);
+            wireType = (int) (tag & 7);
+            return true;
+        }
+
+        ProtoReader message() {
+            int length = (int) varint();
+            ProtoReader message = new ProtoReader(buffer, position, position + length);
+            position += length;
+            return message;
+        }
+
+        void skip() {
+            switch (wireType) {
+                case 0 -> varint();
+                case 1 -> position += 8;
+                case 2 -> {
+                    int length = (int) varint();
+                    position += length;
+                }
+                case 5 -> position += 4;
+                default -> throw new IllegalArgumentException("Unsupported wire type " + wireType);
+            }
+        }
+
+        private long varint() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
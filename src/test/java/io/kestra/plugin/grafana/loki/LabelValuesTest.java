@@ -0,0 +1,66 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@KestraTest
+class LabelValuesTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void values() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).start()) {
+            LabelValues task = task(loki, "app").build();
+
+            LabelValues.Output output = task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of()));
+
+            assertThat(output.getValues(), containsInAnyOrder("api", "web", "worker", "scheduler", "gateway"));
+            assertThat(output.getCount(), is(5));
+        }
+    }
+
+    @Test
+    void selector() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).start()) {
+            LabelValues task = task(loki, "pod").query(Property.ofValue("{app=\"api\"}")).build();
+
+            LabelValues.Output output = task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of()));
+
+            assertThat(output.getValues(), containsInAnyOrder("api-0", "api-5"));
+            assertThat(loki.lastParam("query"), is("{app=\"api\"}"));
+        }
+    }
+
+    @Test
+    void cachedPerLabel() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).start()) {
+            LabelValues app = task(loki, "app").build();
+            LabelValues env = task(loki, "env").build();
+
+            app.run(TestsUtils.mockRunContext(runContextFactory, app, Map.of()));
+            app.run(TestsUtils.mockRunContext(runContextFactory, app, Map.of()));
+            LabelValues.Output output = env.run(TestsUtils.mockRunContext(runContextFactory, env, Map.of()));
+
+            assertThat(output.getValues(), hasItem("staging"));
+            assertThat(loki.requests(), is(2L));
+        }
+    }
+
+    private static LabelValues.LabelValuesBuilder<?, ?> task(FakeLoki loki, String label) {
+        return LabelValues.builder()
+            .id(LabelValuesTest.class.getSimpleName())
+            .type(LabelValues.class.getName())
+            .url(Property.ofValue(loki.url()))
+            .label(Property.ofValue(label));
+    }
+}
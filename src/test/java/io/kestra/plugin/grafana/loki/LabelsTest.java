@@ -0,0 +1,75 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@KestraTest
+class LabelsTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void labels() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).start()) {
+            Labels task = task(loki).build();
+
+            Labels.Output output = task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of()));
+
+            assertThat(output.getLabels(), contains("app", "env", "level", "pod"));
+            assertThat(output.getCount(), is(4));
+            assertThat(loki.requests(), is(1L));
+        }
+    }
+
+    @Test
+    void cached() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).start()) {
+            Labels task = task(loki).build();
+
+            task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of()));
+            RunContext runContext = TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+            Labels.Output output = task.run(runContext);
+
+            assertThat(output.getLabels(), hasSize(4));
+            assertThat(loki.requests(), is(1L));
+            assertThat(counter(runContext, "cache.hits"), is(1.0));
+        }
+    }
+
+    @Test
+    void zeroTtlIsNotCached() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).start()) {
+            Labels task = task(loki).cacheTtl(Property.ofValue(Duration.ZERO)).build();
+
+            task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of()));
+            task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of()));
+
+            assertThat(loki.requests(), is(2L));
+        }
+    }
+
+    private static Labels.LabelsBuilder<?, ?> task(FakeLoki loki) {
+        return Labels.builder()
+            .id(LabelsTest.class.getSimpleName())
+            .type(Labels.class.getName())
+            .url(Property.ofValue(loki.url()));
+    }
+
+    private static double counter(RunContext runContext, String name) {
+        return runContext.metrics().stream()
+            .filter(metric -> metric.getName().equals(name))
+            .mapToDouble(metric -> ((Number) metric.getValue()).doubleValue())
+            .sum();
+    }
+}
@@ -0,0 +1,107 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.plugin.grafana.loki.QueryRange.Aggregation;
+import io.kestra.plugin.grafana.loki.models.LokiEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class LokiAggregatorTest {
+    private static final long SECOND = 1_000_000_000L;
+    private static final Map<String, String> API = Map.of("app", "api");
+    private static final Map<String, String> WEB = Map.of("app", "web");
+
+    @Test
+    void aggregatesEachSeries() throws Exception {
+        LokiAggregator aggregator = new LokiAggregator(entry -> {}, EnumSet.allOf(Aggregation.class));
+
+        for (int i = 1; i <= 100; i++) {
+            aggregator.acceptSample(API, i * SECOND, i);
+            aggregator.acceptSample(WEB, i * SECOND, 10);
+        }
+
+        List<Map<String, Object>> summaries = aggregator.summaries();
+
+        assertThat(aggregator.getSize(), is(200L));
+        assertThat(summaries, hasSize(2));
+
+        Map<String, Object> api = summaries.getFirst();
+        assertThat(api.get("labels"), is(API));
+        assertThat(api.get("count"), is(100L));
+        assertThat(api.get("sum"), is(5050.0));
+        assertThat(api.get("avg"), is(50.5));
+        assertThat(api.get("min"), is(1.0));
+        assertThat(api.get("max"), is(100.0));
+        assertThat(api.get("last"), is(100.0));
+        assertThat(api.get("rate"), is(1.0));
+        assertThat((Double) api.get("p50"), closeTo(50, 1));
+        assertThat((Double) api.get("p95"), closeTo(95, 1));
+        assertThat((Double) api.get("p99"), closeTo(99, 1));
+
+        Map<String, Object> web = summaries.get(1);
+        assertThat(web.get("labels"), is(WEB));
+        assertThat(web.get("rate"), is(0.0));
+        assertThat(web.get("p99"), is(10.0));
+    }
+
+    @Test
+    void onlyRequestedAggregations() throws Exception {
+        LokiAggregator aggregator = new LokiAggregator(entry -> {}, List.of(Aggregation.MAX, Aggregation.SUM));
+
+        aggregator.acceptSample(API, SECOND, 1);
+        aggregator.acceptSample(API, 2 * SECOND, 2);
+
+        assertThat(aggregator.summaries().getFirst().keySet(), contains("labels", "count", "sum", "max"));
+    }
+
+    @Test
+    void samplesOutOfTimeOrder() throws Exception {
+        LokiAggregator aggregator = new LokiAggregator(entry -> {}, List.of(Aggregation.LAST, Aggregation.RATE));
+
+        // backward and sharded queries send the latest samples first
+        aggregator.acceptSample(API, 3 * SECOND, 30);
+        aggregator.acceptSample(API, SECOND, 10);
+        aggregator.acceptSample(API, 2 * SECOND, 20);
+
+        Map<String, Object> summary = aggregator.summaries().getFirst();
+        assertThat(summary.get("last"), is(30.0));
+        assertThat(summary.get("rate"), is(10.0));
+    }
+
+    @Test
+    void nanSamplesAreCountedButNotAggregated() throws Exception {
+        LokiAggregator aggregator = new LokiAggregator(entry -> {}, List.of(Aggregation.AVG, Aggregation.MIN, Aggregation.P50, Aggregation.RATE));
+
+        aggregator.acceptSample(API, SECOND, Double.NaN);
+        aggregator.acceptSample(API, 2 * SECOND, 4);
+        aggregator.acceptSample(WEB, SECOND, Double.NaN);
+
+        List<Map<String, Object>> summaries = aggregator.summaries();
+
+        assertThat(summaries.getFirst().get("count"), is(2L));
+        assertThat(summaries.getFirst().get("avg"), is(4.0));
+        assertThat(summaries.getFirst().get("min"), is(4.0));
+        assertThat(summaries.getFirst().get("p50"), is(4.0));
+        // a single sample has no rate
+        assertThat(summaries.getFirst().get("rate"), nullValue());
+
+        assertThat(summaries.get(1).get("count"), is(1L));
+        assertThat(summaries.get(1).get("avg"), nullValue());
+    }
+
+    @Test
+    void linesArePassedOn() throws Exception {
+        List<LokiEntry> lines = new ArrayList<>();
+        LokiAggregator aggregator = new LokiAggregator(lines::add, List.of(Aggregation.SUM));
+
+        aggregator.accept(new LokiEntry(String.valueOf(SECOND), API, "GET /health", null));
+        aggregator.accept(new LokiEntry("1.5", API, null, "2.5"));
+
+        assertThat(lines, hasSize(1));
+        assertThat(aggregator.getSize(), is(1L));
+        assertThat(aggregator.summaries().getFirst().get("sum"), is(2.5));
+    }
+}
@@ -0,0 +1,144 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.IdUtils;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@KestraTest
+class LokiCircuitBreakerTest {
+    private static final LokiCircuitBreaker.Thresholds THRESHOLDS = new LokiCircuitBreaker.Thresholds(3, null, Duration.ofMillis(200), 1);
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        LokiCircuitBreaker breaker = breaker(THRESHOLDS);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess(Duration.ZERO);
+        breaker.onFailure();
+        breaker.onFailure();
+        assertThat(breaker.tryAcquire(), is(true));
+
+        breaker.onFailure();
+
+        assertThat(breaker.allowsRequests(), is(false));
+        assertThat(breaker.tryAcquire(), is(false));
+        assertThat(breaker.remainingOpen(), allOf(greaterThan(Duration.ZERO), lessThanOrEqualTo(Duration.ofMillis(200))));
+    }
+
+    @Test
+    void probeClosesTheBreaker() throws Exception {
+        LokiCircuitBreaker breaker = open(breaker(THRESHOLDS));
+        Thread.sleep(250);
+
+        assertThat(breaker.allowsRequests(), is(true));
+        assertThat(breaker.tryAcquire(), is(true));
+        // a single probe is let through at once
+        assertThat(breaker.tryAcquire(), is(false));
+
+        breaker.onSuccess(Duration.ZERO);
+
+        assertThat(breaker.tryAcquire(), is(true));
+        assertThat(breaker.remainingOpen(), is(Duration.ZERO));
+    }
+
+    @Test
+    void failedProbeOpensTheBreakerAgain() throws Exception {
+        LokiCircuitBreaker breaker = open(breaker(THRESHOLDS));
+        Thread.sleep(250);
+
+        assertThat(breaker.tryAcquire(), is(true));
+        breaker.onFailure();
+
+        assertThat(breaker.tryAcquire(), is(false));
+        assertThat(breaker.remainingOpen(), greaterThan(Duration.ofMillis(100)));
+    }
+
+    @Test
+    void ignoredProbeIsGivenBack() throws Exception {
+        LokiCircuitBreaker breaker = open(breaker(THRESHOLDS));
+        Thread.sleep(250);
+
+        assertThat(breaker.tryAcquire(), is(true));
+        breaker.onIgnored();
+
+        assertThat(breaker.tryAcquire(), is(true));
+    }
+
+    @Test
+    void successSentBeforeOpeningDoesNotClose() {
+        LokiCircuitBreaker breaker = open(breaker(THRESHOLDS));
+
+        breaker.onSuccess(Duration.ZERO);
+
+        assertThat(breaker.tryAcquire(), is(false));
+    }
+
+    @Test
+    void slowCallsAreFailures() {
+        LokiCircuitBreaker breaker = breaker(new LokiCircuitBreaker.Thresholds(2, Duration.ofSeconds(1), Duration.ofMinutes(1), 1));
+
+        breaker.onSuccess(Duration.ofSeconds(2));
+        breaker.onSuccess(Duration.ofSeconds(2));
+
+        assertThat(breaker.tryAcquire(), is(false));
+    }
+
+    @Test
+    void keyedByEndpointAndThresholds() {
+        String host = "http://" + IdUtils.create().toLowerCase() + ":3100";
+
+        LokiCircuitBreaker breaker = LokiCircuitBreaker.get(URI.create(host + "/loki/api/v1/query_range?query=a"), THRESHOLDS);
+
+        assertThat(LokiCircuitBreaker.get(URI.create(host + "/loki/api/v1/query_range?query=b"), THRESHOLDS), sameInstance(breaker));
+        assertThat(LokiCircuitBreaker.get(URI.create(host + "/loki/api/v1/query"), THRESHOLDS), not(sameInstance(breaker)));
+        assertThat(LokiCircuitBreaker.get(URI.create(host + "/loki/api/v1/query_range"), new LokiCircuitBreaker.Thresholds(5, null, Duration.ofMillis(200), 1)), not(sameInstance(breaker)));
+    }
+
+    @Test
+    void openBreakerFailsTasksWithoutSendingRequests() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().errorRate(1).errorStatus(503).start()) {
+            QueryRange task = QueryRange.builder()
+                .id(LokiCircuitBreakerTest.class.getSimpleName())
+                .type(QueryRange.class.getName())
+                .url(Property.ofValue(loki.url()))
+                .query(Property.ofValue("{app=\"api\"}"))
+                .since(Property.ofValue("10s"))
+                .retryPolicy(LokiRetryPolicy.builder().maxAttempts(Property.ofValue(1)).build())
+                .circuitBreaker(LokiCircuitBreakerPolicy.builder().failureThreshold(Property.ofValue(2)).openDuration(Property.ofValue(Duration.ofMinutes(1))).build())
+                .build();
+
+            assertThrows(LokiHttpException.class, () -> task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of())));
+            assertThrows(LokiHttpException.class, () -> task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of())));
+            assertThrows(LokiCircuitOpenException.class, () -> task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of())));
+
+            assertThat(loki.requests(), is(2L));
+        }
+    }
+
+    private static LokiCircuitBreaker breaker(LokiCircuitBreaker.Thresholds thresholds) {
+        return LokiCircuitBreaker.get(URI.create("http://" + IdUtils.create().toLowerCase() + ":3100/loki/api/v1/query"), thresholds);
+    }
+
+    private static LokiCircuitBreaker open(LokiCircuitBreaker breaker) {
+        for (int i = 0; i < THRESHOLDS.failureThreshold(); i++) {
+            breaker.onFailure();
+        }
+        return breaker;
+    }
+}
@@ -0,0 +1,93 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@KestraTest
+class LokiClientPoolTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void sameOriginSharesClient() {
+        LokiClientOptions options = LokiClientOptions.builder().build();
+
+        try (
+            LokiClientPool.Lease first = LokiClientPool.lease(URI.create("http://loki-pool-test:3100/loki/api/v1/query"), options);
+            LokiClientPool.Lease second = LokiClientPool.lease(URI.create("http://loki-pool-test:3100/loki/api/v1/labels"), options);
+            LokiClientPool.Lease other = LokiClientPool.lease(URI.create("http://loki-pool-test:3100/loki/api/v1/query"), options.toBuilder().connectTimeout(Duration.ofSeconds(5)).build());
+            LokiClientPool.Lease otherOrigin = LokiClientPool.lease(URI.create("http://loki-pool-test:3200/loki/api/v1/query"), options)
+        ) {
+            assertThat(second.client(), sameInstance(first.client()));
+            assertThat(other.client(), not(sameInstance(first.client())));
+            assertThat(otherOrigin.client(), not(sameInstance(first.client())));
+        }
+    }
+
+    @Test
+    void stopCancelsOnlyTheRequestsOfTheTask() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().latency(Duration.ofSeconds(10)).start()) {
+            QueryRange stopped = task(loki);
+            QueryRange other = task(loki);
+
+            CompletableFuture<QueryRange.Output> stoppedRun = CompletableFuture.supplyAsync(() -> run(stopped));
+            CompletableFuture<QueryRange.Output> otherRun = CompletableFuture.supplyAsync(() -> run(other));
+
+            waitForRequests(loki, 2);
+            int clients = LokiClientPool.size();
+            stopped.stop();
+
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> stoppedRun.get(5, TimeUnit.SECONDS));
+            assertThat(failure.getCause(), notNullValue());
+
+            // the other run keeps its request and the pooled client stays open
+            assertThat(otherRun.isDone(), is(false));
+            assertThat(LokiClientPool.size(), is(clients));
+
+            other.stop();
+            assertThrows(ExecutionException.class, () -> otherRun.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private QueryRange task(FakeLoki loki) {
+        return QueryRange.builder()
+            .id(LokiClientPoolTest.class.getSimpleName())
+            .type(QueryRange.class.getName())
+            .url(Property.ofValue(loki.url()))
+            .query(Property.ofValue("{app=\"api\"}"))
+            .since(Property.ofValue("10s"))
+            .retryPolicy(LokiRetryPolicy.builder().maxAttempts(Property.ofValue(1)).build())
+            .build();
+    }
+
+    private QueryRange.Output run(QueryRange task) {
+        try {
+            return task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of()));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void waitForRequests(FakeLoki loki, long requests) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (loki.requests() < requests && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(loki.requests(), is(requests));
+    }
+}
@@ -0,0 +1,84 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@KestraTest
+class LokiDeadlineTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void requestInFlightIsAbortedAtTheDeadline() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().latency(Duration.ofSeconds(10)).start()) {
+            QueryRange task = task(loki).deadline(Property.ofValue(Duration.ofMillis(300))).build();
+
+            long start = System.nanoTime();
+            assertThrows(LokiDeadlineExceededException.class, () -> run(task));
+
+            assertThat(Duration.ofNanos(System.nanoTime() - start), lessThan(Duration.ofSeconds(3)));
+            assertThat(loki.requests(), lessThanOrEqualTo(1L));
+        }
+    }
+
+    @Test
+    void taskTimeoutIsTheDefaultDeadline() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().latency(Duration.ofSeconds(10)).start()) {
+            QueryRange task = task(loki).timeout(Property.ofValue(Duration.ofMillis(300))).build();
+
+            long start = System.nanoTime();
+            assertThrows(LokiDeadlineExceededException.class, () -> run(task));
+
+            assertThat(Duration.ofNanos(System.nanoTime() - start), lessThan(Duration.ofSeconds(3)));
+        }
+    }
+
+    @Test
+    void retryPastTheDeadlineIsNotAttempted() throws Exception {
+        // the fake Loki asks to retry after a second
+        try (FakeLoki loki = FakeLoki.builder().errorRate(1).errorStatus(503).start()) {
+            QueryRange task = task(loki)
+                .deadline(Property.ofValue(Duration.ofMillis(500)))
+                .retryPolicy(LokiRetryPolicy.builder().maxAttempts(Property.ofValue(5)).build())
+                .build();
+
+            LokiDeadlineExceededException exception = assertThrows(LokiDeadlineExceededException.class, () -> run(task));
+
+            assertThat(exception.getMessage(), containsString("before its next attempt"));
+            assertThat(loki.requests(), is(1L));
+        }
+    }
+
+    @Test
+    void requestsWithinTheDeadlineSucceed() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().latency(Duration.ofMillis(100)).start()) {
+            QueryRange task = task(loki).deadline(Property.ofValue(Duration.ofSeconds(10))).build();
+
+            assertThat(run(task).getSize(), greaterThan(0L));
+        }
+    }
+
+    private QueryRange.Output run(QueryRange task) throws Exception {
+        return task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of()));
+    }
+
+    private static QueryRange.QueryRangeBuilder<?, ?> task(FakeLoki loki) {
+        return QueryRange.builder()
+            .id(LokiDeadlineTest.class.getSimpleName())
+            .type(QueryRange.class.getName())
+            .url(Property.ofValue(loki.url()))
+            .query(Property.ofValue("{app=\"api\"}"))
+            .since(Property.ofValue("10s"));
+    }
+}
@@ -0,0 +1,218 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.models.triggers.StatefulTriggerService;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.IdUtils;
+import io.kestra.core.utils.TestsUtils;
+import io.kestra.plugin.grafana.loki.models.LokiEntry;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@KestraTest
+class LokiDedupStateTest {
+    private static final long SECOND = 1_000_000_000L;
+    private static final long BASE = 1_700_000_000L * SECOND;
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void add() {
+        LokiDedupState state = new LokiDedupState();
+
+        assertThat(state.add(entry(BASE, "api", "first")), is(true));
+        assertThat(state.add(entry(BASE, "api", "first")), is(false));
+        assertThat(state.add(entry(BASE, "web", "first")), is(true));
+        assertThat(state.add(entry(BASE + 1, "api", "first")), is(true));
+        assertThat(state.add(entry(BASE, "api", "second")), is(true));
+
+        assertThat(state.size(), is(4));
+        assertThat(state.isModified(), is(true));
+    }
+
+    @Test
+    void encodeDecode() throws IOException {
+        LokiDedupState state = new LokiDedupState();
+        for (int i = 0; i < 1_000; i++) {
+            state.add(entry(BASE + i * SECOND / 10, "api", "line " + i));
+        }
+
+        LokiDedupState decoded = LokiDedupState.decode(state.encode());
+
+        assertThat(decoded.size(), is(1_000));
+        assertThat(decoded.isModified(), is(false));
+        assertThat(decoded.legacyUntil().isPresent(), is(false));
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(decoded.add(entry(BASE + i * SECOND / 10, "api", "line " + i)), is(false));
+        }
+        assertThat(decoded.add(entry(BASE, "api", "new")), is(true));
+    }
+
+    @Test
+    void addAfterDecode() throws IOException {
+        LokiDedupState state = new LokiDedupState();
+        for (int i = 0; i < 100; i++) {
+            state.add(entry(BASE, "api", "line " + i));
+        }
+
+        // hashes added to a decoded bucket are appended to its sorted ones, then sorted together when encoded
+        LokiDedupState decoded = LokiDedupState.decode(state.encode());
+        for (int i = 100; i < 200; i++) {
+            assertThat(decoded.add(entry(BASE, "api", "line " + i)), is(true));
+            assertThat(decoded.add(entry(BASE, "api", "line " + i)), is(false));
+        }
+
+        LokiDedupState reloaded = LokiDedupState.decode(decoded.encode());
+        assertThat(reloaded.size(), is(200));
+        for (int i = 0; i < 200; i++) {
+            assertThat(reloaded.add(entry(BASE, "api", "line " + i)), is(false));
+        }
+    }
+
+    @Test
+    void decodeUnknownVersion() {
+        assertThrows(IOException.class, () -> LokiDedupState.decode(new byte[]{42, 0, 0, 0, 0}));
+        assertThrows(IOException.class, () -> LokiDedupState.decode(new byte[]{1, 0, 0, 0, 0}));
+    }
+
+    @Test
+    void prune() {
+        LokiDedupState state = new LokiDedupState();
+        for (int i = 0; i < 10; i++) {
+            state.add(entry(BASE + i * SECOND, "api", "line " + i));
+        }
+
+        state.prune(BASE + 5 * SECOND + SECOND / 2);
+
+        // buckets are per second, the bucket of the pruning timestamp is kept whole
+        assertThat(state.size(), is(5));
+        assertThat(state.add(entry(BASE + 5 * SECOND, "api", "line 5")), is(false));
+        assertThat(state.add(entry(BASE + 4 * SECOND, "api", "line 4")), is(true));
+    }
+
+    @Test
+    void pruneOldestPastMaxEntries() {
+        LokiDedupState state = new LokiDedupState();
+        int perSecond = 1_000;
+        int seconds = LokiDedupState.MAX_ENTRIES / perSecond + 5;
+
+        for (int s = 0; s < seconds; s++) {
+            for (int i = 0; i < perSecond; i++) {
+                state.add(entry(BASE + s * SECOND + i, "api", "line"));
+            }
+        }
+
+        state.prune(BASE);
+
+        assertThat(state.size(), is(LokiDedupState.MAX_ENTRIES));
+        assertThat(state.add(entry(BASE + (seconds - 1) * SECOND, "api", "line")), is(false));
+        assertThat(state.add(entry(BASE, "api", "line")), is(true));
+    }
+
+    @Test
+    void migrate() throws IOException {
+        LokiEntry first = entry(BASE, "api", "first");
+        LokiEntry second = entry(BASE + SECOND, "api", "second");
+
+        Map<String, StatefulTriggerService.Entry> legacy = new HashMap<>();
+        legacy.put(legacyId(first), StatefulTriggerService.Entry.candidate(legacyId(first), first.timestamp(), Instant.now()));
+        legacy.put(legacyId(second), StatefulTriggerService.Entry.candidate(legacyId(second), second.timestamp(), Instant.now()));
+        legacy.put("not-an-id", StatefulTriggerService.Entry.candidate("not-an-id", "0", Instant.now()));
+
+        LokiDedupState state = LokiDedupState.migrate(legacy).orElseThrow();
+
+        assertThat(state.size(), is(2));
+        assertThat(state.isModified(), is(true));
+        assertThat(state.legacyUntil().getAsLong(), is(BASE + SECOND));
+
+        // the legacy timestamp survives an encoding so that later polls still match the legacy ids
+        LokiDedupState decoded = LokiDedupState.decode(state.encode());
+        assertThat(decoded.legacyUntil().getAsLong(), is(BASE + SECOND));
+
+        assertThat(decoded.add(first), is(false));
+        assertThat(decoded.add(second), is(false));
+        assertThat(decoded.add(entry(BASE, "api", "other")), is(true));
+        assertThat(decoded.add(entry(BASE + 2 * SECOND, "api", "third")), is(true));
+    }
+
+    @Test
+    void migrateEmpty() {
+        assertThat(LokiDedupState.migrate(Map.of()), is(Optional.empty()));
+    }
+
+    @Test
+    void readWrite() throws Exception {
+        RunContext runContext = runContext();
+        String key = IdUtils.create();
+
+        assertThat(LokiDedupState.read(runContext, key, Optional.empty()), is(Optional.empty()));
+
+        LokiDedupState state = new LokiDedupState();
+        state.add(entry(BASE, "api", "first"));
+        state.write(runContext, key, Optional.of(Duration.ofHours(1)));
+
+        assertThat(state.isModified(), is(false));
+
+        LokiDedupState read = LokiDedupState.read(runContext, key, Optional.empty()).orElseThrow();
+        assertThat(read.size(), is(1));
+        assertThat(read.add(entry(BASE, "api", "first")), is(false));
+    }
+
+    @Test
+    void readLegacy() throws Exception {
+        RunContext runContext = runContext();
+        String key = IdUtils.create();
+
+        LokiEntry first = entry(BASE, "api", "first");
+        StatefulTriggerService.writeState(
+            runContext,
+            key,
+            Map.of(legacyId(first), StatefulTriggerService.Entry.candidate(legacyId(first), first.timestamp(), Instant.now())),
+            Optional.of(Duration.ofDays(1))
+        );
+
+        LokiDedupState read = LokiDedupState.read(runContext, key, Optional.of(Duration.ofDays(1))).orElseThrow();
+
+        assertThat(read.legacyUntil().getAsLong(), is(BASE));
+        assertThat(read.add(first), is(false));
+    }
+
+    private RunContext runContext() {
+        Labels task = Labels.builder()
+            .id(IdUtils.create())
+            .type(Labels.class.getName())
+            .url(Property.ofValue("http://localhost:3100"))
+            .build();
+
+        return TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+    }
+
+    private static LokiEntry entry(long timestamp, String app, String line) {
+        Map<String, String> labels = new LinkedHashMap<>();
+        labels.put("app", app);
+        labels.put("env", "production");
+        return new LokiEntry(String.valueOf(timestamp), labels, line, null);
+    }
+
+    /**
+     * The id previous versions of the trigger stored for an entry.
+     */
+    private static String legacyId(LokiEntry entry) {
+        return entry.timestamp() + "_" + (entry.line() + entry.labels()).hashCode();
+    }
+}
@@ -0,0 +1,123 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.utils.IdUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LokiLabelCacheTest {
+    private static final Duration TTL = Duration.ofMinutes(5);
+
+    @Test
+    void cached() throws Exception {
+        LokiLabelCache.Key key = key();
+        AtomicInteger loads = new AtomicInteger();
+
+        LokiLabelCache.Lookup first = LokiLabelCache.get(key, TTL, () -> List.of("app", "env", String.valueOf(loads.incrementAndGet())));
+        LokiLabelCache.Lookup second = LokiLabelCache.get(key, TTL, () -> List.of("app", "env", String.valueOf(loads.incrementAndGet())));
+
+        assertThat(first.source(), is(LokiLabelCache.Source.REQUEST));
+        assertThat(second.source(), is(LokiLabelCache.Source.CACHE));
+        assertThat(second.values(), is(first.values()));
+        assertThat(loads.get(), is(1));
+    }
+
+    @Test
+    void otherKeysAreLoadedSeparately() throws Exception {
+        LokiLabelCache.Key key = key();
+        LokiLabelCache.Key otherTenant = new LokiLabelCache.Key(key.endpoint(), key.authTokenHash(), "other", key.query(), key.start(), key.end());
+
+        LokiLabelCache.get(key, TTL, () -> List.of("app"));
+        LokiLabelCache.Lookup other = LokiLabelCache.get(otherTenant, TTL, () -> List.of("pod"));
+
+        assertThat(other.source(), is(LokiLabelCache.Source.REQUEST));
+        assertThat(other.values(), contains("pod"));
+    }
+
+    @Test
+    void concurrentLookupsShareTheLoad() throws Exception {
+        LokiLabelCache.Key key = key();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<LokiLabelCache.Lookup> first = CompletableFuture.supplyAsync(() -> get(key, Duration.ZERO, () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            assertThat(release.await(10, TimeUnit.SECONDS), is(true));
+            return List.of("app");
+        }));
+        assertThat(loading.await(10, TimeUnit.SECONDS), is(true));
+
+        CompletableFuture<LokiLabelCache.Lookup> second = CompletableFuture.supplyAsync(() -> get(key, Duration.ZERO, () -> {
+            loads.incrementAndGet();
+            return List.of("pod");
+        }));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertThat(first.get(10, TimeUnit.SECONDS).source(), is(LokiLabelCache.Source.REQUEST));
+        assertThat(second.get(10, TimeUnit.SECONDS).source(), is(LokiLabelCache.Source.COALESCED));
+        assertThat(second.get().values(), contains("app"));
+        assertThat(loads.get(), is(1));
+    }
+
+    @Test
+    void zeroTtlIsNotCached() throws Exception {
+        LokiLabelCache.Key key = key();
+
+        LokiLabelCache.get(key, Duration.ZERO, () -> List.of("app"));
+        LokiLabelCache.Lookup second = LokiLabelCache.get(key, Duration.ZERO, () -> List.of("pod"));
+
+        assertThat(second.source(), is(LokiLabelCache.Source.REQUEST));
+        assertThat(second.values(), contains("pod"));
+    }
+
+    @Test
+    void expiredEntriesAreLoadedAgain() throws Exception {
+        LokiLabelCache.Key key = key();
+
+        LokiLabelCache.get(key, Duration.ofMillis(50), () -> List.of("app"));
+        Thread.sleep(100);
+        LokiLabelCache.Lookup second = LokiLabelCache.get(key, Duration.ofMillis(50), () -> List.of("pod"));
+
+        assertThat(second.source(), is(LokiLabelCache.Source.REQUEST));
+        assertThat(second.values(), contains("pod"));
+    }
+
+    @Test
+    void failedLoadsAreNotCached() throws Exception {
+        LokiLabelCache.Key key = key();
+
+        IOException failure = assertThrows(IOException.class, () -> LokiLabelCache.get(key, TTL, () -> {
+            throw new IOException("unavailable");
+        }));
+        LokiLabelCache.Lookup second = LokiLabelCache.get(key, TTL, () -> List.of("app"));
+
+        assertThat(failure.getMessage(), is("unavailable"));
+        assertThat(second.source(), is(LokiLabelCache.Source.REQUEST));
+        assertThat(second.values(), contains("app"));
+    }
+
+    private static LokiLabelCache.Key key() {
+        return new LokiLabelCache.Key("http://" + IdUtils.create().toLowerCase() + ":3100/loki/api/v1/labels", null, null, null, 0L, 60L);
+    }
+
+    private static LokiLabelCache.Lookup get(LokiLabelCache.Key key, Duration ttl, LokiLabelCache.Loader loader) {
+        try {
+            return LokiLabelCache.get(key, ttl, loader);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.plugin.grafana.loki.AbstractLokiConnection.Direction;
+import io.kestra.plugin.grafana.loki.models.LokiEntry;
+import io.kestra.plugin.grafana.loki.models.LokiResponseParser;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class LokiRangeFetcherTest {
+    private static final long START = 1_000;
+    private static final long END = 1_100;
+
+    /**
+     * Three entries per timestamp, so that pages of four entries always end in the middle of a timestamp.
+     */
+    private static final List<Line> LINES = lines(START, END, 3);
+
+    @Test
+    void paginateForward() throws Exception {
+        FakeRange loki = new FakeRange(LINES);
+        List<LokiEntry> entries = new ArrayList<>();
+
+        LokiRangeFetcher.Summary summary = fetcher(loki, 4, Direction.FORWARD).fetchAll(START, END, Long.MAX_VALUE, entries::add);
+
+        assertThat(lines(entries), is(expected(LINES, true)));
+        assertThat(summary.count(), is((long) LINES.size()));
+        assertThat(summary.resultType(), is("streams"));
+        assertThat(summary.pages(), is(loki.requests.get()));
+        assertThat(summary.pages(), greaterThan(LINES.size() / 4));
+    }
+
+    @Test
+    void paginateBackward() throws Exception {
+        FakeRange loki = new FakeRange(LINES);
+        List<LokiEntry> entries = new ArrayList<>();
+
+        LokiRangeFetcher.Summary summary = fetcher(loki, 4, Direction.BACKWARD).fetchAll(START, END, Long.MAX_VALUE, entries::add);
+
+        assertThat(lines(entries), is(expected(LINES, false)));
+        assertThat(summary.count(), is((long) LINES.size()));
+    }
+
+    @Test
+    void paginateMaxRecords() throws Exception {
+        FakeRange loki = new FakeRange(LINES);
+        List<LokiEntry> entries = new ArrayList<>();
+
+        LokiRangeFetcher.Summary summary = fetcher(loki, 4, Direction.FORWARD).fetchAll(START, END, 10, entries::add);
+
+        assertThat(lines(entries), is(expected(LINES, true).subList(0, 10)));
+        assertThat(summary.count(), is(10L));
+        assertThat(loki.requests.get(), lessThanOrEqualTo(4));
+    }
+
+    @Test
+    void paginatePastFullPageOfOneTimestamp() throws Exception {
+        // more entries share a timestamp than a page holds, the pagination must still end
+        List<Line> lines = lines(START, START + 3, 5);
+        FakeRange loki = new FakeRange(lines);
+        List<LokiEntry> entries = new ArrayList<>();
+
+        fetcher(loki, 2, Direction.FORWARD).fetchAll(START, START + 3, Long.MAX_VALUE, entries::add);
+
+        assertThat(new HashSet<>(lines(entries)), hasSize(entries.size()));
+        assertThat(loki.requests.get(), lessThan(20));
+    }
+
+    @Test
+    void shardedForward() throws Exception {
+        FakeRange loki = new FakeRange(LINES);
+        List<LokiEntry> entries = new ArrayList<>();
+
+        LokiRangeFetcher.Summary summary = fetcher(loki, 4, Direction.FORWARD).fetchSharded(START, END, 7, 3, true, false, Long.MAX_VALUE, entries::add);
+
+        assertThat(lines(entries), is(expected(LINES, true)));
+        assertThat(summary.shards(), is((int) Math.ceilDiv(END - START, 7)));
+    }
+
+    @Test
+    void shardedBackward() throws Exception {
+        FakeRange loki = new FakeRange(LINES);
+        List<LokiEntry> entries = new ArrayList<>();
+
+        fetcher(loki, 4, Direction.BACKWARD).fetchSharded(START, END, 7, 3, true, false, Long.MAX_VALUE, entries::add);
+
+        assertThat(lines(entries), is(expected(LINES, false)));
+    }
+
+    @Test
+    void shardedWithoutPaginationKeepsLimitPerShard() throws Exception {
+        FakeRange loki = new FakeRange(LINES);
+        List<LokiEntry> entries = new ArrayList<>();
+
+        fetcher(loki, 4, Direction.FORWARD).fetchSharded(START, END, 10, 2, false, false, Long.MAX_VALUE, entries::add);
+
+        // each shard of 10 timestamps holds 30 entries, only its first 4 are returned
+        assertThat(entries, hasSize(10 * 4));
+        assertThat(lines(entries), is(lines(entries).stream().sorted(Comparator.comparing(line -> LINES.indexOf(line))).toList()));
+    }
+
+    @Test
+    void shardedAdaptive() throws Exception {
+        // shards are not bisected under a millisecond
+        long spacing = LokiRangeFetcher.MIN_SHARD_DURATION;
+        List<Line> lines = LINES.stream().map(line -> new Line(line.timestamp() * spacing, line.line())).toList();
+        FakeRange loki = new FakeRange(lines);
+        List<LokiEntry> entries = new ArrayList<>();
+
+        LokiRangeFetcher.Summary summary = fetcher(loki, 8, Direction.FORWARD).fetchSharded(START * spacing, END * spacing, 50 * spacing, 4, true, true, Long.MAX_VALUE, entries::add);
+
+        assertThat(lines(entries), is(expected(lines, true)));
+        assertThat(summary.bisected(), greaterThan(0));
+    }
+
+    @Test
+    void shardedMaxRecords() throws Exception {
+        FakeRange loki = new FakeRange(LINES);
+        List<LokiEntry> entries = new ArrayList<>();
+
+        LokiRangeFetcher.Summary summary = fetcher(loki, 4, Direction.FORWARD).fetchSharded(START, END, 7, 3, true, false, 25, entries::add);
+
+        assertThat(lines(entries), is(expected(LINES, true).subList(0, 25)));
+        assertThat(summary.count(), is(25L));
+    }
+
+    @Test
+    void shardedBuffersBoundedWhileHeadShardIsSlow() throws Exception {
+        FakeRange loki = new FakeRange(LINES);
+        Set<String> fetched = ConcurrentHashMap.newKeySet();
+        List<LokiEntry> entries = new ArrayList<>();
+        long[] maxBuffered = {0};
+
+        LokiRangeFetcher.Executor slowHead = (uri, sink) -> {
+            if (Long.parseLong(params(uri).get("start")) < START + 34) {
+                Thread.sleep(20);
+            }
+            return loki.execute(uri, entry -> {
+                fetched.add(entry.line());
+                sink.accept(entry);
+            });
+        };
+
+        LokiRangeFetcher fetcher = new LokiRangeFetcher("http://loki/loki/api/v1/query_range", Map.of("query", "{app=\"api\"}", "direction", "forward"), 4, Direction.FORWARD, slowHead, LoggerFactory.getLogger(LokiRangeFetcherTest.class));
+        fetcher.fetchSharded(START, END, 34, 2, true, false, Long.MAX_VALUE, entry -> {
+            entries.add(entry);
+            maxBuffered[0] = Math.max(maxBuffered[0], fetched.size() - entries.size());
+        });
+
+        // the later shards hold 200 entries, only the budget of parallelism * limit, plus the pages being fetched, is buffered
+        assertThat(lines(entries), is(expected(LINES, true)));
+        assertThat(maxBuffered[0], lessThanOrEqualTo((2 * 2 + 1) * 4L));
+    }
+
+    @Test
+    void shardedMetricStepsAreNotDuplicated() throws Exception {
+        long step = 10_000_000_000L;
+        List<Long> timestamps = new ArrayList<>();
+        LokiRangeFetcher fetcher = new LokiRangeFetcher("http://loki/loki/api/v1/query_range", Map.of("query", "rate({app=\"api\"}[1m])"), 100, Direction.FORWARD, (uri, sink) -> {
+            Map<String, String> params = params(uri);
+            long start = Long.parseLong(params.get("start"));
+            long end = Long.parseLong(params.get("end"));
+
+            // Loki evaluates every step of [start, end], both included
+            long count = 0;
+            for (long t = Math.ceilDiv(start, step) * step; t <= end; t += step) {
+                LokiResponseParser.SampleSink.send(sink, Map.of("app", "api"), t, (double) t / step);
+                count++;
+            }
+            return new LokiResponseParser.Result("success", "matrix", count);
+        }, LoggerFactory.getLogger(LokiRangeFetcherTest.class));
+
+        fetcher.fetchSharded(0, 20 * step, 5 * step, 2, false, false, Long.MAX_VALUE, entry -> timestamps.add(LokiTime.parseTimestamp(entry.timestamp())));
+
+        assertThat(timestamps, is(LongStream.rangeClosed(0, 20).map(i -> i * step).boxed().toList()));
+    }
+
+    private record Line(long timestamp, String line) {
+    }
+
+    /**
+     * Serves {@code query_range} like Loki does: entries of {@code [start, end)} in the requested direction, at most
+     * {@code limit} of them, with a latency varying by range so that shards complete out of order.
+     */
+    private static final class FakeRange implements LokiRangeFetcher.Executor {
+        private final List<Line> lines;
+        private final AtomicInteger requests = new AtomicInteger();
+
+        FakeRange(List<Line> lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public LokiResponseParser.Result execute(URI uri, LokiResponseParser.Sink sink) throws Exception {
+            requests.incrementAndGet();
+
+            Map<String, String> params = params(uri);
+            long start = Long.parseLong(params.get("start"));
+            long end = Long.parseLong(params.get("end"));
+            int limit = Integer.parseInt(params.get("limit"));
+            boolean forward = "forward".equals(params.get("direction"));
+
+            Thread.sleep(Math.floorMod(start * 31, 5));
+
+            List<Line> selected = lines.stream()
+                .filter(line -> line.timestamp() >= start && line.timestamp() < end)
+                .toList();
+            if (!forward) {
+                selected = selected.reversed();
+            }
+
+            long count = 0;
+            for (Line line : selected.subList(0, Math.min(limit, selected.size()))) {
+                sink.accept(new LokiEntry(String.valueOf(line.timestamp()), Map.of("app", "api"), line.line(), null));
+                count++;
+            }
+
+            return new LokiResponseParser.Result("success", "streams", count);
+        }
+    }
+
+    private static LokiRangeFetcher fetcher(FakeRange loki, int limit, Direction direction) {
+        Map<String, String> params = new HashMap<>();
+        params.put("query", "{app=\"api\"}");
+        params.put("direction", direction.name().toLowerCase());
+
+        return new LokiRangeFetcher("http://loki/loki/api/v1/query_range", params, limit, direction, loki, LoggerFactory.getLogger(LokiRangeFetcherTest.class));
+    }
+
+    private static List<Line> lines(long start, long end, int perTimestamp) {
+        List<Line> lines = new ArrayList<>();
+        for (long timestamp = start; timestamp < end; timestamp++) {
+            for (int i = 0; i < perTimestamp; i++) {
+                lines.add(new Line(timestamp, "line " + timestamp + "-" + i));
+            }
+        }
+        return lines;
+    }
+
+    private static List<Line> expected(List<Line> lines, boolean forward) {
+        return forward ? lines : lines.reversed();
+    }
+
+    private static List<Line> lines(List<LokiEntry> entries) {
+        return entries.stream().map(entry -> new Line(Long.parseLong(entry.timestamp()), entry.line())).toList();
+    }
+
+    private static Map<String, String> params(URI uri) {
+        Map<String, String> params = new HashMap<>();
+        for (String param : uri.getRawQuery().split("&")) {
+            String[] pair = param.split("=", 2);
+            params.put(pair[0], URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+}
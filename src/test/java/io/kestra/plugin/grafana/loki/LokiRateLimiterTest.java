@@ -0,0 +1,131 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.IdUtils;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@KestraTest
+class LokiRateLimiterTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void burstThenRate() throws Exception {
+        LokiRateLimiter limiter = limiter(new LokiRateLimiter.Limits(20, 5, Integer.MAX_VALUE));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            acquireAndRelease(limiter, null);
+        }
+        Duration burst = Duration.ofNanos(System.nanoTime() - start);
+
+        for (int i = 0; i < 5; i++) {
+            acquireAndRelease(limiter, null);
+        }
+        Duration total = Duration.ofNanos(System.nanoTime() - start);
+
+        // the burst is served at once, the next requests at 20 per second
+        assertThat(burst, lessThan(Duration.ofMillis(100)));
+        assertThat(total, greaterThanOrEqualTo(Duration.ofMillis(200)));
+    }
+
+    @Test
+    void maxInFlight() throws Exception {
+        LokiRateLimiter limiter = limiter(new LokiRateLimiter.Limits(Double.POSITIVE_INFINITY, 1, 1));
+
+        assertThat(limiter.acquire(), notNullValue());
+        assertThat(limiter.acquire(Duration.ofMillis(50)), nullValue());
+
+        limiter.release();
+        assertThat(limiter.acquire(Duration.ofMillis(50)), notNullValue());
+        limiter.release();
+    }
+
+    @Test
+    void tooLongWaitTakesNoToken() throws Exception {
+        LokiRateLimiter limiter = limiter(new LokiRateLimiter.Limits(2, 1, Integer.MAX_VALUE));
+
+        acquireAndRelease(limiter, null);
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.acquire(Duration.ofMillis(10)), nullValue());
+        }
+
+        // the refused attempts did not go into debt, the next token comes after half a second
+        Duration wait = limiter.acquire(Duration.ofSeconds(1));
+        assertThat(wait, allOf(notNullValue(), lessThan(Duration.ofMillis(700))));
+        limiter.release();
+    }
+
+    @Test
+    void timeoutWaitingForASlotRefundsTheToken() throws Exception {
+        LokiRateLimiter limiter = limiter(new LokiRateLimiter.Limits(10, 1, 1));
+
+        limiter.acquire();
+        Thread.sleep(150);
+
+        // the token is available but the slot is not
+        assertThat(limiter.acquire(Duration.ofMillis(50)), nullValue());
+        limiter.release();
+
+        assertThat(limiter.acquire(Duration.ZERO), notNullValue());
+        limiter.release();
+    }
+
+    @Test
+    void sharedByOriginAndTenant() {
+        LokiRateLimiter.Limits limits = new LokiRateLimiter.Limits(10, 1, 1);
+        String host = "http://" + IdUtils.create().toLowerCase() + ":3100";
+
+        LokiRateLimiter query = LokiRateLimiter.get(URI.create(host + "/loki/api/v1/query"), "tenant", limits);
+        LokiRateLimiter push = LokiRateLimiter.get(URI.create(host + "/loki/api/v1/push"), "tenant", limits);
+        LokiRateLimiter other = LokiRateLimiter.get(URI.create(host + "/loki/api/v1/query"), "other", limits);
+
+        assertThat(push, sameInstance(query));
+        assertThat(other, not(sameInstance(query)));
+    }
+
+    @Test
+    void tasksWaitForTheRateLimit() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().start()) {
+            QueryRange task = QueryRange.builder()
+                .id(LokiRateLimiterTest.class.getSimpleName())
+                .type(QueryRange.class.getName())
+                .url(Property.ofValue(loki.url()))
+                .query(Property.ofValue("{app=\"api\"}"))
+                .since(Property.ofValue("10s"))
+                .rateLimit(LokiRateLimit.builder().requestsPerSecond(Property.ofValue(10.0)).burst(Property.ofValue(1)).build())
+                .build();
+            RunContext runContext = TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+
+            long start = System.nanoTime();
+            for (int i = 0; i < 4; i++) {
+                task.run(runContext);
+            }
+
+            assertThat(Duration.ofNanos(System.nanoTime() - start), greaterThanOrEqualTo(Duration.ofMillis(300)));
+            assertThat(loki.requests(), is(4L));
+            assertThat(runContext.metrics().stream().anyMatch(metric -> metric.getName().equals("ratelimit.wait")), is(true));
+        }
+    }
+
+    private static LokiRateLimiter limiter(LokiRateLimiter.Limits limits) {
+        return LokiRateLimiter.get(URI.create("http://" + IdUtils.create().toLowerCase() + ":3100/loki/api/v1/query"), null, limits);
+    }
+
+    private static void acquireAndRelease(LokiRateLimiter limiter, Duration maxWait) throws InterruptedException {
+        assertThat(limiter.acquire(maxWait), notNullValue());
+        limiter.release();
+    }
+}
@@ -0,0 +1,142 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.IdUtils;
+import io.kestra.core.utils.TestsUtils;
+import io.kestra.plugin.grafana.loki.models.LokiEntry;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@KestraTest
+class LokiResultCacheTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void writeAndRead() throws Exception {
+        RunContext runContext = runContext();
+        LokiResultCache cache = cache();
+        String key = IdUtils.create();
+
+        List<LokiEntry> written = write(runContext, cache, key, 100);
+        List<LokiEntry> read = new ArrayList<>();
+        LokiResultCache.Hit hit = cache.read(runContext, key, read::add);
+
+        assertThat(hit.size(), is(100L));
+        assertThat(hit.resultType(), is("streams"));
+        assertThat(read, is(written));
+    }
+
+    @Test
+    void unreadableResultFallsBackToLoki() throws Exception {
+        RunContext runContext = runContext();
+        LokiResultCache cache = cache();
+        String key = IdUtils.create();
+
+        put(runContext, key, "not a gzip stream".getBytes());
+        List<LokiEntry> read = new ArrayList<>();
+
+        assertThat(cache.read(runContext, key, read::add), nullValue());
+        assertThat(read, empty());
+        assertThat(runContext.storage().getCacheFile(LokiResultCache.CACHE_ID, key, Duration.ofHours(1)).isPresent(), is(false));
+    }
+
+    @Test
+    void resultWithoutSummaryFallsBackToLoki() throws Exception {
+        RunContext runContext = runContext();
+        LokiResultCache cache = cache();
+        String key = IdUtils.create();
+
+        ByteArrayOutputStream empty = new ByteArrayOutputStream();
+        new GZIPOutputStream(empty).close();
+        put(runContext, key, empty.toByteArray());
+
+        assertThat(cache.read(runContext, key, entry -> {}), nullValue());
+        assertThat(runContext.storage().getCacheFile(LokiResultCache.CACHE_ID, key, Duration.ofHours(1)).isPresent(), is(false));
+    }
+
+    @Test
+    void resultTruncatedAfterSomeEntriesFails() throws Exception {
+        RunContext runContext = runContext();
+        LokiResultCache cache = cache();
+        String key = IdUtils.create();
+
+        write(runContext, cache, key, 20_000);
+        byte[] bytes;
+        try (InputStream input = runContext.storage().getCacheFile(LokiResultCache.CACHE_ID, key, Duration.ofHours(1)).orElseThrow()) {
+            bytes = input.readAllBytes();
+        }
+        put(runContext, key, Arrays.copyOf(bytes, bytes.length / 2));
+
+        // the entries already sent would be sent again by querying Loki
+        List<LokiEntry> read = new ArrayList<>();
+        assertThrows(IOException.class, () -> cache.read(runContext, key, read::add));
+        assertThat(read, not(empty()));
+        assertThat(runContext.storage().getCacheFile(LokiResultCache.CACHE_ID, key, Duration.ofHours(1)).isPresent(), is(false));
+    }
+
+    @Test
+    void sinkFailureKeepsTheResult() throws Exception {
+        RunContext runContext = runContext();
+        LokiResultCache cache = cache();
+        String key = IdUtils.create();
+
+        write(runContext, cache, key, 10);
+        IOException failure = new IOException("disk full");
+
+        IOException thrown = assertThrows(IOException.class, () -> cache.read(runContext, key, entry -> {
+            throw failure;
+        }));
+
+        assertThat(thrown, sameInstance(failure));
+        assertThat(runContext.storage().getCacheFile(LokiResultCache.CACHE_ID, key, Duration.ofHours(1)).isPresent(), is(true));
+    }
+
+    private RunContext runContext() {
+        QueryRange task = QueryRange.builder()
+            .id(LokiResultCacheTest.class.getSimpleName())
+            .type(QueryRange.class.getName())
+            .url(Property.ofValue("http://localhost:3100"))
+            .query(Property.ofValue("{app=\"api\"}"))
+            .build();
+        return TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+    }
+
+    private static LokiResultCache cache() {
+        return new LokiResultCache(Duration.ofMinutes(5), Duration.ofHours(1), Long.MAX_VALUE, null);
+    }
+
+    private static List<LokiEntry> write(RunContext runContext, LokiResultCache cache, String key, int count) throws IOException {
+        List<LokiEntry> entries = new ArrayList<>();
+
+        try (LokiResultCache.Writer writer = cache.writer(runContext, entries::add)) {
+            for (int i = 0; i < count; i++) {
+                writer.accept(new LokiEntry(String.valueOf(1_700_000_000L * SECOND + i), Map.of("app", "api"), "request " + i + " " + UUID.randomUUID(), null));
+            }
+            writer.commit(key, "streams", 1_000);
+        }
+
+        return entries;
+    }
+
+    private static void put(RunContext runContext, String key, byte[] content) throws IOException {
+        File file = Files.createTempFile("cache", ".ion.gz").toFile();
+        Files.write(file.toPath(), content);
+        runContext.storage().putCacheFile(file, LokiResultCache.CACHE_ID, key);
+    }
+}
@@ -0,0 +1,144 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@KestraTest
+class LokiRetryTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void exponentialBackoff() {
+        LokiRetry retry = LokiRetry.builder()
+            .maxAttempts(5)
+            .initialBackoff(Duration.ofMillis(100))
+            .maxBackoff(Duration.ofMillis(350))
+            .jitter(0)
+            .build();
+
+        assertThat(retry.delay(1, null), is(Duration.ofMillis(100)));
+        assertThat(retry.delay(2, null), is(Duration.ofMillis(200)));
+        assertThat(retry.delay(3, null), is(Duration.ofMillis(350)));
+        assertThat(retry.delay(4, null), is(Duration.ofMillis(350)));
+        assertThat(retry.delay(5, null), nullValue());
+    }
+
+    @Test
+    void jitterOnlyShortensTheDelay() {
+        LokiRetry retry = LokiRetry.builder().initialBackoff(Duration.ofMillis(100)).jitter(0.5).build();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(retry.delay(1, null), allOf(greaterThanOrEqualTo(Duration.ofMillis(50)), lessThanOrEqualTo(Duration.ofMillis(100))));
+        }
+    }
+
+    @Test
+    void retryAfter() {
+        LokiRetry retry = LokiRetry.builder().initialBackoff(Duration.ofMillis(100)).maxBackoff(Duration.ofSeconds(5)).jitter(0).build();
+
+        assertThat(retry.delay(1, Duration.ofSeconds(2)), is(Duration.ofSeconds(2)));
+        assertThat(retry.delay(1, Duration.ofMillis(10)), is(Duration.ofMillis(100)));
+        // waiting longer than the maximum backoff fails the request instead
+        assertThat(retry.delay(1, Duration.ofSeconds(10)), nullValue());
+    }
+
+    @Test
+    void parseRetryAfter() {
+        assertThat(LokiRetry.parseRetryAfter("3"), is(Duration.ofSeconds(3)));
+        assertThat(LokiRetry.parseRetryAfter(" -1 "), is(Duration.ZERO));
+        assertThat(LokiRetry.parseRetryAfter(null), nullValue());
+        assertThat(LokiRetry.parseRetryAfter("soon"), nullValue());
+        assertThat(LokiRetry.parseRetryAfter("Mon, 01 Jan 2001 00:00:00 GMT"), is(Duration.ZERO));
+
+        String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(60));
+        assertThat(LokiRetry.parseRetryAfter(date), allOf(greaterThan(Duration.ofSeconds(50)), lessThanOrEqualTo(Duration.ofSeconds(60))));
+    }
+
+    @Test
+    void retryableStatusIsRetried() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().errorRate(0.5).errorStatus(503).seed(7).start()) {
+            QueryRange task = task(loki, LokiRetryPolicy.builder().maxAttempts(Property.ofValue(20)).build());
+            RunContext runContext = TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+
+            for (int i = 0; i < 3; i++) {
+                task.run(runContext);
+            }
+
+            // the fake Loki asks to retry after a second, which the backoff honours
+            assertThat(loki.errors(), greaterThan(0L));
+            assertThat(loki.requests(), is(3 + loki.errors()));
+            assertThat(counter(runContext, "retries"), is((double) loki.errors()));
+        }
+    }
+
+    @Test
+    void attemptsAreLimited() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().errorRate(1).errorStatus(429).start()) {
+            QueryRange task = task(loki, LokiRetryPolicy.builder().maxAttempts(Property.ofValue(2)).build());
+
+            LokiHttpException exception = assertThrows(LokiHttpException.class, () -> task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of())));
+
+            assertThat(exception.getStatusCode(), is(429));
+            assertThat(loki.requests(), is(2L));
+        }
+    }
+
+    @Test
+    void otherStatusIsNotRetried() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().errorRate(1).errorStatus(500).start()) {
+            QueryRange task = task(loki, LokiRetryPolicy.builder().build());
+
+            assertThrows(LokiHttpException.class, () -> task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of())));
+            assertThat(loki.requests(), is(1L));
+        }
+    }
+
+    @Test
+    void retryAfterLongerThanMaxBackoffFails() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().errorRate(1).errorStatus(503).start()) {
+            QueryRange task = task(loki, LokiRetryPolicy.builder()
+                .maxBackoff(Property.ofValue(Duration.ofMillis(200)))
+                .retryableStatusCodes(Property.ofValue(List.of(503)))
+                .build()
+            );
+
+            assertThrows(LokiHttpException.class, () -> task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of())));
+            assertThat(loki.requests(), is(1L));
+        }
+    }
+
+    private static QueryRange task(FakeLoki loki, LokiRetryPolicy retryPolicy) {
+        return QueryRange.builder()
+            .id(LokiRetryTest.class.getSimpleName())
+            .type(QueryRange.class.getName())
+            .url(Property.ofValue(loki.url()))
+            .query(Property.ofValue("{app=\"api\"}"))
+            .since(Property.ofValue("10s"))
+            .retryPolicy(retryPolicy)
+            .build();
+    }
+
+    private static double counter(RunContext runContext, String name) {
+        return runContext.metrics().stream()
+            .filter(metric -> metric.getName().equals(name))
+            .mapToDouble(metric -> ((Number) metric.getValue()).doubleValue())
+            .sum();
+    }
+}
@@ -0,0 +1,75 @@
+package io.kestra.plugin.grafana.loki;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class LokiSeriesSetTest {
+    @Test
+    void duplicates() {
+        LokiSeriesSet set = new LokiSeriesSet();
+
+        assertThat(set.add(Map.of("app", "api", "pod", "api-0")), is(true));
+        assertThat(set.add(Map.of("app", "api", "pod", "api-1")), is(true));
+        assertThat(set.add(new HashMap<>(Map.of("app", "api", "pod", "api-0"))), is(false));
+        assertThat(set.size(), is(2));
+    }
+
+    @Test
+    void labelOrderIsIgnored() {
+        LokiSeriesSet set = new LokiSeriesSet();
+
+        Map<String, String> first = new LinkedHashMap<>();
+        first.put("app", "api");
+        first.put("env", "production");
+        Map<String, String> second = new LinkedHashMap<>();
+        second.put("env", "production");
+        second.put("app", "api");
+
+        assertThat(set.add(first), is(true));
+        assertThat(set.add(second), is(false));
+    }
+
+    @Test
+    void keysAndValuesAreNotConfused() {
+        LokiSeriesSet set = new LokiSeriesSet();
+
+        assertThat(set.add(Map.of("ab", "c")), is(true));
+        assertThat(set.add(Map.of("a", "bc")), is(true));
+        assertThat(set.add(Map.of("app", "api", "env", "web")), is(true));
+        assertThat(set.add(Map.of("app", "web", "env", "api")), is(true));
+        assertThat(set.size(), is(4));
+    }
+
+    @Test
+    void emptyAndNullValues() {
+        LokiSeriesSet set = new LokiSeriesSet();
+
+        assertThat(set.add(Map.of()), is(true));
+        assertThat(set.add(Map.of()), is(false));
+
+        Map<String, String> nullValue = new HashMap<>();
+        nullValue.put("app", null);
+        assertThat(set.add(nullValue), is(true));
+        assertThat(set.add(Map.of("app", "")), is(false));
+        assertThat(set.size(), is(2));
+    }
+
+    @Test
+    void grows() {
+        LokiSeriesSet set = new LokiSeriesSet();
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(set.add(Map.of("pod", "pod-" + i)), is(true));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(set.add(Map.of("pod", "pod-" + i)), is(false));
+        }
+        assertThat(set.size(), is(10_000));
+    }
+}
@@ -0,0 +1,60 @@
+package io.kestra.plugin.grafana.loki;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LokiTimeTest {
+    @Test
+    void parseTimestamp() {
+        assertThat(LokiTime.parseTimestamp("1700000000"), is(1_700_000_000_000_000_000L));
+        assertThat(LokiTime.parseTimestamp("1700000000123456789"), is(1_700_000_000_123_456_789L));
+        assertThat(LokiTime.parseTimestamp(" 1700000000 "), is(1_700_000_000_000_000_000L));
+        assertThat(LokiTime.parseTimestamp("1700000000.5"), is(1_700_000_000_500_000_000L));
+        assertThat(LokiTime.parseTimestamp("1700000000.001"), is(1_700_000_000_001_000_000L));
+        assertThat(LokiTime.parseTimestamp("2023-11-14T22:13:20Z"), is(1_700_000_000_000_000_000L));
+        assertThat(LokiTime.parseTimestamp("2023-11-14T23:13:20.25+01:00"), is(1_700_000_000_250_000_000L));
+    }
+
+    @Test
+    void parseTimestampInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> LokiTime.parseTimestamp("yesterday"));
+    }
+
+    @Test
+    void parseDuration() {
+        assertThat(LokiTime.parseDuration("10m"), is(Duration.ofMinutes(10).toNanos()));
+        assertThat(LokiTime.parseDuration("1h30m"), is(Duration.ofMinutes(90).toNanos()));
+        assertThat(LokiTime.parseDuration("7d"), is(Duration.ofDays(7).toNanos()));
+        assertThat(LokiTime.parseDuration("1w"), is(Duration.ofDays(7).toNanos()));
+        assertThat(LokiTime.parseDuration("1y"), is(Duration.ofDays(365).toNanos()));
+        assertThat(LokiTime.parseDuration("250ms"), is(Duration.ofMillis(250).toNanos()));
+        assertThat(LokiTime.parseDuration("5us"), is(5_000L));
+        assertThat(LokiTime.parseDuration("5µs"), is(5_000L));
+        assertThat(LokiTime.parseDuration("100ns"), is(100L));
+        assertThat(LokiTime.parseDuration("1.5h"), is(Duration.ofMinutes(90).toNanos()));
+        assertThat(LokiTime.parseDuration("30"), is(Duration.ofSeconds(30).toNanos()));
+        assertThat(LokiTime.parseDuration("0.5"), is(Duration.ofMillis(500).toNanos()));
+        assertThat(LokiTime.parseDuration("PT1H"), is(Duration.ofHours(1).toNanos()));
+    }
+
+    @Test
+    void parseDurationInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> LokiTime.parseDuration("10x"));
+        assertThrows(IllegalArgumentException.class, () -> LokiTime.parseDuration("10m garbage"));
+        assertThrows(IllegalArgumentException.class, () -> LokiTime.parseDuration(""));
+    }
+
+    @Test
+    void now() {
+        long before = System.currentTimeMillis() * 1_000_000L;
+        long now = LokiTime.now();
+
+        assertThat(now, greaterThanOrEqualTo(before));
+        assertThat(now, lessThan(before + Duration.ofMinutes(1).toNanos()));
+    }
+}
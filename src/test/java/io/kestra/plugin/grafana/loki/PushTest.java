@@ -0,0 +1,138 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.serializers.FileSerde;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.time.*;
+import java.util.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@KestraTest
+class PushTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void push() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().start()) {
+            Push task = task(loki).build();
+            RunContext runContext = TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+            task = task(loki).from(Property.ofValue(records(runContext, 1_000, true).toString())).build();
+
+            Push.Output output = task.run(runContext);
+
+            assertThat(output.getCount(), is(1_000L));
+            assertThat(output.getBatches(), is(1));
+            assertThat(loki.pushRequests(), is(1L));
+            assertThat(loki.pushedEntries(), is(1_000L));
+            assertThat(output.getBytes(), is(loki.pushedBytes()));
+        }
+    }
+
+    @Test
+    void batches() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().start()) {
+            Push task = task(loki).build();
+            RunContext runContext = TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+            task = task(loki)
+                .from(Property.ofValue(records(runContext, 1_000, true).toString()))
+                .maxBatchBytes(Property.ofValue(4 * 1024))
+                .parallelism(Property.ofValue(2))
+                .build();
+
+            Push.Output output = task.run(runContext);
+
+            assertThat(output.getCount(), is(1_000L));
+            assertThat(output.getBatches(), greaterThan(1));
+            assertThat(loki.pushRequests(), is((long) output.getBatches()));
+            assertThat(loki.pushedEntries(), is(1_000L));
+        }
+    }
+
+    @Test
+    void defaultLabels() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().start()) {
+            Push task = task(loki).build();
+            RunContext runContext = TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+            task = task(loki)
+                .from(Property.ofValue(records(runContext, 10, false).toString()))
+                .labels(Property.ofValue(Map.of("job", "import")))
+                .build();
+
+            assertThat(task.run(runContext).getCount(), is(10L));
+            assertThat(loki.pushedEntries(), is(10L));
+        }
+    }
+
+    @Test
+    void missingLabels() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().start()) {
+            Push task = task(loki).build();
+            RunContext runContext = TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+            Push withoutLabels = task(loki).from(Property.ofValue(records(runContext, 10, false).toString())).build();
+
+            Exception exception = assertThrows(Exception.class, () -> withoutLabels.run(runContext));
+
+            assertThat(exception.getMessage(), containsString("at least one label"));
+            assertThat(loki.pushRequests(), is(0L));
+        }
+    }
+
+    @Test
+    void timestamps() {
+        long expected = Instant.parse("2024-03-01T12:30:00Z").getEpochSecond() * SECOND;
+
+        assertThat(Push.timestamp(Instant.parse("2024-03-01T12:30:00Z")), is(expected));
+        assertThat(Push.timestamp(OffsetDateTime.parse("2024-03-01T13:30:00+01:00")), is(expected));
+        assertThat(Push.timestamp(ZonedDateTime.parse("2024-03-01T12:30:00Z[UTC]")), is(expected));
+        assertThat(Push.timestamp(Date.from(Instant.parse("2024-03-01T12:30:00Z"))), is(expected));
+        assertThat(Push.timestamp(String.valueOf(expected)), is(expected));
+
+        // Ion timestamps without an offset are read as local dates and times, taken as UTC
+        assertThat(Push.timestamp(LocalDateTime.parse("2024-03-01T12:30:00")), is(expected));
+        assertThat(Push.timestamp(LocalDate.parse("2024-03-01")), is(Instant.parse("2024-03-01T00:00:00Z").getEpochSecond() * SECOND));
+    }
+
+    private static Push.PushBuilder<?, ?> task(FakeLoki loki) {
+        return Push.builder()
+            .id(PushTest.class.getSimpleName())
+            .type(Push.class.getName())
+            .url(Property.ofValue(loki.url()))
+            .from(Property.ofValue("kestra:///unused.ion"));
+    }
+
+    private static URI records(RunContext runContext, int count, boolean withLabels) throws Exception {
+        File file = Files.createTempFile("push", ".ion").toFile();
+        long start = LokiTime.now() - count * SECOND;
+
+        try (OutputStream output = new FileOutputStream(file)) {
+            for (int i = 0; i < count; i++) {
+                Map<String, Object> record = new HashMap<>();
+                record.put("timestamp", Instant.ofEpochSecond(0, start + i * SECOND));
+                record.put("line", "request " + i + " completed");
+                if (withLabels) {
+                    record.put("labels", Map.of("app", i % 2 == 0 ? "api" : "web"));
+                }
+                FileSerde.write(output, record);
+            }
+        }
+
+        return runContext.storage().putFile(file);
+    }
+}
@@ -0,0 +1,223 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@KestraTest
+class QueryRangeTest {
+    private static final long SECOND = 1_000_000_000L;
+    private static final long HOUR = 3_600 * SECOND;
+
+    /**
+     * An hour aligned timestamp far enough in the past for its ranges to be cached.
+     */
+    private static final long PAST = Math.floorDiv(LokiTime.now(), HOUR) * HOUR - 6 * HOUR;
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void fetch() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).entriesPerSecond(10).start()) {
+            QueryRange task = task(loki, "{app=\"api\"}")
+                .since(Property.ofValue("10s"))
+                .limit(Property.ofValue(5))
+                .build();
+
+            QueryRange.Output output = run(task);
+
+            assertThat(output.getSize(), is(5L));
+            assertThat(output.getResultType(), is("streams"));
+            assertThat(output.getLogs().stream().map(log -> labels(log).get("app")).distinct().toList(), contains("api"));
+        }
+    }
+
+    @Test
+    void paginate() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).entriesPerSecond(10).start()) {
+            QueryRange task = window(task(loki, "{app=\"api\"}"), PAST, PAST + 10 * SECOND)
+                .limit(Property.ofValue(30))
+                .paginate(Property.ofValue(true))
+                .build();
+
+            QueryRange.Output output = run(task);
+
+            // two streams of ten entries per second
+            assertThat(output.getSize(), is(200L));
+            assertThat(ids(output), hasSize(200));
+            assertThat(timestamps(output), everyItem(allOf(greaterThanOrEqualTo(PAST), lessThan(PAST + 10 * SECOND))));
+            assertThat(loki.requests(), greaterThan(200L / 30));
+        }
+    }
+
+    @Test
+    void sharded() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).entriesPerSecond(10).start()) {
+            QueryRange task = window(task(loki, "{app=\"api\"}"), PAST, PAST + 10 * SECOND)
+                .limit(Property.ofValue(30))
+                .paginate(Property.ofValue(true))
+                .shardDuration(Property.ofValue(Duration.ofSeconds(2)))
+                .build();
+
+            QueryRange.Output output = run(task);
+
+            assertThat(output.getSize(), is(200L));
+            assertThat(ids(output), hasSize(200));
+            assertThat(timestamps(output), everyItem(allOf(greaterThanOrEqualTo(PAST), lessThan(PAST + 10 * SECOND))));
+        }
+    }
+
+    @Test
+    void aggregations() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).entriesPerSecond(10).start()) {
+            QueryRange task = window(task(loki, "sum by (pod) (rate({app=\"api\"}[1m]))"), PAST, PAST + HOUR)
+                .step(Property.ofValue("1m"))
+                .aggregations(Property.ofValue(List.of(QueryRange.Aggregation.MIN, QueryRange.Aggregation.AVG, QueryRange.Aggregation.MAX)))
+                .build();
+
+            QueryRange.Output output = run(task);
+
+            // the samples are still returned, one summary per series is added
+            assertThat(output.getResultType(), is("matrix"));
+            assertThat(output.getAggregations(), not(empty()));
+            assertThat(output.getAggregations().stream().mapToLong(summary -> (Long) summary.get("count")).sum(), is(output.getSize()));
+            for (Map<String, Object> summary : output.getAggregations()) {
+                assertThat((Double) summary.get("min"), lessThanOrEqualTo((Double) summary.get("avg")));
+                assertThat((Double) summary.get("avg"), lessThanOrEqualTo((Double) summary.get("max")));
+            }
+        }
+    }
+
+    @Test
+    void resultCache() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).entriesPerSecond(10).start()) {
+            QueryRange task = window(task(loki, "{app=\"api\"}"), PAST, PAST + 10 * SECOND)
+                .limit(Property.ofValue(50))
+                .cache(LokiCachePolicy.builder().build())
+                .build();
+
+            QueryRange.Output first = run(task);
+            long requests = loki.requests();
+            QueryRange.Output second = run(task);
+
+            assertThat(requests, is(1L));
+            assertThat(loki.requests(), is(requests));
+            assertThat(second.getSize(), is(50L));
+            assertThat(second.getLogs(), is(first.getLogs()));
+        }
+    }
+
+    @Test
+    void resultCacheSkipsRangesEndingNow() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).entriesPerSecond(10).start()) {
+            QueryRange task = task(loki, "{app=\"api\"}")
+                .since(Property.ofValue("10s"))
+                .cache(LokiCachePolicy.builder().build())
+                .build();
+
+            run(task);
+            run(task);
+
+            assertThat(loki.requests(), is(2L));
+        }
+    }
+
+    @Test
+    void incrementalChunks() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).entriesPerSecond(10).start()) {
+            LokiCachePolicy cache = LokiCachePolicy.builder().chunkDuration(Property.ofValue(Duration.ofMinutes(10))).build();
+            String query = "rate({app=\"api\"}[1m])";
+
+            QueryRange.Output first = run(window(task(loki, query), PAST, PAST + HOUR).step(Property.ofValue("1m")).cache(cache).build());
+            long requests = loki.requests();
+            QueryRange.Output second = run(window(task(loki, query), PAST, PAST + HOUR).step(Property.ofValue("1m")).cache(cache).build());
+
+            assertThat(requests, greaterThan(0L));
+            assertThat(loki.requests(), is(requests));
+            assertThat(first.getResultType(), is("matrix"));
+            assertThat(second.getSize(), is(first.getSize()));
+            assertThat(new HashSet<>(second.getLogs()), is(new HashSet<>(first.getLogs())));
+
+            // a shifted window only fetches the chunks that are not cached yet
+            QueryRange.Output shifted = run(window(task(loki, query), PAST + HOUR / 2, PAST + 3 * HOUR / 2).step(Property.ofValue("1m")).cache(cache).build());
+            long shiftedRequests = loki.requests() - requests;
+            QueryRange.Output expected = run(window(task(loki, query), PAST + HOUR / 2, PAST + 3 * HOUR / 2).step(Property.ofValue("1m")).build());
+
+            assertThat(shiftedRequests, allOf(greaterThan(0L), lessThanOrEqualTo(requests)));
+            assertThat(new HashSet<>(shifted.getLogs()), is(new HashSet<>(expected.getLogs())));
+        }
+    }
+
+    @Test
+    void incrementalMaxRecords() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).entriesPerSecond(10).start()) {
+            QueryRange task = window(task(loki, "rate({app=\"api\"}[1m])"), PAST, PAST + HOUR)
+                .step(Property.ofValue("1m"))
+                .maxRecords(Property.ofValue(5))
+                .cache(LokiCachePolicy.builder().chunkDuration(Property.ofValue(Duration.ofMinutes(10))).build())
+                .build();
+
+            assertThat(run(task).getSize(), is(5L));
+        }
+    }
+
+    @Test
+    void logQueriesAreNotChunked() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).entriesPerSecond(10).start()) {
+            QueryRange task = window(task(loki, "{app=\"api\"}"), PAST, PAST + HOUR)
+                .step(Property.ofValue("1m"))
+                .limit(Property.ofValue(10))
+                .cache(LokiCachePolicy.builder().chunkDuration(Property.ofValue(Duration.ofMinutes(10))).build())
+                .build();
+
+            // the limit applies to the whole range rather than to each chunk
+            assertThat(run(task).getSize(), is(10L));
+            assertThat(loki.requests(), is(1L));
+        }
+    }
+
+    private QueryRange.Output run(QueryRange task) throws Exception {
+        return task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of()));
+    }
+
+    private static QueryRange.QueryRangeBuilder<?, ?> task(FakeLoki loki, String query) {
+        return QueryRange.builder()
+            .id(QueryRangeTest.class.getSimpleName())
+            .type(QueryRange.class.getName())
+            .url(Property.ofValue(loki.url()))
+            .query(Property.ofValue(query));
+    }
+
+    private static QueryRange.QueryRangeBuilder<?, ?> window(QueryRange.QueryRangeBuilder<?, ?> builder, long start, long end) {
+        return builder
+            .start(Property.ofValue(String.valueOf(start)))
+            .end(Property.ofValue(String.valueOf(end)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> labels(Map<String, Object> log) {
+        return (Map<String, String>) log.get("labels");
+    }
+
+    private static Set<String> ids(QueryRange.Output output) {
+        Set<String> ids = new HashSet<>();
+        for (Map<String, Object> log : output.getLogs()) {
+            ids.add(log.get("timestamp") + " " + log.get("line"));
+        }
+        return ids;
+    }
+
+    private static List<Long> timestamps(QueryRange.Output output) {
+        return output.getLogs().stream().map(log -> Long.parseLong((String) log.get("timestamp"))).toList();
+    }
+}
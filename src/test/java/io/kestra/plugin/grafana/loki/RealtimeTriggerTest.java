@@ -0,0 +1,131 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.conditions.ConditionContext;
+import io.kestra.core.models.executions.Execution;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@KestraTest
+class RealtimeTriggerTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void executionPerEntry() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).entriesPerSecond(20).start()) {
+            RealtimeTrigger trigger = trigger(loki).build();
+
+            List<Execution> executions = evaluate(trigger, 10);
+
+            assertThat(executions, hasSize(10));
+            for (Execution execution : executions) {
+                assertThat(execution.getTrigger().getVariables().get("count"), is(1));
+                assertThat(execution.getTrigger().getVariables().get("query"), is("{app=\"api\"}"));
+                assertThat(logs(execution), hasSize(1));
+                assertThat(labels(logs(execution).getFirst()).get("app"), is("api"));
+            }
+
+            List<Map<String, Object>> logs = executions.stream().flatMap(execution -> logs(execution).stream()).toList();
+            assertThat(ids(logs), hasSize(10));
+        }
+    }
+
+    @Test
+    void microBatches() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).entriesPerSecond(100).start()) {
+            RealtimeTrigger trigger = trigger(loki)
+                .batchSize(Property.ofValue(50))
+                .batchDuration(Property.ofValue(Duration.ofMillis(500)))
+                .build();
+
+            List<Execution> executions = evaluate(trigger, 3);
+
+            assertThat(executions, hasSize(3));
+            for (Execution execution : executions) {
+                int count = (Integer) execution.getTrigger().getVariables().get("count");
+                assertThat(count, allOf(greaterThan(0), lessThanOrEqualTo(50)));
+                assertThat(logs(execution), hasSize(count));
+                assertThat(execution.getTrigger().getVariables().get("lastTimestamp"), is(logs(execution).getLast().get("timestamp")));
+            }
+
+            List<Map<String, Object>> logs = executions.stream().flatMap(execution -> logs(execution).stream()).toList();
+            assertThat(ids(logs), hasSize(logs.size()));
+        }
+    }
+
+    @Test
+    void stopCompletesTheExecutions() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).entriesPerSecond(20).start()) {
+            RealtimeTrigger trigger = trigger(loki).build();
+            Map.Entry<ConditionContext, io.kestra.core.models.triggers.Trigger> context = TestsUtils.mockTrigger(runContextFactory, trigger);
+
+            List<Execution> executions = Collections.synchronizedList(new ArrayList<>());
+            Disposable subscription = Flux.from(trigger.evaluate(context.getKey(), context.getValue())).subscribe(executions::add);
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (executions.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(executions, not(empty()));
+
+            trigger.kill();
+
+            // the tail thread has terminated, no execution is created anymore
+            int size = executions.size();
+            Thread.sleep(500);
+            assertThat(executions, hasSize(size));
+            subscription.dispose();
+        }
+    }
+
+    private List<Execution> evaluate(RealtimeTrigger trigger, int executions) throws Exception {
+        Map.Entry<ConditionContext, io.kestra.core.models.triggers.Trigger> context = TestsUtils.mockTrigger(runContextFactory, trigger);
+
+        try {
+            return Flux.from(trigger.evaluate(context.getKey(), context.getValue()))
+                .take(executions)
+                .collectList()
+                .block(Duration.ofSeconds(30));
+        } finally {
+            trigger.stop();
+        }
+    }
+
+    private static RealtimeTrigger.RealtimeTriggerBuilder<?, ?> trigger(FakeLoki loki) {
+        return RealtimeTrigger.builder()
+            .id(RealtimeTriggerTest.class.getSimpleName())
+            .type(RealtimeTrigger.class.getName())
+            .url(Property.ofValue(loki.url()))
+            .query(Property.ofValue("{app=\"api\"}"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> logs(Execution execution) {
+        return (List<Map<String, Object>>) execution.getTrigger().getVariables().get("logs");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> labels(Map<String, Object> log) {
+        return (Map<String, String>) log.get("labels");
+    }
+
+    private static Set<String> ids(List<Map<String, Object>> logs) {
+        Set<String> ids = new HashSet<>();
+        for (Map<String, Object> log : logs) {
+            ids.add(log.get("timestamp") + " " + log.get("line"));
+        }
+        return ids;
+    }
+}
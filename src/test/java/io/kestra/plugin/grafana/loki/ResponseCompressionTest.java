@@ -0,0 +1,100 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@KestraTest
+class ResponseCompressionTest {
+    private static final long SECOND = 1_000_000_000L;
+    private static final long START = Math.floorDiv(LokiTime.now(), 3_600 * SECOND) * 3_600 * SECOND - 3_600 * SECOND;
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void negotiatesTheRequestedEncoding() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).entriesPerSecond(10).start()) {
+            QueryRange.Output none = run(loki, ResponseCompression.NONE);
+            String noneEncoding = loki.lastContentEncoding();
+            long noneBytes = loki.bytesSent();
+
+            QueryRange.Output gzip = run(loki, ResponseCompression.GZIP);
+            String gzipEncoding = loki.lastContentEncoding();
+            long gzipBytes = loki.bytesSent() - noneBytes;
+
+            QueryRange.Output zstd = run(loki, ResponseCompression.ZSTD);
+            String zstdEncoding = loki.lastContentEncoding();
+            long zstdBytes = loki.bytesSent() - noneBytes - gzipBytes;
+
+            assertThat(noneEncoding, nullValue());
+            assertThat(gzipEncoding, is("gzip"));
+            assertThat(zstdEncoding, is("zstd"));
+
+            assertThat(none.getSize(), is(500L));
+            assertThat(gzip.getLogs(), is(none.getLogs()));
+            assertThat(zstd.getLogs(), is(none.getLogs()));
+
+            assertThat(gzipBytes, lessThan(noneBytes / 2));
+            assertThat(zstdBytes, lessThan(noneBytes / 2));
+        }
+    }
+
+    @Test
+    void reportsCompressedAndUncompressedBytes() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).entriesPerSecond(10).start()) {
+            QueryRange task = task(loki, ResponseCompression.ZSTD);
+            RunContext runContext = TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+
+            task.run(runContext);
+
+            assertThat(counter(runContext, "bytes.compressed"), is((double) loki.bytesSent()));
+            assertThat(counter(runContext, "bytes.uncompressed"), greaterThan(2.0 * loki.bytesSent()));
+        }
+    }
+
+    @Test
+    void fallsBackToIdentity() throws Exception {
+        // a Loki behind a proxy stripping the compression answers in plain text whatever is accepted
+        try (FakeLoki loki = FakeLoki.builder().streams(10).entriesPerSecond(10).compress(false).start()) {
+            QueryRange.Output output = run(loki, ResponseCompression.ZSTD);
+
+            assertThat(loki.lastContentEncoding(), nullValue());
+            assertThat(output.getSize(), is(500L));
+        }
+    }
+
+    private QueryRange.Output run(FakeLoki loki, ResponseCompression compression) throws Exception {
+        QueryRange task = task(loki, compression);
+        return task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of()));
+    }
+
+    private static QueryRange task(FakeLoki loki, ResponseCompression compression) {
+        return QueryRange.builder()
+            .id(ResponseCompressionTest.class.getSimpleName())
+            .type(QueryRange.class.getName())
+            .url(Property.ofValue(loki.url()))
+            .query(Property.ofValue("{app=\"api\"}"))
+            .start(Property.ofValue(String.valueOf(START)))
+            .end(Property.ofValue(String.valueOf(START + 60 * SECOND)))
+            .limit(Property.ofValue(500))
+            .compression(Property.ofValue(compression))
+            .build();
+    }
+
+    private static double counter(RunContext runContext, String name) {
+        return runContext.metrics().stream()
+            .filter(metric -> metric.getName().equals(name))
+            .mapToDouble(metric -> ((Number) metric.getValue()).doubleValue())
+            .sum();
+    }
+}
@@ -0,0 +1,108 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.serializers.FileSerde;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@KestraTest
+class SeriesTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void series() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).start()) {
+            Series task = task(loki, List.of("{app=\"api\"}")).build();
+            RunContext runContext = TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+
+            Series.Output output = task.run(runContext);
+
+            assertThat(output.getSize(), is(2L));
+            assertThat(read(runContext, output.getUri()).stream().map(labels -> labels.get("pod")).toList(), containsInAnyOrder("api-0", "api-5"));
+            assertThat(loki.requests(), is(1L));
+        }
+    }
+
+    @Test
+    void selectorsAreCombined() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).start()) {
+            Series task = task(loki, List.of("{app=\"api\"}", "{app=\"web\"}", "{pod=\"api-0\"}")).build();
+            RunContext runContext = TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+
+            Series.Output output = task.run(runContext);
+
+            assertThat(output.getSize(), is(4L));
+            assertThat(read(runContext, output.getUri()).stream().map(labels -> labels.get("app")).distinct().toList(), containsInAnyOrder("api", "web"));
+        }
+    }
+
+    @Test
+    void shardsAreDeduplicated() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).start()) {
+            Series task = task(loki, List.of("{app=~\".+\"}"))
+                .since(Property.ofValue("1h"))
+                .shardDuration(Property.ofValue(Duration.ofMinutes(10)))
+                .parallelism(Property.ofValue(2))
+                .build();
+            RunContext runContext = TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+
+            Series.Output output = task.run(runContext);
+
+            // every shard returns the ten streams
+            assertThat(loki.requests(), is(6L));
+            assertThat(output.getSize(), is(10L));
+            assertThat(read(runContext, output.getUri()), hasSize(10));
+            assertThat(counter(runContext, "duplicates"), is(50.0));
+            assertThat(counter(runContext, "shards.issued"), is(6.0));
+        }
+    }
+
+    @Test
+    void matchIsRequired() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(10).start()) {
+            Series task = task(loki, List.of()).build();
+
+            assertThrows(IllegalArgumentException.class, () -> task.run(TestsUtils.mockRunContext(runContextFactory, task, Map.of())));
+            assertThat(loki.requests(), is(0L));
+        }
+    }
+
+    private static Series.SeriesBuilder<?, ?> task(FakeLoki loki, List<String> match) {
+        return Series.builder()
+            .id(SeriesTest.class.getSimpleName())
+            .type(Series.class.getName())
+            .url(Property.ofValue(loki.url()))
+            .match(Property.ofValue(match));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, String>> read(RunContext runContext, URI uri) throws Exception {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(runContext.storage().getFile(uri), StandardCharsets.UTF_8))) {
+            return FileSerde.readAll(reader).map(row -> (Map<String, String>) row).collectList().block();
+        }
+    }
+
+    private static double counter(RunContext runContext, String name) {
+        return runContext.metrics().stream()
+            .filter(metric -> metric.getName().equals(name))
+            .mapToDouble(metric -> ((Number) metric.getValue()).doubleValue())
+            .sum();
+    }
+}
@@ -0,0 +1,161 @@
+package io.kestra.plugin.grafana.loki;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.conditions.ConditionContext;
+import io.kestra.core.models.executions.Execution;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.models.triggers.StatefulTriggerService;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.IdUtils;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@KestraTest
+class TriggerTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void pollsResumeAfterTheWatermark() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(2).entriesPerSecond(20).start()) {
+            Trigger trigger = trigger(loki, 1_000, IdUtils.create());
+            Map.Entry<ConditionContext, io.kestra.core.models.triggers.Trigger> context = TestsUtils.mockTrigger(runContextFactory, trigger);
+
+            List<Map<String, Object>> first = logs(trigger.evaluate(context.getKey(), context.getValue()));
+            Thread.sleep(500);
+            List<Map<String, Object>> second = logs(trigger.evaluate(context.getKey(), context.getValue()));
+
+            assertThat(first, not(empty()));
+            assertThat(second, not(empty()));
+            assertThat(Collections.disjoint(ids(first), ids(second)), is(true));
+            assertThat(min(second), greaterThan(max(first)));
+        }
+    }
+
+    @Test
+    void pollsTruncatedByMaxRecordsContinueFromTheCursor() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(2).entriesPerSecond(20).start()) {
+            Trigger trigger = trigger(loki, 5, IdUtils.create());
+            Map.Entry<ConditionContext, io.kestra.core.models.triggers.Trigger> context = TestsUtils.mockTrigger(runContextFactory, trigger);
+
+            List<Map<String, Object>> first = logs(trigger.evaluate(context.getKey(), context.getValue()));
+            List<Map<String, Object>> second = logs(trigger.evaluate(context.getKey(), context.getValue()));
+            List<Map<String, Object>> third = logs(trigger.evaluate(context.getKey(), context.getValue()));
+
+            // the oldest entries of the lookback window come first, each poll continuing where the previous one stopped
+            assertThat(first, hasSize(5));
+            assertThat(second, hasSize(allOf(greaterThan(0), lessThanOrEqualTo(5))));
+            assertThat(third, hasSize(allOf(greaterThan(0), lessThanOrEqualTo(5))));
+            assertThat(min(second), greaterThan(max(first)));
+            assertThat(min(third), greaterThan(max(second)));
+            assertThat(max(third), lessThan(LokiTime.now() - Duration.ofSeconds(4).toNanos()));
+        }
+    }
+
+    @Test
+    void legacyStateIsMigrated() throws Exception {
+        try (FakeLoki loki = FakeLoki.builder().streams(2).entriesPerSecond(20).start()) {
+            Trigger previous = trigger(loki, 1_000, IdUtils.create());
+            Map.Entry<ConditionContext, io.kestra.core.models.triggers.Trigger> previousContext = TestsUtils.mockTrigger(runContextFactory, previous);
+            List<Map<String, Object>> first = logs(previous.evaluate(previousContext.getKey(), previousContext.getValue()));
+
+            // the state previous versions of the trigger would have stored for the same entries
+            String stateKey = IdUtils.create();
+            Map<String, StatefulTriggerService.Entry> legacy = new HashMap<>();
+            for (Map<String, Object> log : first) {
+                String id = log.get("timestamp") + "_" + (log.get("line") + String.valueOf(log.get("labels"))).hashCode();
+                legacy.put(id, StatefulTriggerService.Entry.candidate(id, (String) log.get("timestamp"), Instant.now()));
+            }
+
+            Trigger trigger = trigger(loki, 1_000, stateKey);
+            Map.Entry<ConditionContext, io.kestra.core.models.triggers.Trigger> context = TestsUtils.mockTrigger(runContextFactory, trigger);
+            StatefulTriggerService.writeState(context.getKey().getRunContext(), stateKey, legacy, Optional.of(Duration.ofDays(1)));
+
+            Thread.sleep(500);
+            List<Map<String, Object>> second = logs(trigger.evaluate(context.getKey(), context.getValue()));
+
+            assertThat(second, not(empty()));
+            assertThat(Collections.disjoint(ids(first), ids(second)), is(true));
+            assertThat(min(second), greaterThan(max(first)));
+        }
+    }
+
+    @Test
+    void emptyPollsAdvanceTheWatermark() throws Exception {
+        String stateKey = IdUtils.create();
+
+        try (FakeLoki loki = FakeLoki.builder().streams(2).entriesPerSecond(20).start()) {
+            Trigger trigger = trigger(loki, "{app=\"web\"}", 1_000, stateKey);
+            Map.Entry<ConditionContext, io.kestra.core.models.triggers.Trigger> context = TestsUtils.mockTrigger(runContextFactory, trigger);
+
+            assertThat(logs(trigger.evaluate(context.getKey(), context.getValue())), not(empty()));
+        }
+
+        Thread.sleep(1_500);
+
+        // the web stream is gone, polls after the last entry come back empty
+        try (FakeLoki loki = FakeLoki.builder().streams(1).entriesPerSecond(20).start()) {
+            Trigger trigger = trigger(loki, "{app=\"web\"}", 1_000, stateKey);
+            Map.Entry<ConditionContext, io.kestra.core.models.triggers.Trigger> context = TestsUtils.mockTrigger(runContextFactory, trigger);
+
+            assertThat(logs(trigger.evaluate(context.getKey(), context.getValue())), empty());
+            long firstEmptyStart = Long.parseLong(loki.lastParam("start"));
+            long firstEmptyEnd = Long.parseLong(loki.lastParam("end"));
+
+            assertThat(logs(trigger.evaluate(context.getKey(), context.getValue())), empty());
+            long secondEmptyStart = Long.parseLong(loki.lastParam("start"));
+
+            // the window starts from the end of the previous empty poll rather than from the last entry
+            assertThat(secondEmptyStart, greaterThan(firstEmptyStart));
+            assertThat(secondEmptyStart, is(firstEmptyEnd - 2 * Duration.ofSeconds(1).toNanos()));
+        }
+    }
+
+    private static Trigger trigger(FakeLoki loki, int maxRecords, String stateKey) {
+        return trigger(loki, "{app=~\".+\"}", maxRecords, stateKey);
+    }
+
+    private static Trigger trigger(FakeLoki loki, String query, int maxRecords, String stateKey) {
+        return Trigger.builder()
+            .id(TriggerTest.class.getSimpleName())
+            .type(Trigger.class.getName())
+            .url(Property.ofValue(loki.url()))
+            .query(Property.ofValue(query))
+            .maxRecords(Property.ofValue(maxRecords))
+            .since(Property.ofValue("5s"))
+            .lateness(Property.ofValue(Duration.ofSeconds(1)))
+            .stateKey(Property.ofValue(stateKey))
+            .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> logs(Optional<Execution> execution) {
+        return execution
+            .map(e -> (List<Map<String, Object>>) e.getTrigger().getVariables().get("logs"))
+            .orElse(List.of());
+    }
+
+    private static Set<String> ids(List<Map<String, Object>> logs) {
+        Set<String> ids = new HashSet<>();
+        for (Map<String, Object> log : logs) {
+            ids.add(log.get("timestamp") + " " + log.get("line"));
+        }
+        return ids;
+    }
+
+    private static long min(List<Map<String, Object>> logs) {
+        return logs.stream().mapToLong(log -> Long.parseLong((String) log.get("timestamp"))).min().orElseThrow();
+    }
+
+    private static long max(List<Map<String, Object>> logs) {
+        return logs.stream().mapToLong(log -> Long.parseLong((String) log.get("timestamp"))).max().orElseThrow();
+    }
+}
@@ -0,0 +1,199 @@
+package io.kestra.plugin.grafana.loki.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class LokiPushRequestTest {
+    @Test
+    void encode() {
+        LokiPushRequest request = new LokiPushRequest();
+        request.add("{a=\"b\"}", 1_000_000_002L, "x");
+
+        assertThat(request.entryCount(), is(1));
+        assertThat(request.isEmpty(), is(false));
+        assertThat(request.encode(), is(bytes(
+            0x0A, 20,                                   // streams, 20 bytes
+            0x0A, 7, '{', 'a', '=', '"', 'b', '"', '}', // labels
+            0x12, 9,                                    // entries, 9 bytes
+            0x0A, 4, 0x08, 1, 0x10, 2,                  // timestamp, seconds 1 and nanos 2
+            0x12, 1, 'x'                                // line
+        )));
+    }
+
+    @Test
+    void encodeOmitsZeroTimestampFields() {
+        LokiPushRequest request = new LokiPushRequest();
+        request.add("{a=\"b\"}", 3_000_000_000L, "");
+
+        byte[] encoded = request.encode();
+        Stream stream = decode(encoded).getFirst();
+
+        assertThat(stream.seconds(), contains(3L));
+        assertThat(stream.nanos(), contains(0L));
+        assertThat(stream.lines(), contains(""));
+    }
+
+    @Test
+    void encodeGroupsEntriesByStream() {
+        String longLine = "x".repeat(300);
+
+        LokiPushRequest request = new LokiPushRequest();
+        request.add("{app=\"api\"}", 1_700_000_000_123_456_789L, "first");
+        request.add("{app=\"web\"}", 1_700_000_001_000_000_000L, "é");
+        request.add("{app=\"api\"}", 1_700_000_002_000_000_001L, longLine);
+
+        List<Stream> streams = decode(request.encode());
+
+        assertThat(request.entryCount(), is(3));
+        assertThat(streams, hasSize(2));
+
+        assertThat(streams.get(0).labels(), is("{app=\"api\"}"));
+        assertThat(streams.get(0).lines(), contains("first", longLine));
+        assertThat(streams.get(0).seconds(), contains(1_700_000_000L, 1_700_000_002L));
+        assertThat(streams.get(0).nanos(), contains(123_456_789L, 1L));
+
+        assertThat(streams.get(1).labels(), is("{app=\"web\"}"));
+        assertThat(streams.get(1).lines(), contains("é"));
+    }
+
+    @Test
+    void estimatedSize() {
+        LokiPushRequest request = new LokiPushRequest();
+        assertThat(request.isEmpty(), is(true));
+
+        for (int i = 0; i < 100; i++) {
+            request.add("{app=\"api\"}", 1_700_000_000_000_000_000L + i, "line " + i);
+        }
+
+        assertThat(request.estimatedSize(), greaterThanOrEqualTo((long) request.encode().length));
+    }
+
+    @Test
+    void labels() {
+        Map<String, String> labels = new LinkedHashMap<>();
+        labels.put("job", "api");
+        labels.put("app", "say \"hi\"\\\n");
+
+        assertThat(LokiPushRequest.labels(labels), is("{app=\"say \\\"hi\\\"\\\\\\n\", job=\"api\"}"));
+    }
+
+    private record Stream(String labels, List<Long> seconds, List<Long> nanos, List<String> lines) {
+    }
+
+    /**
+     * Decode a push request with the protobuf wire format rules, independently of the encoder.
+     */
+    private static List<Stream> decode(byte[] buffer) {
+        List<Stream> streams = new ArrayList<>();
+        Reader request = new Reader(buffer, 0, buffer.length);
+
+        while (request.hasNext()) {
+            assertThat(request.tag(), is(1L << 3 | 2));
+            Reader stream = request.message();
+
+            Stream decoded = new Stream(null, new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+            while (stream.hasNext()) {
+                long tag = stream.tag();
+                if (tag == (1L << 3 | 2)) {
+                    decoded = new Stream(stream.string(), decoded.seconds(), decoded.nanos(), decoded.lines());
+                    continue;
+                }
+
+                assertThat(tag, is(2L << 3 | 2));
+                Reader entry = stream.message();
+                long seconds = 0;
+                long nanos = 0;
+                String line = null;
+
+                while (entry.hasNext()) {
+                    long entryTag = entry.tag();
+                    if (entryTag == (1L << 3 | 2)) {
+                        Reader timestamp = entry.message();
+                        while (timestamp.hasNext()) {
+                            long timestampTag = timestamp.tag();
+                            if (timestampTag == (1L << 3)) {
+                                seconds = timestamp.varint();
+                            } else {
+                                assertThat(timestampTag, is(2L << 3));
+                                nanos = timestamp.varint();
+                            }
+                        }
+                    } else {
+                        assertThat(entryTag, is(2L << 3 | 2));
+                        line = entry.string();
+                    }
+                }
+
+                decoded.seconds().add(seconds);
+                decoded.nanos().add(nanos);
+                decoded.lines().add(line);
+            }
+
+            streams.add(decoded);
+        }
+
+        return streams;
+    }
+
+    private static final class Reader {
+        private final byte[] buffer;
+        private final int limit;
+        private int position;
+
+        Reader(byte[] buffer, int position, int limit) {
+            this.buffer = buffer;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        boolean hasNext() {
+            return position < limit;
+        }
+
+        long tag() {
+            return varint();
+        }
+
+        long varint() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        Reader message() {
+            int length = (int) varint();
+            Reader message = new Reader(buffer, position, position + length);
+            position += length;
+            assertThat(position, lessThanOrEqualTo(limit));
+            return message;
+        }
+
+        String string() {
+            int length = (int) varint();
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
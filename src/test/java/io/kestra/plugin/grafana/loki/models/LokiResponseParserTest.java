@@ -0,0 +1,180 @@
+package io.kestra.plugin.grafana.loki.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LokiResponseParserTest {
+    @Test
+    void streams() throws IOException {
+        String body = """
+            {"status":"success","data":{"resultType":"streams","result":[
+              {"stream":{"job":"api","level":"info"},"values":[["1700000000000000001","first"],["1700000000000000002","second",{"trace_id":"abc"}]]},
+              {"stream":{"job":"web"},"values":[["1700000000000000003","third"]]}
+            ],"stats":{"summary":{"bytesProcessedPerSecond":1}}}}
+            """;
+
+        List<LokiEntry> entries = new ArrayList<>();
+        LokiResponseParser.Result result = LokiResponseParser.parse(stream(body), entries::add);
+
+        assertThat(result.status(), is("success"));
+        assertThat(result.resultType(), is("streams"));
+        assertThat(result.count(), is(3L));
+        assertThat(entries.stream().map(LokiEntry::line).toList(), contains("first", "second", "third"));
+        assertThat(entries.getFirst().timestamp(), is("1700000000000000001"));
+        assertThat(entries.getFirst().labels(), is(Map.of("job", "api", "level", "info")));
+        assertThat(entries.getFirst().isLine(), is(true));
+        assertThat(entries.get(2).labels(), is(Map.of("job", "web")));
+    }
+
+    @Test
+    void streamsKeepLabelOrder() throws IOException {
+        String body = """
+            {"data":{"resultType":"streams","result":[{"stream":{"pod":"api-1","app":"api"},"values":[["1","line"]]}]}}
+            """;
+
+        List<LokiEntry> entries = new ArrayList<>();
+        LokiResponseParser.parse(stream(body), entries::add);
+
+        assertThat(entries.getFirst().labels().keySet(), contains("pod", "app"));
+    }
+
+    @Test
+    void valuesBeforeLabels() throws IOException {
+        String body = """
+            {"data":{"resultType":"streams","result":[{"values":[["1","line"]],"stream":{"job":"api"}}]}}
+            """;
+
+        List<LokiEntry> entries = new ArrayList<>();
+        LokiResponseParser.Result result = LokiResponseParser.parse(stream(body), entries::add);
+
+        assertThat(result.count(), is(1L));
+        assertThat(entries.getFirst().labels(), is(Map.of("job", "api")));
+        assertThat(entries.getFirst().line(), is("line"));
+    }
+
+    @Test
+    void matrix() throws IOException {
+        String body = """
+            {"status":"success","data":{"resultType":"matrix","result":[
+              {"metric":{"job":"api"},"values":[[1700000000,"1.5"],[1700000060.5,"2"]]}
+            ]}}
+            """;
+
+        List<LokiEntry> entries = new ArrayList<>();
+        LokiResponseParser.Result result = LokiResponseParser.parse(stream(body), entries::add);
+
+        assertThat(result.resultType(), is("matrix"));
+        assertThat(result.count(), is(2L));
+        assertThat(entries.getFirst().isLine(), is(false));
+        assertThat(entries.getFirst().timestamp(), is("1700000000"));
+        assertThat(entries.getFirst().value(), is("1.5"));
+        assertThat(entries.get(1).timestamp(), is("1700000060.5"));
+    }
+
+    @Test
+    void matrixSamples() throws IOException {
+        String body = """
+            {"data":{"resultType":"matrix","result":[
+              {"metric":{"job":"api"},"values":[[1700000000,"1.5"],[1700000060.5,"NaN"]]}
+            ]}}
+            """;
+
+        List<Object[]> samples = new ArrayList<>();
+        LokiResponseParser.Result result = LokiResponseParser.parse(stream(body), new LokiResponseParser.SampleSink() {
+            @Override
+            public void accept(LokiEntry entry) {
+                throw new AssertionError("samples must not be sent as entries");
+            }
+
+            @Override
+            public void acceptSample(Map<String, String> labels, long timestamp, double value) {
+                samples.add(new Object[]{labels, timestamp, value});
+            }
+        });
+
+        assertThat(result.count(), is(2L));
+        assertThat(samples.getFirst()[0], is(Map.of("job", "api")));
+        assertThat(samples.getFirst()[1], is(1_700_000_000_000_000_000L));
+        assertThat(samples.getFirst()[2], is(1.5));
+        assertThat(samples.get(1)[1], is(1_700_000_060_500_000_000L));
+        assertThat(Double.isNaN((double) samples.get(1)[2]), is(true));
+    }
+
+    @Test
+    void vector() throws IOException {
+        String body = """
+            {"data":{"resultType":"vector","result":[{"metric":{"job":"api"},"value":[1700000000.25,"42"]}]}}
+            """;
+
+        List<LokiEntry> entries = new ArrayList<>();
+        LokiResponseParser.Result result = LokiResponseParser.parse(stream(body), entries::add);
+
+        assertThat(result.resultType(), is("vector"));
+        assertThat(entries, hasSize(1));
+        assertThat(entries.getFirst().labels(), is(Map.of("job", "api")));
+        assertThat(entries.getFirst().value(), is("42"));
+    }
+
+    @Test
+    void scalar() throws IOException {
+        String body = """
+            {"status":"success","data":{"resultType":"scalar","result":[1700000000.5,"3"]}}
+            """;
+
+        List<LokiEntry> entries = new ArrayList<>();
+        LokiResponseParser.Result result = LokiResponseParser.parse(stream(body), entries::add);
+
+        assertThat(result.resultType(), is("scalar"));
+        assertThat(result.count(), is(1L));
+        assertThat(entries.getFirst().timestamp(), is("1700000000.5"));
+        assertThat(entries.getFirst().value(), is("3"));
+        assertThat(entries.getFirst().labels(), anEmptyMap());
+    }
+
+    @Test
+    void tail() throws IOException {
+        String message = """
+            {"streams":[{"stream":{"job":"api"},"values":[["1","first"],["2","second"]]}],
+             "dropped_entries":[{"labels":{"job":"api"},"timestamp":"0"},{"labels":{"job":"api"},"timestamp":"1"}]}
+            """;
+
+        List<LokiEntry> entries = new ArrayList<>();
+        LokiResponseParser.TailResult result = LokiResponseParser.parseTail(message, entries::add);
+
+        assertThat(result.count(), is(2L));
+        assertThat(result.dropped(), is(2L));
+        assertThat(entries.stream().map(LokiEntry::line).toList(), contains("first", "second"));
+    }
+
+    @Test
+    void series() throws IOException {
+        String body = """
+            {"status":"success","data":[{"job":"api","pod":"api-1"},{"job":"web"}]}
+            """;
+
+        List<Map<String, String>> series = new ArrayList<>();
+        long count = LokiResponseParser.parseSeries(stream(body), series::add);
+
+        assertThat(count, is(2L));
+        assertThat(series, contains(Map.of("job", "api", "pod", "api-1"), Map.of("job", "web")));
+    }
+
+    @Test
+    void invalid() {
+        assertThrows(IOException.class, () -> LokiResponseParser.parse(stream("[]"), entry -> {}));
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}